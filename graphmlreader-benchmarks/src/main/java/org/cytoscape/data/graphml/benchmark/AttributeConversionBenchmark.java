@@ -0,0 +1,102 @@
+package org.cytoscape.data.graphml.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.cytoscape.data.reader.graphml.Attribute;
+import org.cytoscape.data.reader.graphml.GraphMLDataType;
+import org.cytoscape.data.reader.graphml.GraphMLScope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cytoscape.Cytoscape;
+import cytoscape.data.CyAttributes;
+
+/**
+ * Cost of converting and storing a single &lt;data&gt; value
+ * with Attribute.setCyAttribute(), from a String or, as the parser does,
+ * from a range of its character buffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Thread)
+public class AttributeConversionBenchmark {
+
+	private static final int VALUES = 1024;
+
+	@Param({ "INT", "LONG", "DOUBLE", "BOOLEAN", "STRING" })
+	public GraphMLDataType datatype;
+
+	private Attribute attribute;
+	private CyAttributes attrs;
+	private String[] ids;
+	private String[] values;
+	// the values one after the other, as in the buffer of the parser
+	private char[] buffer;
+	private int[] starts;
+
+	@Setup
+	public void setup() {
+		attribute = new Attribute(GraphMLScope.NODE, "k0", "bench_" + datatype.getTag(), datatype);
+		attrs = Cytoscape.getNodeAttributes();
+		ids = new String[VALUES];
+		values = new String[VALUES];
+		final Random random = new Random(42L);
+		for (int i = 0; i < VALUES; i++) {
+			ids[i] = "n" + i;
+			switch (datatype) {
+			case INT:
+				values[i] = Integer.toString(random.nextInt());
+				break;
+			case LONG:
+				values[i] = Long.toString(random.nextLong());
+				break;
+			case DOUBLE:
+				values[i] = Double.toString(random.nextGaussian());
+				break;
+			case BOOLEAN:
+				values[i] = Boolean.toString(random.nextBoolean());
+				break;
+			default:
+				values[i] = "value_" + Integer.toString(random.nextInt(), 36);
+			}
+		}
+		final StringBuilder sb = new StringBuilder();
+		starts = new int[VALUES + 1];
+		for (int i = 0; i < VALUES; i++) {
+			starts[i] = sb.length();
+			sb.append(values[i]);
+		}
+		starts[VALUES] = sb.length();
+		buffer = sb.toString().toCharArray();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public void setCyAttribute() {
+		for (int i = 0; i < VALUES; i++) {
+			attribute.setCyAttribute(attrs, ids[i], values[i]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public void setCyAttributeFromChars() {
+		for (int i = 0; i < VALUES; i++) {
+			attribute.setCyAttribute(attrs, ids[i], buffer, starts[i], starts[i + 1] - starts[i]);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package org.cytoscape.data.graphml.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line (all of them by default)
+ * with the GC profiler, so the allocation rates are always reported.
+ * Accepts the usual JMH options, e.g.
+ * <pre>
+ * java -jar target/benchmarks.jar GraphMLParserBenchmark -p nodes=100000 -p edges=500000
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+	public static void main(final String[] args) throws Exception {
+		final CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		final Options options = new OptionsBuilder()
+			.parent(cmdOptions)
+			.addProfiler(GCProfiler.class)
+			.build();
+		new Runner(options).run();
+	}
+}
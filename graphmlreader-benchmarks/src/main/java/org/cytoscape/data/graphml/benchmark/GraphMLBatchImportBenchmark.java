@@ -0,0 +1,84 @@
+package org.cytoscape.data.graphml.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cytoscape.data.reader.graphml.GraphMLBatchImport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cytoscape.Cytoscape;
+
+/**
+ * Time to import a batch of generated GraphML files, one network each,
+ * with GraphMLBatchImport. parallelism=1 reads the files one after the
+ * other, as a loop of GraphMLReader would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@State(Scope.Benchmark)
+public class GraphMLBatchImportBenchmark {
+
+	@Param({ "32" })
+	public int files;
+
+	@Param({ "2000" })
+	public int nodes;
+
+	@Param({ "5000" })
+	public int edges;
+
+	@Param({ "8" })
+	public int attributes;
+
+	@Param({ "1", "4" })
+	public int parallelism;
+
+	private final List<String> fileNames = new ArrayList<String>();
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		for (int i = 0; i < files; i++) {
+			final File file = new GraphMLGenerator().nodes(nodes).edges(edges).attributes(attributes)
+					.seed(i).generateFile();
+			fileNames.add(file.getPath());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() {
+		for (final String fileName : fileNames) {
+			new File(fileName).delete();
+		}
+		fileNames.clear();
+	}
+
+	@Benchmark
+	public int read() throws InterruptedException {
+		int imported = 0;
+		for (final GraphMLBatchImport.Result result : new GraphMLBatchImport(parallelism).read(fileNames)) {
+			if (result.getNetwork() != null) {
+				Cytoscape.destroyNetwork(result.getNetwork());
+				imported++;
+			}
+		}
+		return imported;
+	}
+}
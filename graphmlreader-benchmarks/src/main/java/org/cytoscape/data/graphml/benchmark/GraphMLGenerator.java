@@ -0,0 +1,298 @@
+package org.cytoscape.data.graphml.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates synthetic GraphML documents for the benchmarks.
+ * The output is fully determined by the settings and the seed.
+ */
+public class GraphMLGenerator {
+
+	/**
+	 * Order of the &lt;node&gt; and &lt;edge&gt; elements in the document.
+	 */
+	public enum Ordering {
+		// all nodes, then all edges
+		NODES_FIRST,
+		// all edges, then all nodes (needs deferred edge resolution)
+		EDGES_FIRST,
+		// nodes and edges mixed, edges may refer to the nodes that follow
+		INTERLEAVED
+	}
+
+	/**
+	 * GraphML attribute types, matching the attr.type values.
+	 */
+	public enum AttributeType {
+		INT("int"), LONG("long"), FLOAT("float"), DOUBLE("double"),
+		BOOLEAN("boolean"), STRING("string");
+
+		private final String tag;
+
+		private AttributeType(final String tag) {
+			this.tag = tag;
+		}
+
+		public String getTag() {
+			return tag;
+		}
+	}
+
+	public static final String DEFAULT_TYPE_MIX = "double:2,int:1,long:1,string:1,boolean:1";
+
+	private int nodeCount = 1000;
+	private int edgeCount = 2000;
+	private int attributeCount = 4;
+	private int valueStride = 1;
+	private List<AttributeType> typeMix;
+	private boolean graphics = false;
+	private Ordering ordering = Ordering.NODES_FIRST;
+	private long seed = 42L;
+
+	public GraphMLGenerator() {
+		typeMix(DEFAULT_TYPE_MIX);
+	}
+
+	public GraphMLGenerator nodes(final int nodeCount) {
+		this.nodeCount = nodeCount;
+		return this;
+	}
+
+	public GraphMLGenerator edges(final int edgeCount) {
+		this.edgeCount = edgeCount;
+		return this;
+	}
+
+	/**
+	 * @param attributeCount
+	 *            number of attribute columns of the nodes and of the edges each
+	 */
+	public GraphMLGenerator attributes(final int attributeCount) {
+		this.attributeCount = attributeCount;
+		return this;
+	}
+
+	/**
+	 * Makes the attributes sparse: each attribute column has a value on one
+	 * element out of valueStride, at positions shifted by the column, so all
+	 * the elements have about the same number of values.
+	 *
+	 * @param valueStride
+	 *            1 (the default) for a value of every attribute on every
+	 *            element
+	 */
+	public GraphMLGenerator valueStride(final int valueStride) {
+		if (valueStride < 1) throw new IllegalArgumentException("valueStride must be positive");
+		this.valueStride = valueStride;
+		return this;
+	}
+
+	/**
+	 * Sets the types of the attribute columns, as a comma-separated list of
+	 * <code>type[:weight]</code>, e.g. <code>double:3,string:1</code>.
+	 * The columns are assigned the types in round-robin order, each type
+	 * repeated by its weight.
+	 */
+	public GraphMLGenerator typeMix(final String mix) {
+		final List<AttributeType> types = new ArrayList<AttributeType>();
+		for (String entry : mix.split(",")) {
+			final String[] parts = entry.trim().split(":");
+			final AttributeType type = AttributeType.valueOf(parts[0].trim().toUpperCase(Locale.ENGLISH));
+			final int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+			for (int i = 0; i < weight; i++) {
+				types.add(type);
+			}
+		}
+		if (types.isEmpty()) throw new IllegalArgumentException("empty type mix: " + mix);
+		this.typeMix = types;
+		return this;
+	}
+
+	/**
+	 * @param graphics
+	 *            whether to add yFiles graphics to every node and edge
+	 */
+	public GraphMLGenerator graphics(final boolean graphics) {
+		this.graphics = graphics;
+		return this;
+	}
+
+	public GraphMLGenerator ordering(final Ordering ordering) {
+		this.ordering = ordering;
+		return this;
+	}
+
+	public GraphMLGenerator seed(final long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @return the number of &lt;node&gt;, &lt;edge&gt; and &lt;data&gt;
+	 *         elements in the generated documents
+	 */
+	public long elementCount() {
+		final long graphicsData = graphics ? nodeCount + edgeCount : 0;
+		return nodeCount + edgeCount + graphicsData + valueCount(nodeCount) + valueCount(edgeCount);
+	}
+
+	/**
+	 * @return the number of attribute values of the given number of elements
+	 */
+	private long valueCount(final int elementCount) {
+		long count = 0;
+		for (int i = 0; i < attributeCount; i++) {
+			final int first = (valueStride - i % valueStride) % valueStride;
+			if (first < elementCount) count += (elementCount - 1 - first) / valueStride + 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the document into a new temporary file.
+	 */
+	public File generateFile() throws IOException {
+		final File file = File.createTempFile("graphml-bench", ".graphml");
+		file.deleteOnExit();
+		final OutputStream os = new FileOutputStream(file);
+		try {
+			generate(os);
+		} finally {
+			os.close();
+		}
+		return file;
+	}
+
+	public void generate(final OutputStream os) throws IOException {
+		final Writer out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), 1 << 16);
+		final Random random = new Random(seed);
+
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out.write("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\""
+				+ " xmlns:y=\"http://www.yworks.com/xml/graphml\">\n");
+		writeKeys(out, "node");
+		writeKeys(out, "edge");
+		if (graphics) {
+			out.write("  <key id=\"ng\" for=\"node\" yfiles.type=\"nodegraphics\"/>\n");
+			out.write("  <key id=\"eg\" for=\"edge\" yfiles.type=\"edgegraphics\"/>\n");
+		}
+		out.write("  <graph id=\"G\" edgedefault=\"directed\">\n");
+
+		switch (ordering) {
+		case NODES_FIRST:
+			for (int i = 0; i < nodeCount; i++) writeNode(out, random, i);
+			for (int i = 0; i < edgeCount; i++) writeEdge(out, random, i);
+			break;
+		case EDGES_FIRST:
+			for (int i = 0; i < edgeCount; i++) writeEdge(out, random, i);
+			for (int i = 0; i < nodeCount; i++) writeNode(out, random, i);
+			break;
+		case INTERLEAVED:
+			int node = 0;
+			int edge = 0;
+			while (node < nodeCount || edge < edgeCount) {
+				// keep the node/edge proportion of the whole document
+				if (edge >= edgeCount || (node < nodeCount
+						&& (long) node * edgeCount <= (long) edge * nodeCount)) {
+					writeNode(out, random, node++);
+				} else {
+					writeEdge(out, random, edge++);
+				}
+			}
+			break;
+		}
+
+		out.write("  </graph>\n");
+		out.write("</graphml>\n");
+		out.flush();
+	}
+
+	private AttributeType attributeType(final int column) {
+		return typeMix.get(column % typeMix.size());
+	}
+
+	private void writeKeys(final Writer out, final String scope) throws IOException {
+		for (int i = 0; i < attributeCount; i++) {
+			out.write("  <key id=\"" + scope.charAt(0) + i + "\" for=\"" + scope
+					+ "\" attr.name=\"" + scope + "_attr" + i
+					+ "\" attr.type=\"" + attributeType(i).getTag() + "\"/>\n");
+		}
+	}
+
+	private void writeData(final Writer out, final Random random, final char scope, final int index)
+			throws IOException {
+		for (int i = 0; i < attributeCount; i++) {
+			if ((index + i) % valueStride != 0) continue;
+			out.write("      <data key=\"");
+			out.write(scope);
+			out.write(Integer.toString(i));
+			out.write("\">");
+			switch (attributeType(i)) {
+			case INT:
+				out.write(Integer.toString(random.nextInt(1000000)));
+				break;
+			case LONG:
+				out.write(Long.toString(random.nextLong()));
+				break;
+			case FLOAT:
+				out.write(Float.toString(random.nextFloat()));
+				break;
+			case DOUBLE:
+				out.write(Double.toString(random.nextGaussian()));
+				break;
+			case BOOLEAN:
+				out.write(random.nextBoolean() ? "true" : "false");
+				break;
+			case STRING:
+				out.write("value_" + Integer.toString(random.nextInt(), 36));
+				break;
+			}
+			out.write("</data>\n");
+		}
+	}
+
+	private void writeNode(final Writer out, final Random random, final int index) throws IOException {
+		out.write("    <node id=\"n" + index + "\">\n");
+		writeData(out, random, 'n', index);
+		if (graphics) {
+			out.write("      <data key=\"ng\">\n"
+					+ "        <y:ShapeNode>\n"
+					+ "          <y:Geometry height=\"30.0\" width=\"30.0\" x=\"" + random.nextInt(2000)
+					+ ".0\" y=\"" + random.nextInt(2000) + ".0\"/>\n"
+					+ "          <y:Fill color=\"#CCCCFF\" transparent=\"false\"/>\n"
+					+ "          <y:BorderStyle color=\"#000000\" type=\"line\" width=\"1.0\"/>\n"
+					+ "          <y:NodeLabel fontFamily=\"Dialog\" fontSize=\"12\" textColor=\"#000000\">n"
+					+ index + "</y:NodeLabel>\n"
+					+ "          <y:Shape type=\"rectangle\"/>\n"
+					+ "        </y:ShapeNode>\n"
+					+ "      </data>\n");
+		}
+		out.write("    </node>\n");
+	}
+
+	private void writeEdge(final Writer out, final Random random, final int index) throws IOException {
+		out.write("    <edge id=\"e" + index + "\" source=\"n" + random.nextInt(nodeCount)
+				+ "\" target=\"n" + random.nextInt(nodeCount) + "\">\n");
+		writeData(out, random, 'e', index);
+		if (graphics) {
+			out.write("      <data key=\"eg\">\n"
+					+ "        <y:PolyLineEdge>\n"
+					+ "          <y:Path sx=\"0.0\" sy=\"0.0\" tx=\"0.0\" ty=\"0.0\"/>\n"
+					+ "          <y:LineStyle color=\"#000000\" type=\"line\" width=\"1.0\"/>\n"
+					+ "          <y:Arrows source=\"none\" target=\"standard\"/>\n"
+					+ "        </y:PolyLineEdge>\n"
+					+ "      </data>\n");
+		}
+		out.write("    </edge>\n");
+	}
+}
@@ -0,0 +1,127 @@
+package org.cytoscape.data.graphml.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.cytoscape.data.reader.graphml.GraphMLParserEngine;
+import org.cytoscape.data.reader.graphml.GraphMLReader;
+import org.cytoscape.data.reader.graphml.GraphMLSelection;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of reading a generated GraphML file with GraphMLReader.
+ * Besides files/s, reports the bytes/s and elements/s
+ * (&lt;node&gt;, &lt;edge&gt; and &lt;data&gt;) as auxiliary counters.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@State(Scope.Benchmark)
+public class GraphMLParserBenchmark {
+
+	@Param({ "10000" })
+	public int nodes;
+
+	@Param({ "20000" })
+	public int edges;
+
+	@Param({ "8" })
+	public int attributes;
+
+	@Param({ GraphMLGenerator.DEFAULT_TYPE_MIX })
+	public String typeMix;
+
+	@Param({ "false", "true" })
+	public boolean graphics;
+
+	@Param({ "NODES_FIRST" })
+	public GraphMLGenerator.Ordering ordering;
+
+	@Param({ "STAX", "SAX" })
+	public GraphMLParserEngine engine;
+
+	// threads of the parallel import, only used by the StAX engine
+	@Param({ "1" })
+	public int parallelism;
+
+	// leaves the node and edge values in the file, the time to the first view
+	@Param({ "false", "true" })
+	public boolean lazyAttributes;
+
+	// node and edge attributes kept by a selection, 0 to import all of them;
+	// e.g. -p attributes=200 -p selectedAttributes=3 for a narrow view
+	@Param({ "0" })
+	public int selectedAttributes;
+
+	private GraphMLSelection selection;
+
+	private File file;
+	private long fileSize;
+	private long elementCount;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long bytes;
+		public long elements;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+			elements = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		final GraphMLGenerator generator = new GraphMLGenerator().nodes(nodes).edges(edges)
+				.attributes(attributes).typeMix(typeMix).graphics(graphics).ordering(ordering);
+		file = generator.generateFile();
+		selection = null;
+		if (selectedAttributes > 0) {
+			final String[] names = new String[2 * selectedAttributes];
+			for (int i = 0; i < selectedAttributes; i++) {
+				names[2 * i] = "node_attr" + i;
+				names[2 * i + 1] = "edge_attr" + i;
+			}
+			selection = new GraphMLSelection().attributes(names);
+		}
+		fileSize = file.length();
+		elementCount = generator.elementCount();
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() {
+		file.delete();
+	}
+
+	@Benchmark
+	public int[] read(final Counters counters) throws IOException {
+		final GraphMLReader reader = new GraphMLReader(file.getPath());
+		reader.setParserEngine(engine);
+		reader.setParallelism(parallelism);
+		reader.setLazyAttributes(lazyAttributes);
+		reader.setSelection(selection);
+		reader.setDeferredEdgeResolution(ordering != GraphMLGenerator.Ordering.NODES_FIRST);
+		reader.read();
+		counters.bytes += fileSize;
+		counters.elements += elementCount;
+		return reader.getEdgeIndicesArray();
+	}
+}
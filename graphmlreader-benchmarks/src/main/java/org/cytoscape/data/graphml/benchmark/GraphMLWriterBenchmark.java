@@ -0,0 +1,120 @@
+package org.cytoscape.data.graphml.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.cytoscape.data.reader.graphml.GraphMLReader;
+import org.cytoscape.data.writer.graphml.GraphMLWriter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cytoscape.CyNetwork;
+import cytoscape.Cytoscape;
+
+/**
+ * Throughput of GraphMLWriter.write() for a network loaded from a
+ * generated GraphML file. The document goes to a stream that only counts
+ * the bytes, reported as an auxiliary counter. The wide networks (128
+ * attribute columns, possibly sparse) measure the cost of the &lt;data&gt;
+ * elements, which dominates when the elements have many attributes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@State(Scope.Benchmark)
+public class GraphMLWriterBenchmark {
+
+	@Param({ "10000" })
+	public int nodes;
+
+	@Param({ "20000" })
+	public int edges;
+
+	@Param({ "8", "128" })
+	public int attributes;
+
+	// each attribute is set on one element out of valueStride
+	@Param({ "1", "16" })
+	public int valueStride;
+
+	@Param({ GraphMLGenerator.DEFAULT_TYPE_MIX })
+	public String typeMix;
+
+	@Param({ "false", "true" })
+	public boolean streaming;
+
+	private CyNetwork network;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+		}
+	}
+
+	/**
+	 * Discards the written bytes, only counting them.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void load() throws IOException {
+		final File file = new GraphMLGenerator().nodes(nodes).edges(edges)
+				.attributes(attributes).valueStride(valueStride).typeMix(typeMix).generateFile();
+		try {
+			final GraphMLReader reader = new GraphMLReader(file.getPath());
+			reader.read();
+			network = Cytoscape.createNetwork(reader.getNodeIndicesArray(),
+					reader.getEdgeIndicesArray(), reader.getNetworkName(), null, false);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void destroy() {
+		Cytoscape.destroyNetwork(network);
+	}
+
+	@Benchmark
+	public long write(final Counters counters) throws Exception {
+		final CountingOutputStream out = new CountingOutputStream();
+		final GraphMLWriter writer = new GraphMLWriter(network, null, out, null);
+		writer.setStreaming(streaming);
+		writer.write();
+		counters.bytes += out.count;
+		return out.count;
+	}
+}
@@ -0,0 +1,71 @@
+package org.cytoscape.data.graphml.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.cytoscape.data.reader.graphml.CsrGraphSink;
+import org.cytoscape.data.reader.graphml.GraphMLParserEngine;
+import org.cytoscape.data.reader.graphml.GraphMLReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Imports per second of small generated GraphML files, where the setup of
+ * the XML parser and of the GraphML parser outweighs the parsing. The files
+ * are read into a CsrGraphSink, which leaves Cytoscape out and lets the
+ * benchmark run on several threads, e.g. with -t 4.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@State(Scope.Benchmark)
+public class SmallFileImportBenchmark {
+
+	@Param({ "20" })
+	public int nodes;
+
+	@Param({ "40" })
+	public int edges;
+
+	@Param({ "4" })
+	public int attributes;
+
+	@Param({ "STAX", "SAX" })
+	public GraphMLParserEngine engine;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		file = new GraphMLGenerator().nodes(nodes).edges(edges).attributes(attributes).generateFile();
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() {
+		file.delete();
+	}
+
+	@Benchmark
+	public int read() throws IOException {
+		final CsrGraphSink sink = new CsrGraphSink();
+		final GraphMLReader reader = new GraphMLReader(file.getPath());
+		reader.setParserEngine(engine);
+		reader.setGraphSink(sink);
+		reader.read();
+		return sink.getGraph().getEdgeCount();
+	}
+}
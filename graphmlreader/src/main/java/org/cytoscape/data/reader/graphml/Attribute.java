@@ -1,12 +1,24 @@
 package org.cytoscape.data.reader.graphml;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 import cytoscape.data.CyAttributes;
+import cytoscape.logger.CyLogger;
 
 public class Attribute {
+	private static final CyLogger logger = CyLogger.getLogger( Attribute.class );
+
+	// largest magnitude of the longs a double holds exactly
+	private static final long MAX_EXACT_LONG = 1L << 53;
+
 	final AttributeId	id;
 
 	final String			name;
 	final GraphMLDataType	datatype;
+	/* Value of the elements without <data> for the key, null if none */
+	private Object			defaultValue;
 
 	public Attribute( GraphMLScope scope, String key, String name, GraphMLDataType datatype )
 	{
@@ -15,6 +27,60 @@ public class Attribute {
 		this.datatype = datatype;
 	}
 
+	public String getKey()
+	{
+		return id.key;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public GraphMLDataType getDataType()
+	{
+		return datatype;
+	}
+
+	/**
+	 * @return the value of the &lt;default&gt; of the key, as stored in
+	 *         CyAttributes (for the long attributes an Integer, or the
+	 *         decimal String of a value beyond an int), null if the key has
+	 *         none
+	 */
+	public Object getDefaultValue()
+	{
+		return defaultValue;
+	}
+
+	/**
+	 * Sets the default from the text of the &lt;default&gt; element.
+	 *
+	 * @throws NumberFormatException
+	 *             if the text is not a value of the attribute type
+	 */
+	void setDefaultValue( String data )
+	{
+		switch ( datatype ) {
+		case BOOLEAN:
+			defaultValue = Boolean.parseBoolean( data );
+			break;
+		case DOUBLE:
+		case FLOAT:
+			defaultValue = Double.parseDouble( data );
+			break;
+		case INT:
+			defaultValue = Integer.parseInt( data );
+			break;
+		case LONG:
+			final long value = Long.parseLong( data );
+			defaultValue = value == (int) value ? (Object) (int) value : Long.toString( value );
+			break;
+		default:
+			defaultValue = data;
+		}
+	}
+
 	public void setCyAttribute( CyAttributes attrs, String id, String data )
 	{
 		//System.err.format( "%s-%s[%s]=%s\n", this.id.scope.tag, id, this.id.key, data );
@@ -30,11 +96,93 @@ public class Attribute {
 			attrs.setAttribute( id, name, Double.parseDouble( data ) );
 			break;
 		case INT:
-		case LONG:
 			attrs.setAttribute( id, name, Integer.parseInt( data ) );
 			break;
+		case LONG:
+			setLongAttribute( attrs, id, Long.parseLong( data ) );
+			break;
 		default:
 			attrs.setAttribute( id, name, data );
 		}
 	}
+
+	/**
+	 * Sets the attribute to the value of a range of characters, the
+	 * numbers are decoded without creating a String.
+	 *
+	 * @throws NumberFormatException
+	 *             if the text is not a value of the attribute type
+	 */
+	public void setCyAttribute( CyAttributes attrs, String id, char[] data, int start, int length )
+	{
+		switch ( datatype ) {
+		case BOOLEAN:
+			attrs.setAttribute( id, name, NumberDecoder.parseBoolean( data, start, length ) );
+			break;
+		case DOUBLE:
+		case FLOAT:
+			attrs.setAttribute( id, name, NumberDecoder.parseDouble( data, start, length ) );
+			break;
+		case INT:
+			attrs.setAttribute( id, name, NumberDecoder.parseInt( data, start, length ) );
+			break;
+		case LONG:
+			setLongAttribute( attrs, id, NumberDecoder.parseLong( data, start, length ) );
+			break;
+		default:
+			attrs.setAttribute( id, name, new String( data, start, length ) );
+		}
+	}
+
+	/**
+	 * Stores a value of a long key. CyAttributes has no 64-bit integers: the
+	 * values are INTEGER ones while they fit an int, and the first value
+	 * that does not turns the attribute into a STRING one, along with the
+	 * values already stored, so no value is rounded. An attribute that is
+	 * FLOATING beforehand keeps the values a double holds exactly.
+	 */
+	void setLongAttribute( CyAttributes attrs, String id, long value )
+	{
+		final byte type = attrs.getType( name );
+		if ( type == CyAttributes.TYPE_STRING ) {
+			attrs.setAttribute( id, name, Long.toString( value ) );
+		} else if ( type == CyAttributes.TYPE_FLOATING && value >= -MAX_EXACT_LONG && value <= MAX_EXACT_LONG ) {
+			attrs.setAttribute( id, name, (double) value );
+		} else if ( type != CyAttributes.TYPE_FLOATING && value == (int) value ) {
+			attrs.setAttribute( id, name, (int) value );
+		} else {
+			if ( type != CyAttributes.TYPE_UNDEFINED ) {
+				toStringAttribute( attrs );
+			}
+			logger.info( "Long key " + this.id.key + " has a value beyond "
+					+ ( type == CyAttributes.TYPE_FLOATING ? "2^53" : "an int" )
+					+ ", its values are stored as the STRING attribute " + name );
+			attrs.setAttribute( id, name, Long.toString( value ) );
+		}
+	}
+
+	/**
+	 * Replaces the attribute by a STRING one with the same values, the
+	 * whole numbers of a FLOATING attribute are written without fraction.
+	 */
+	private void toStringAttribute( CyAttributes attrs )
+	{
+		final List<String> ids = new ArrayList<String>();
+		final List<String> values = new ArrayList<String>();
+		for ( final Iterator<?> keys = attrs.getMultiHashMap().getObjectKeys( name ); keys.hasNext(); ) {
+			final String id = (String) keys.next();
+			final Object value = attrs.getAttribute( id, name );
+			ids.add( id );
+			if ( value instanceof Double && (Double) value == Math.rint( (Double) value )
+					&& Math.abs( (Double) value ) <= MAX_EXACT_LONG ) {
+				values.add( Long.toString( ( (Double) value ).longValue() ) );
+			} else {
+				values.add( String.valueOf( value ) );
+			}
+		}
+		attrs.deleteAttribute( name );
+		for ( int i = 0; i < ids.size(); i++ ) {
+			attrs.setAttribute( ids.get( i ), name, values.get( i ) );
+		}
+	}
 }
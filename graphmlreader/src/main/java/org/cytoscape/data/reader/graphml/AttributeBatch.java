@@ -0,0 +1,81 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cytoscape.data.CyAttributes;
+
+/**
+ * Collects the &lt;data&gt; values into per-attribute typed columns
+ * and stores them into CyAttributes column by column, once a column
+ * reaches the batch size or when the document is finished. A column is
+ * stored under {@link CytoscapeGraphSink#LOCK}.
+ */
+class AttributeBatch {
+
+	private final int batchSize;
+	private final Map<GraphMLScope, CyAttributes> cyAttributes;
+	private final Map<Attribute, AttributeColumn> columns;
+	// gets the time spent storing the columns into CyAttributes
+	private final ImportStatistics statistics;
+
+	AttributeBatch(final Map<GraphMLScope, CyAttributes> cyAttributes, final int batchSize,
+			final ImportStatistics statistics) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("batch size must be positive");
+		this.batchSize = batchSize;
+		this.cyAttributes = cyAttributes;
+		this.columns = new LinkedHashMap<Attribute, AttributeColumn>();
+		this.statistics = statistics;
+	}
+
+	void add(final Attribute attr, final String id, final String data) {
+		final AttributeColumn column = getColumn(attr);
+		column.add(id, data);
+		if (column.size() >= batchSize) {
+			flush(column);
+		}
+	}
+
+	void add(final Attribute attr, final String id, final char[] data,
+			final int start, final int length) {
+		final AttributeColumn column = getColumn(attr);
+		column.add(id, data, start, length);
+		if (column.size() >= batchSize) {
+			flush(column);
+		}
+	}
+
+	private AttributeColumn getColumn(final Attribute attr) {
+		AttributeColumn column = columns.get(attr);
+		if (column == null) {
+			column = AttributeColumn.create(attr);
+			columns.put(attr, column);
+		}
+		return column;
+	}
+
+	private void flush(final AttributeColumn column) {
+		final long start = System.nanoTime();
+		synchronized (CytoscapeGraphSink.LOCK) {
+			column.flush(cyAttributes.get(column.attribute.id.scope));
+		}
+		statistics.flushNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Stores all pending values into CyAttributes.
+	 */
+	void flush() {
+		for (final AttributeColumn column : columns.values()) {
+			flush(column);
+		}
+	}
+
+	/**
+	 * Drops all pending values.
+	 */
+	void clear() {
+		columns.clear();
+	}
+}
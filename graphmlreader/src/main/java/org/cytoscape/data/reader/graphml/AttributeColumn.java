@@ -0,0 +1,250 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import cytoscape.data.CyAttributes;
+
+/**
+ * Buffer of the values of one GraphML attribute.
+ * Values are converted when added and kept in a primitive array of the
+ * attribute type, they are boxed only when stored into CyAttributes.
+ * Cytoscape has no 64-bit integer attributes, the longs are stored by
+ * {@link Attribute#setLongAttribute}.
+ */
+abstract class AttributeColumn {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	final Attribute attribute;
+
+	/* Ids of the objects the values belong to */
+	protected String[] ids;
+	protected int size;
+
+	protected AttributeColumn(final Attribute attribute) {
+		this.attribute = attribute;
+		this.ids = new String[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	static AttributeColumn create(final Attribute attribute) {
+		switch (attribute.datatype) {
+		case BOOLEAN:
+			return new BooleanColumn(attribute);
+		case DOUBLE:
+		case FLOAT:
+			return new DoubleColumn(attribute);
+		case INT:
+			return new IntColumn(attribute);
+		case LONG:
+			return new LongColumn(attribute);
+		default:
+			return new StringColumn(attribute);
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	final void add(final String id, final String data) {
+		if (size == ids.length) {
+			grow(2 * size);
+		}
+		ids[size] = id;
+		set(size, data);
+		size++;
+	}
+
+	final void add(final String id, final char[] data, final int start, final int length) {
+		if (size == ids.length) {
+			grow(2 * size);
+		}
+		ids[size] = id;
+		set(size, data, start, length);
+		size++;
+	}
+
+	/**
+	 * Sets the id of a buffered value, added before its object had an id.
+	 */
+	final void setId(final int index, final String id) {
+		ids[index] = id;
+	}
+
+	/**
+	 * Stores all buffered values into attrs and empties the column.
+	 */
+	final void flush(final CyAttributes attrs) {
+		for (int i = 0; i < size; i++) {
+			store(attrs, i);
+		}
+		Arrays.fill(ids, 0, size, null);
+		clear();
+		size = 0;
+	}
+
+	protected void grow(final int capacity) {
+		ids = Arrays.copyOf(ids, capacity);
+	}
+
+	protected abstract void set(int index, String data);
+
+	/**
+	 * Converts the value from the given range of characters.
+	 * By default the range is turned into a String.
+	 */
+	protected void set(int index, char[] data, int start, int length) {
+		set(index, new String(data, start, length));
+	}
+
+	protected abstract void store(CyAttributes attrs, int index);
+
+	protected void clear() {
+	}
+
+	private static class DoubleColumn extends AttributeColumn {
+		private double[] values = new double[INITIAL_CAPACITY];
+
+		DoubleColumn(final Attribute attribute) {
+			super(attribute);
+		}
+
+		@Override
+		protected void grow(final int capacity) {
+			super.grow(capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		protected void set(final int index, final String data) {
+			values[index] = Double.parseDouble(data);
+		}
+
+		@Override
+		protected void set(final int index, final char[] data, final int start, final int length) {
+			values[index] = NumberDecoder.parseDouble(data, start, length);
+		}
+
+		@Override
+		protected void store(final CyAttributes attrs, final int index) {
+			attrs.setAttribute(ids[index], attribute.name, values[index]);
+		}
+	}
+
+	private static class IntColumn extends AttributeColumn {
+		private int[] values = new int[INITIAL_CAPACITY];
+
+		IntColumn(final Attribute attribute) {
+			super(attribute);
+		}
+
+		@Override
+		protected void grow(final int capacity) {
+			super.grow(capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		protected void set(final int index, final String data) {
+			values[index] = Integer.parseInt(data);
+		}
+
+		@Override
+		protected void set(final int index, final char[] data, final int start, final int length) {
+			values[index] = NumberDecoder.parseInt(data, start, length);
+		}
+
+		@Override
+		protected void store(final CyAttributes attrs, final int index) {
+			attrs.setAttribute(ids[index], attribute.name, values[index]);
+		}
+	}
+
+	private static class LongColumn extends AttributeColumn {
+		private long[] values = new long[INITIAL_CAPACITY];
+
+		LongColumn(final Attribute attribute) {
+			super(attribute);
+		}
+
+		@Override
+		protected void grow(final int capacity) {
+			super.grow(capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		protected void set(final int index, final String data) {
+			values[index] = Long.parseLong(data);
+		}
+
+		@Override
+		protected void set(final int index, final char[] data, final int start, final int length) {
+			values[index] = NumberDecoder.parseLong(data, start, length);
+		}
+
+		@Override
+		protected void store(final CyAttributes attrs, final int index) {
+			attribute.setLongAttribute(attrs, ids[index], values[index]);
+		}
+	}
+
+	private static class BooleanColumn extends AttributeColumn {
+		private final BitSet values = new BitSet(INITIAL_CAPACITY);
+
+		BooleanColumn(final Attribute attribute) {
+			super(attribute);
+		}
+
+		@Override
+		protected void set(final int index, final String data) {
+			values.set(index, Boolean.parseBoolean(data));
+		}
+
+		@Override
+		protected void set(final int index, final char[] data, final int start, final int length) {
+			values.set(index, NumberDecoder.parseBoolean(data, start, length));
+		}
+
+		@Override
+		protected void store(final CyAttributes attrs, final int index) {
+			attrs.setAttribute(ids[index], attribute.name, values.get(index));
+		}
+
+		@Override
+		protected void clear() {
+			values.clear();
+		}
+	}
+
+	private static class StringColumn extends AttributeColumn {
+		private String[] values = new String[INITIAL_CAPACITY];
+
+		StringColumn(final Attribute attribute) {
+			super(attribute);
+		}
+
+		@Override
+		protected void grow(final int capacity) {
+			super.grow(capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		protected void set(final int index, final String data) {
+			values[index] = data;
+		}
+
+		@Override
+		protected void store(final CyAttributes attrs, final int index) {
+			attrs.setAttribute(ids[index], attribute.name, values[index]);
+		}
+
+		@Override
+		protected void clear() {
+			Arrays.fill(values, 0, size, null);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses a gzip stream on a separate thread, so inflating the data
+ * and parsing it overlap. The inflated blocks are handed over through a
+ * bounded queue, which limits how far the inflater runs ahead of the
+ * reader; the blocks read are handed back for reuse. An error of the
+ * inflater is thrown by the read() that reaches it, and by every read()
+ * after it.
+ */
+class BackgroundGzipInputStream extends InputStream {
+
+	static final int BLOCK_SIZE = 1 << 16;
+	static final int QUEUE_BLOCKS = 16;
+
+	/**
+	 * Inflated data, the last block has no data and may carry the error
+	 * that ended the inflation.
+	 */
+	private static class Block {
+		final byte[] data;
+		final int length;
+		final IOException failure;
+
+		Block(final byte[] data, final int length, final IOException failure) {
+			this.data = data;
+			this.length = length;
+			this.failure = failure;
+		}
+	}
+
+	private final BlockingQueue<Block> queue;
+	// read blocks, for reuse
+	private final BlockingQueue<byte[]> free;
+	private final Thread inflater;
+	private volatile boolean closed;
+
+	private Block block;
+	private int pos;
+	private boolean ended;
+	// error that ended the inflation, thrown again by every read()
+	private IOException failure;
+
+	/**
+	 * @return true if the stream starts with the gzip magic bytes, the stream
+	 *         must support mark()
+	 */
+	static boolean isGzip(final InputStream in) throws IOException {
+		in.mark(2);
+		try {
+			return in.read() == 0x1f && in.read() == 0x8b;
+		} finally {
+			in.reset();
+		}
+	}
+
+	static boolean isGzip(final MappedFile file) {
+		return file.length() >= 2 && file.get(0) == (byte) 0x1f && file.get(1) == (byte) 0x8b;
+	}
+
+	BackgroundGzipInputStream(final InputStream compressed) {
+		queue = new ArrayBlockingQueue<Block>(QUEUE_BLOCKS);
+		free = new ArrayBlockingQueue<byte[]>(QUEUE_BLOCKS + 2);
+		inflater = new Thread(new Runnable() {
+			public void run() {
+				inflate(compressed);
+			}
+		}, "GraphML gzip inflater");
+		inflater.setDaemon(true);
+		inflater.start();
+	}
+
+	private void inflate(final InputStream compressed) {
+		IOException error = null;
+		try {
+			final InputStream in = new GZIPInputStream(compressed, BLOCK_SIZE);
+			try {
+				while (!closed) {
+					final byte[] reused = free.poll();
+					final byte[] data = reused != null ? reused : new byte[BLOCK_SIZE];
+					int length = 0;
+					int n;
+					while (length < data.length && (n = in.read(data, length, data.length - length)) > 0) {
+						length += n;
+					}
+					if (length == 0) break;
+					queue.put(new Block(data, length, null));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			error = e;
+		} catch (InterruptedException e) {
+			// closed by the reader
+			return;
+		} catch (Throwable e) {
+			// e.g. out of memory, or a mapped file truncated under us: the
+			// reader must still get the end block, or it waits forever
+			error = new IOException("Cannot inflate the compressed data", e);
+		}
+		try {
+			queue.put(new Block(null, 0, error));
+		} catch (InterruptedException e) {
+			// closed by the reader
+		}
+	}
+
+	/**
+	 * @return false at the end of the data
+	 */
+	private boolean nextBlock() throws IOException {
+		if (ended) {
+			if (failure != null) throw failure;
+			return false;
+		}
+		if (block != null && pos < block.length) return true;
+		if (block != null) {
+			free.offer(block.data);
+			block = null;
+		}
+		try {
+			block = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while inflating");
+		}
+		pos = 0;
+		if (block.data == null) {
+			ended = true;
+			failure = block.failure;
+			if (failure != null) throw failure;
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextBlock()) return -1;
+		return block.data[pos++] & 0xff;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		if (len == 0) return 0;
+		if (!nextBlock()) return -1;
+		final int n = Math.min(len, block.length - pos);
+		System.arraycopy(block.data, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return block != null ? block.length - pos : 0;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		inflater.interrupt();
+	}
+}
@@ -0,0 +1,129 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cytoscape.CyNetwork;
+import cytoscape.Cytoscape;
+import cytoscape.data.CyAttributes;
+
+/**
+ * Sink that keeps the graph of one import in the heap, without touching
+ * Cytoscape, so the import may run on any thread, and creates it in
+ * Cytoscape afterwards with {@link #commit}. The values are converted into
+ * typed {@link AttributeColumn}s as they are read, the commit only creates
+ * the nodes and edges and stores the columns.
+ */
+class BufferedGraphSink implements GraphSink {
+
+	private final List<String> nodeIds = new ArrayList<String>();
+	/* Source and target numbers of the edges */
+	private final IntList edgeEnds = new IntList();
+	private final Map<Attribute, AttributeColumn> columns = new LinkedHashMap<Attribute, AttributeColumn>();
+	/* Edge numbers of the values of the edge columns, whose ids are set by the commit */
+	private final Map<Attribute, IntList> edgeElements = new LinkedHashMap<Attribute, IntList>();
+
+	public int startGraph(final String id, final boolean directed) {
+		return 0;
+	}
+
+	public int node(final String id) {
+		nodeIds.add(id);
+		return nodeIds.size() - 1;
+	}
+
+	public int edge(final int source, final int target) {
+		edgeEnds.add(source);
+		edgeEnds.add(target);
+		return edgeEnds.size() / 2 - 1;
+	}
+
+	public void attribute(final GraphMLScope scope, final int element, final Attribute attribute,
+			final char[] data, final int start, final int length) {
+		AttributeColumn column = columns.get(attribute);
+		if (column == null) {
+			column = AttributeColumn.create(attribute);
+			columns.put(attribute, column);
+			if (scope == GraphMLScope.EDGE) {
+				edgeElements.put(attribute, new IntList());
+			}
+		}
+		// the node values have their ids, the others get them on commit
+		column.add(scope == GraphMLScope.NODE ? nodeIds.get(element) : null, data, start, length);
+		if (scope == GraphMLScope.EDGE) {
+			edgeElements.get(attribute).add(element);
+		}
+	}
+
+	public void end() {
+	}
+
+	/**
+	 * Creates the nodes and edges in the root graph, or reuses the existing
+	 * ones, a network of them, and stores the values. The caller holds
+	 * {@link CytoscapeGraphSink#LOCK}, so the commit does not interleave
+	 * with the other imports.
+	 *
+	 * @param title
+	 *            title of the network
+	 * @param statistics
+	 *            gets the time spent storing the values
+	 * @return the network
+	 */
+	CyNetwork commit(final String title, final ImportStatistics statistics) {
+		final CytoscapeGraphSink sink = new CytoscapeGraphSink(statistics);
+		CyNetwork network = null;
+		try {
+			final long start = System.nanoTime();
+			final int[] nodes = new int[nodeIds.size()];
+			for (int i = 0; i < nodes.length; i++) {
+				nodes[i] = sink.node(nodeIds.get(i));
+			}
+			final String[] edgeIds = new String[edgeEnds.size() / 2];
+			for (int i = 0; i < edgeIds.length; i++) {
+				final int edge = sink.edge(nodes[edgeEnds.get(2 * i)], nodes[edgeEnds.get(2 * i + 1)]);
+				edgeIds[i] = Cytoscape.getRootGraph().getEdge(edge).getIdentifier();
+			}
+			network = Cytoscape.createNetwork(sink.getNodeIndicesArray(),
+					sink.getEdgeIndicesArray(), title, null, false);
+			statistics.creationNanos += System.nanoTime() - start;
+
+			final long flushStart = System.nanoTime();
+			for (final AttributeColumn column : columns.values()) {
+				final GraphMLScope scope = column.attribute.id.scope;
+				if (scope == GraphMLScope.EDGE) {
+					final IntList elements = edgeElements.get(column.attribute);
+					for (int i = 0; i < column.size(); i++) {
+						column.setId(i, edgeIds[elements.get(i)]);
+					}
+				} else if (scope == GraphMLScope.GRAPH) {
+					for (int i = 0; i < column.size(); i++) {
+						column.setId(i, network.getIdentifier());
+					}
+				}
+				column.flush(cyAttributes(scope));
+			}
+			statistics.flushNanos += System.nanoTime() - flushStart;
+			return network;
+		} catch (RuntimeException e) {
+			if (network != null) {
+				Cytoscape.destroyNetwork(network);
+			}
+			sink.rollback();
+			throw e;
+		}
+	}
+
+	private static CyAttributes cyAttributes(final GraphMLScope scope) {
+		switch (scope) {
+		case NODE:
+			return Cytoscape.getNodeAttributes();
+		case EDGE:
+			return Cytoscape.getEdgeAttributes();
+		default:
+			return Cytoscape.getNetworkAttributes();
+		}
+	}
+}
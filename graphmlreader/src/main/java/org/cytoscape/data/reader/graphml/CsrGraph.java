@@ -0,0 +1,398 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable graph in compressed sparse row form, built by
+ * {@link CsrGraphSink}.
+ * Nodes are numbered 0 to getNodeCount() - 1. The neighbors of node i are
+ * the targets at the positions getOffset(i) to getOffset(i + 1) - 1, and
+ * getEdge(position) is the index (in document order) of the edge that
+ * position comes from, which indexes the edge columns. Undirected graphs
+ * hold every edge at both of its ends.
+ * <p>
+ * The offsets, targets and edges are int arrays, or int views of mapped
+ * temporary files for the graphs that do not fit in the heap.
+ */
+public class CsrGraph {
+
+	private final boolean directed;
+	private final int nodeCount;
+	private final int edgeCount;
+	private final IntBuffer offsets;
+	private final IntBuffer targets;
+	private final IntBuffer edges;
+	private final String[] nodeIds;
+	private final Map<String, Column> nodeColumns;
+	private final Map<String, Column> edgeColumns;
+	private final Map<String, String> graphAttributes;
+
+	CsrGraph(final boolean directed, final int edgeCount, final IntBuffer offsets,
+			final IntBuffer targets, final IntBuffer edges, final String[] nodeIds,
+			final Map<String, Column> nodeColumns, final Map<String, Column> edgeColumns,
+			final Map<String, String> graphAttributes) {
+		this.directed = directed;
+		this.nodeCount = nodeIds.length;
+		this.edgeCount = edgeCount;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.edges = edges;
+		this.nodeIds = nodeIds;
+		this.nodeColumns = Collections.unmodifiableMap(nodeColumns);
+		this.edgeColumns = Collections.unmodifiableMap(edgeColumns);
+		this.graphAttributes = Collections.unmodifiableMap(graphAttributes);
+	}
+
+	public boolean isDirected() {
+		return directed;
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return number of &lt;edge&gt; elements, the edge indices are below it
+	 */
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * @return number of adjacency positions, twice the edges (without the
+	 *         self-loops) if the graph is undirected
+	 */
+	public int getPositionCount() {
+		return offsets.get(nodeCount);
+	}
+
+	public String getNodeId(final int node) {
+		return nodeIds[node];
+	}
+
+	public int getOffset(final int node) {
+		return offsets.get(node);
+	}
+
+	public int getDegree(final int node) {
+		return offsets.get(node + 1) - offsets.get(node);
+	}
+
+	public int getTarget(final int position) {
+		return targets.get(position);
+	}
+
+	public int getEdge(final int position) {
+		return edges.get(position);
+	}
+
+	/**
+	 * @return true if the offsets, targets and edges are in the heap, so
+	 *         their arrays are available
+	 */
+	public boolean hasArrays() {
+		return offsets.hasArray();
+	}
+
+	/**
+	 * @return the getNodeCount() + 1 offsets, shared with the graph
+	 * @throws UnsupportedOperationException
+	 *             if the graph is memory-mapped
+	 */
+	public int[] getOffsetArray() {
+		return array(offsets);
+	}
+
+	/**
+	 * @return the targets of the positions, shared with the graph
+	 * @throws UnsupportedOperationException
+	 *             if the graph is memory-mapped
+	 */
+	public int[] getTargetArray() {
+		return array(targets);
+	}
+
+	/**
+	 * @return the edge indices of the positions, shared with the graph
+	 * @throws UnsupportedOperationException
+	 *             if the graph is memory-mapped
+	 */
+	public int[] getEdgeArray() {
+		return array(edges);
+	}
+
+	private static int[] array(final IntBuffer buffer) {
+		if (!buffer.hasArray())
+			throw new UnsupportedOperationException("the graph is memory-mapped");
+		return buffer.array();
+	}
+
+	/**
+	 * @return read-only view of the offsets
+	 */
+	public IntBuffer getOffsets() {
+		return offsets.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return read-only view of the targets
+	 */
+	public IntBuffer getTargets() {
+		return targets.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return read-only view of the edge indices
+	 */
+	public IntBuffer getEdges() {
+		return edges.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return the values of a node attribute by node, null if none was read
+	 */
+	public Column getNodeColumn(final String name) {
+		return nodeColumns.get(name);
+	}
+
+	/**
+	 * @return the values of an edge attribute by edge index, null if none
+	 *         was read
+	 */
+	public Column getEdgeColumn(final String name) {
+		return edgeColumns.get(name);
+	}
+
+	public Map<String, Column> getNodeColumns() {
+		return nodeColumns;
+	}
+
+	public Map<String, Column> getEdgeColumns() {
+		return edgeColumns;
+	}
+
+	/**
+	 * @return the attributes of the graph, as read
+	 */
+	public Map<String, String> getGraphAttributes() {
+		return graphAttributes;
+	}
+
+	/**
+	 * Values of an attribute, in a primitive array of its type. The elements
+	 * without a value are not set.
+	 */
+	public abstract static class Column {
+
+		private final String name;
+		private final GraphMLDataType type;
+		protected final BitSet set;
+
+		Column(final String name, final GraphMLDataType type) {
+			this.name = name;
+			this.type = type;
+			this.set = new BitSet();
+		}
+
+		static Column create(final Attribute attribute) {
+			switch (attribute.datatype) {
+			case INT:
+				return new IntColumn(attribute.name, attribute.datatype);
+			case LONG:
+				return new LongColumn(attribute.name, attribute.datatype);
+			case FLOAT:
+			case DOUBLE:
+				return new DoubleColumn(attribute.name, attribute.datatype);
+			case BOOLEAN:
+				return new BooleanColumn(attribute.name, attribute.datatype);
+			default:
+				return new StringColumn(attribute.name, attribute.datatype);
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public GraphMLDataType getDataType() {
+			return type;
+		}
+
+		public boolean isSet(final int index) {
+			return set.get(index);
+		}
+
+		/**
+		 * Sets the value from a range of characters.
+		 *
+		 * @throws NumberFormatException
+		 *             if the text is not a value of the column type
+		 */
+		final void set(final int index, final char[] data, final int start, final int length) {
+			setValue(index, data, start, length);
+			set.set(index);
+		}
+
+		protected abstract void setValue(int index, char[] data, int start, int length);
+
+		/**
+		 * Reorders the values, the value of order[i] goes to i.
+		 */
+		void permute(final int[] order) {
+			final BitSet permuted = new BitSet(order.length);
+			for (int i = 0; i < order.length; i++) {
+				if (set.get(order[i])) permuted.set(i);
+			}
+			set.clear();
+			set.or(permuted);
+		}
+
+		protected static int capacity(final int length, final int index) {
+			return Math.max(index + 1, Math.max(2 * length, 256));
+		}
+	}
+
+	public static class IntColumn extends Column {
+		private int[] values = new int[0];
+
+		IntColumn(final String name, final GraphMLDataType type) {
+			super(name, type);
+		}
+
+		public int get(final int index) {
+			return index < values.length ? values[index] : 0;
+		}
+
+		@Override
+		protected void setValue(final int index, final char[] data, final int start, final int length) {
+			if (index >= values.length) values = Arrays.copyOf(values, capacity(values.length, index));
+			values[index] = NumberDecoder.parseInt(data, start, length);
+		}
+
+		@Override
+		void permute(final int[] order) {
+			final int[] permuted = new int[order.length];
+			for (int i = 0; i < order.length; i++) {
+				permuted[i] = get(order[i]);
+			}
+			values = permuted;
+			super.permute(order);
+		}
+	}
+
+	public static class LongColumn extends Column {
+		private long[] values = new long[0];
+
+		LongColumn(final String name, final GraphMLDataType type) {
+			super(name, type);
+		}
+
+		public long get(final int index) {
+			return index < values.length ? values[index] : 0L;
+		}
+
+		@Override
+		protected void setValue(final int index, final char[] data, final int start, final int length) {
+			if (index >= values.length) values = Arrays.copyOf(values, capacity(values.length, index));
+			values[index] = NumberDecoder.parseLong(data, start, length);
+		}
+
+		@Override
+		void permute(final int[] order) {
+			final long[] permuted = new long[order.length];
+			for (int i = 0; i < order.length; i++) {
+				permuted[i] = get(order[i]);
+			}
+			values = permuted;
+			super.permute(order);
+		}
+	}
+
+	public static class DoubleColumn extends Column {
+		private double[] values = new double[0];
+
+		DoubleColumn(final String name, final GraphMLDataType type) {
+			super(name, type);
+		}
+
+		public double get(final int index) {
+			return index < values.length ? values[index] : 0.0;
+		}
+
+		@Override
+		protected void setValue(final int index, final char[] data, final int start, final int length) {
+			if (index >= values.length) values = Arrays.copyOf(values, capacity(values.length, index));
+			values[index] = NumberDecoder.parseDouble(data, start, length);
+		}
+
+		@Override
+		void permute(final int[] order) {
+			final double[] permuted = new double[order.length];
+			for (int i = 0; i < order.length; i++) {
+				permuted[i] = get(order[i]);
+			}
+			values = permuted;
+			super.permute(order);
+		}
+	}
+
+	public static class BooleanColumn extends Column {
+		private final BitSet values = new BitSet();
+
+		BooleanColumn(final String name, final GraphMLDataType type) {
+			super(name, type);
+		}
+
+		public boolean get(final int index) {
+			return values.get(index);
+		}
+
+		@Override
+		protected void setValue(final int index, final char[] data, final int start, final int length) {
+			values.set(index, NumberDecoder.parseBoolean(data, start, length));
+		}
+
+		@Override
+		void permute(final int[] order) {
+			final BitSet permuted = new BitSet(order.length);
+			for (int i = 0; i < order.length; i++) {
+				if (values.get(order[i])) permuted.set(i);
+			}
+			values.clear();
+			values.or(permuted);
+			super.permute(order);
+		}
+	}
+
+	public static class StringColumn extends Column {
+		private String[] values = new String[0];
+
+		StringColumn(final String name, final GraphMLDataType type) {
+			super(name, type);
+		}
+
+		public String get(final int index) {
+			return index < values.length ? values[index] : null;
+		}
+
+		@Override
+		protected void setValue(final int index, final char[] data, final int start, final int length) {
+			if (index >= values.length) values = Arrays.copyOf(values, capacity(values.length, index));
+			values[index] = new String(data, start, length);
+		}
+
+		@Override
+		void permute(final int[] order) {
+			final String[] permuted = new String[order.length];
+			for (int i = 0; i < order.length; i++) {
+				permuted[i] = get(order[i]);
+			}
+			values = permuted;
+			super.permute(order);
+		}
+	}
+}
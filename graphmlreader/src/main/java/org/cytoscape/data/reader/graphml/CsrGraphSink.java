@@ -0,0 +1,390 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sink that builds a {@link CsrGraph} for the analytics that only traverse
+ * the graph, with a few ints per node and edge instead of the Cytoscape
+ * objects.
+ * The edges are collected as pairs of node handles (in a temporary file if
+ * the graph is memory-mapped) and turned into the CSR arrays at the end of
+ * the document, in two passes: one counts the degrees, the other fills the
+ * targets. The nodes may then be renumbered in breadth-first or reverse
+ * Cuthill-McKee order, so the nodes that are traversed together are close
+ * in memory.
+ * <p>
+ * Usage: pass the sink to {@link GraphMLReader#setGraphSink(GraphSink)},
+ * read the document and get the graph with {@link #getGraph()}. The end of
+ * the document empties the sink, so it may read another document into a
+ * new graph; a read that fails before the end leaves the sink unusable.
+ */
+public class CsrGraphSink implements GraphSink {
+
+	/**
+	 * Numbering of the nodes in the built graph.
+	 */
+	public enum Ordering {
+		/** document order */
+		DOCUMENT,
+		/** breadth-first from the first node of each component */
+		BFS,
+		/** reverse Cuthill-McKee, which minimizes the bandwidth of the adjacency */
+		RCM
+	}
+
+	private Ordering ordering = Ordering.DOCUMENT;
+	private File mappingDirectory = null;
+
+	private boolean directed = true;
+	private final List<String> nodeIds;
+	private int edgeCount;
+
+	/* Edges as pairs of node handles, in the heap or in a file */
+	private final IntList sources;
+	private final IntList targets;
+	private File edgeFile;
+	private DataOutputStream edgeStream;
+
+	private final Map<Attribute, CsrGraph.Column> columns;
+	private final Map<String, String> graphAttributes;
+
+	// CSR arrays being built
+	private IntBuffer offsetBuffer;
+	private IntBuffer targetBuffer;
+	private IntBuffer edgeBuffer;
+
+	private CsrGraph graph = null;
+
+	public CsrGraphSink() {
+		nodeIds = new ArrayList<String>();
+		sources = new IntList();
+		targets = new IntList();
+		columns = new LinkedHashMap<Attribute, CsrGraph.Column>();
+		graphAttributes = new LinkedHashMap<String, String>();
+	}
+
+	/**
+	 * Sets the numbering of the nodes in the built graph. The reordering
+	 * follows the edges as stored, so the outgoing ones in directed graphs.
+	 */
+	public void setOrdering(final Ordering ordering) {
+		this.ordering = ordering;
+	}
+
+	/**
+	 * Keeps the edges and the CSR arrays in memory-mapped temporary files
+	 * of the given directory, for graphs larger than the heap. Each array
+	 * is limited to 2 GB, i.e. about 500 million adjacency positions.
+	 *
+	 * @param directory
+	 *            directory of the files, null to keep the graph in the heap
+	 */
+	public void setMappingDirectory(final File directory) {
+		this.mappingDirectory = directory;
+	}
+
+	/**
+	 * @return the graph, once the document is read
+	 */
+	public CsrGraph getGraph() {
+		if (graph == null)
+			throw new IllegalStateException("the document is not read yet");
+		return graph;
+	}
+
+	public int startGraph(final String id, final boolean directed) {
+		this.directed = directed;
+		return 0;
+	}
+
+	public int node(final String id) {
+		nodeIds.add(id);
+		return nodeIds.size() - 1;
+	}
+
+	public int edge(final int source, final int target) {
+		if (mappingDirectory == null) {
+			sources.add(source);
+			targets.add(target);
+		} else {
+			try {
+				if (edgeStream == null) {
+					edgeFile = File.createTempFile("graphml-csr-edges", ".bin", mappingDirectory);
+					edgeFile.deleteOnExit();
+					edgeStream = new DataOutputStream(new BufferedOutputStream(
+							new FileOutputStream(edgeFile), 1 << 16));
+				}
+				edgeStream.writeInt(source);
+				edgeStream.writeInt(target);
+			} catch (IOException e) {
+				throw new GraphMLException("Cannot buffer the edges of the CSR graph", e);
+			}
+		}
+		return edgeCount++;
+	}
+
+	public void attribute(final GraphMLScope scope, final int element, final Attribute attribute,
+			final char[] data, final int start, final int length) {
+		if (scope == GraphMLScope.GRAPH) {
+			graphAttributes.put(attribute.name, new String(data, start, length));
+			return;
+		}
+		CsrGraph.Column column = columns.get(attribute);
+		if (column == null) {
+			column = CsrGraph.Column.create(attribute);
+			columns.put(attribute, column);
+		}
+		column.set(element, data, start, length);
+	}
+
+	public void end() {
+		try {
+			build();
+		} catch (IOException e) {
+			throw new GraphMLException("Cannot build the CSR graph", e);
+		} finally {
+			disposeEdges();
+			// the graph has its own copies of the ids and the values
+			directed = true;
+			nodeIds.clear();
+			edgeCount = 0;
+			columns.clear();
+			graphAttributes.clear();
+		}
+	}
+
+	private interface EdgeVisitor {
+		void edge(int index, int source, int target);
+	}
+
+	private void visitEdges(final EdgeVisitor visitor) throws IOException {
+		if (edgeStream == null) {
+			for (int i = 0; i < sources.size(); i++) {
+				visitor.edge(i, sources.get(i), targets.get(i));
+			}
+			return;
+		}
+		edgeStream.flush();
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(edgeFile), 1 << 16));
+		try {
+			for (int i = 0; i < edgeCount; i++) {
+				final int source = in.readInt();
+				visitor.edge(i, source, in.readInt());
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private void build() throws IOException {
+		final int nodeCount = nodeIds.size();
+		final boolean bothEnds = !directed;
+
+		// count the degrees
+		final int[] cursors = new int[nodeCount];
+		visitEdges(new EdgeVisitor() {
+			public void edge(final int index, final int source, final int target) {
+				cursors[source]++;
+				if (bothEnds && source != target) cursors[target]++;
+			}
+		});
+		offsetBuffer = allocate(nodeCount + 1);
+		long position = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			offsetBuffer.put(i, (int) position);
+			position += cursors[i];
+			cursors[i] = offsetBuffer.get(i);
+			if (position > Integer.MAX_VALUE)
+				throw new GraphMLException("Too many edges for a CSR graph");
+		}
+		offsetBuffer.put(nodeCount, (int) position);
+
+		// fill the targets
+		targetBuffer = allocate((int) position);
+		edgeBuffer = allocate((int) position);
+		visitEdges(new EdgeVisitor() {
+			public void edge(final int index, final int source, final int target) {
+				int p = cursors[source]++;
+				targetBuffer.put(p, target);
+				edgeBuffer.put(p, index);
+				if (bothEnds && source != target) {
+					p = cursors[target]++;
+					targetBuffer.put(p, source);
+					edgeBuffer.put(p, index);
+				}
+			}
+		});
+
+		final String[] ids = nodeIds.toArray(new String[nodeCount]);
+		if (ordering != Ordering.DOCUMENT && nodeCount > 0) {
+			renumber(order(nodeCount), ids);
+		}
+
+		final Map<String, CsrGraph.Column> nodeColumns = new LinkedHashMap<String, CsrGraph.Column>();
+		final Map<String, CsrGraph.Column> edgeColumns = new LinkedHashMap<String, CsrGraph.Column>();
+		for (final Map.Entry<Attribute, CsrGraph.Column> entry : columns.entrySet()) {
+			if (entry.getKey().id.scope == GraphMLScope.NODE) {
+				nodeColumns.put(entry.getKey().name, entry.getValue());
+			} else {
+				edgeColumns.put(entry.getKey().name, entry.getValue());
+			}
+		}
+		graph = new CsrGraph(directed, edgeCount, offsetBuffer, targetBuffer, edgeBuffer, ids,
+				nodeColumns, edgeColumns, new HashMap<String, String>(graphAttributes));
+		offsetBuffer = null;
+		targetBuffer = null;
+		edgeBuffer = null;
+	}
+
+	/**
+	 * @return the nodes in their new order
+	 */
+	private int[] order(final int nodeCount) {
+		final boolean rcm = ordering == Ordering.RCM;
+		final int[] order = new int[nodeCount];
+		final BitSet visited = new BitSet(nodeCount);
+		// components start from their lowest degree node for RCM
+		final int[] starts = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			starts[i] = i;
+		}
+		if (rcm) sortByDegree(starts, nodeCount);
+
+		int[] neighbors = new int[16];
+		int count = 0;
+		for (final int start : starts) {
+			if (visited.get(start)) continue;
+			visited.set(start);
+			order[count++] = start;
+			// the order is the queue of the breadth-first search
+			for (int head = count - 1; head < count; head++) {
+				final int node = order[head];
+				final int end = offsetBuffer.get(node + 1);
+				int found = 0;
+				for (int p = offsetBuffer.get(node); p < end; p++) {
+					final int target = targetBuffer.get(p);
+					if (visited.get(target)) continue;
+					visited.set(target);
+					if (found == neighbors.length) neighbors = Arrays.copyOf(neighbors, 2 * found);
+					neighbors[found++] = target;
+				}
+				if (rcm) sortByDegree(neighbors, found);
+				System.arraycopy(neighbors, 0, order, count, found);
+				count += found;
+			}
+		}
+		if (rcm) {
+			for (int i = 0, j = nodeCount - 1; i < j; i++, j--) {
+				final int swap = order[i];
+				order[i] = order[j];
+				order[j] = swap;
+			}
+		}
+		return order;
+	}
+
+	private void sortByDegree(final int[] nodes, final int length) {
+		final long[] keys = new long[length];
+		for (int i = 0; i < length; i++) {
+			final int degree = offsetBuffer.get(nodes[i] + 1) - offsetBuffer.get(nodes[i]);
+			keys[i] = (long) degree << 32 | nodes[i];
+		}
+		Arrays.sort(keys);
+		for (int i = 0; i < length; i++) {
+			nodes[i] = (int) keys[i];
+		}
+	}
+
+	/**
+	 * Renumbers the nodes, node order[i] becomes node i.
+	 */
+	private void renumber(final int[] order, final String[] ids) throws IOException {
+		final int nodeCount = order.length;
+		final int[] rank = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			rank[order[i]] = i;
+		}
+		final IntBuffer offsets = allocate(nodeCount + 1);
+		final IntBuffer targets = allocate(targetBuffer.capacity());
+		final IntBuffer edges = allocate(edgeBuffer.capacity());
+		int position = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			offsets.put(i, position);
+			final int node = order[i];
+			final int end = offsetBuffer.get(node + 1);
+			for (int p = offsetBuffer.get(node); p < end; p++, position++) {
+				targets.put(position, rank[targetBuffer.get(p)]);
+				edges.put(position, edgeBuffer.get(p));
+			}
+		}
+		offsets.put(nodeCount, position);
+		offsetBuffer = offsets;
+		targetBuffer = targets;
+		edgeBuffer = edges;
+
+		final String[] documentIds = ids.clone();
+		for (int i = 0; i < nodeCount; i++) {
+			ids[i] = documentIds[order[i]];
+		}
+		for (final Map.Entry<Attribute, CsrGraph.Column> entry : columns.entrySet()) {
+			if (entry.getKey().id.scope == GraphMLScope.NODE) {
+				entry.getValue().permute(order);
+			}
+		}
+	}
+
+	private IntBuffer allocate(final int count) throws IOException {
+		if (mappingDirectory == null) {
+			return IntBuffer.wrap(new int[count]);
+		}
+		final long bytes = 4L * count;
+		if (bytes > Integer.MAX_VALUE)
+			throw new GraphMLException("CSR arrays above 2 GB cannot be mapped");
+		final File file = File.createTempFile("graphml-csr", ".bin", mappingDirectory);
+		file.deleteOnExit();
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(bytes);
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes).asIntBuffer();
+		} finally {
+			raf.close();
+			// the mapping stays valid, the file goes once unmapped
+			file.delete();
+		}
+	}
+
+	private void disposeEdges() {
+		if (edgeStream != null) {
+			try {
+				edgeStream.close();
+			} catch (IOException e) {
+				// the file is deleted anyway
+			}
+			edgeStream = null;
+		}
+		if (edgeFile != null) {
+			edgeFile.delete();
+			edgeFile = null;
+		}
+		sources.clear();
+		targets.clear();
+	}
+}
@@ -0,0 +1,338 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import cytoscape.CyEdge;
+import cytoscape.CyNetwork;
+import cytoscape.CyNode;
+import cytoscape.Cytoscape;
+import cytoscape.data.CyAttributes;
+import cytoscape.data.Semantics;
+import cytoscape.logger.CyLogger;
+
+/**
+ * Sink that builds the imported network in Cytoscape: the nodes and edges
+ * are created in the root graph, or reused if they already exist there,
+ * and the values are stored into the global CyAttributes as they are read,
+ * or batched by {@link AttributeBatch} if enabled. The handles are the
+ * root graph indices.
+ * <p>
+ * When merging into a network, the edges may refer to its nodes, and the
+ * elements marked with the removal attribute are removed from it instead
+ * of being added.
+ * <p>
+ * Imports may run on several threads at once: every change of Cytoscape,
+ * the creation of a node or an edge with its lookup, the storage of a
+ * batch of values, a merge or a rollback, takes {@link #LOCK}, which the
+ * commits of {@link GraphMLBatchImport} take as well. So an import only
+ * removes on rollback the elements it created itself.
+ */
+class CytoscapeGraphSink implements GraphSink, GraphMLParser.NodeLookup {
+
+	private static final CyLogger logger = CyLogger.getLogger(CytoscapeGraphSink.class);
+
+	/* Interaction type of the created edges */
+	private static final String INTERACTION_TYPE = "pp";
+
+	/*
+	 * Serializes the changes of the root graph and of CyAttributes by the
+	 * imports running on other threads
+	 */
+	static final Object LOCK = new Object();
+
+	private final ImportStatistics statistics;
+	private final Map<GraphMLScope, CyAttributes> cyAttributes;
+
+	/* Pending attribute values, null if the values are stored immediately */
+	private AttributeBatch attributeBatch;
+
+	/* Root graph indices of the read nodes and edges */
+	private final IntList nodeIndices;
+	private final IntList edgeIndices;
+
+	/* Positions in the lists of the nodes and edges created by this import */
+	private final BitSet createdNodes;
+	private final BitSet createdEdges;
+
+	/* Attributes that got values, deleted on rollback */
+	private final Set<Attribute> attributes;
+
+	private String networkId = null;
+
+	/* Network the import is merged into, null for a new network */
+	private CyNetwork mergeTarget = null;
+	/* Name of the boolean attribute that marks the removed elements, null if none */
+	private String removalMarker = null;
+	/* Root graph indices of the marked nodes and edges */
+	private final Set<Integer> removedNodes = new HashSet<Integer>();
+	private final Set<Integer> removedEdges = new HashSet<Integer>();
+
+	// identifiers of the last nodes and edges that got a value
+	private int lastNode = NO_ELEMENT;
+	private String lastNodeId = null;
+	private int lastEdge = NO_ELEMENT;
+	private String lastEdgeId = null;
+
+	/**
+	 * @param statistics
+	 *            gets the time spent storing the batched values
+	 */
+	CytoscapeGraphSink(final ImportStatistics statistics) {
+		this.statistics = statistics;
+		cyAttributes = new HashMap<GraphMLScope, CyAttributes>();
+		cyAttributes.put(GraphMLScope.NODE, Cytoscape.getNodeAttributes());
+		cyAttributes.put(GraphMLScope.EDGE, Cytoscape.getEdgeAttributes());
+		cyAttributes.put(GraphMLScope.GRAPH, Cytoscape.getNetworkAttributes());
+		attributeBatch = null;
+		nodeIndices = new IntList();
+		edgeIndices = new IntList();
+		createdNodes = new BitSet();
+		createdEdges = new BitSet();
+		attributes = new LinkedHashSet<Attribute>();
+	}
+
+	/**
+	 * Sets how many values of an attribute are collected before they are
+	 * stored into CyAttributes. 0, the default, stores every value as soon
+	 * as it is read.
+	 */
+	void setAttributeBatchSize(final int batchSize) {
+		attributeBatch = batchSize > 0 ? new AttributeBatch(cyAttributes, batchSize, statistics) : null;
+	}
+
+	/**
+	 * Merges the import into a network: see {@link #merge()}.
+	 *
+	 * @param target
+	 *            the network, null to build a new one
+	 * @param removalMarker
+	 *            name of the attribute whose true values mark the nodes and
+	 *            edges to remove from the network, null if none are removed
+	 */
+	void setMergeTarget(final CyNetwork target, final String removalMarker) {
+		this.mergeTarget = target;
+		this.removalMarker = target != null ? removalMarker : null;
+	}
+
+	int[] getNodeIndicesArray() {
+		logger.debug("Got nodes: " + nodeIndices.size());
+		return nodeIndices.toArray();
+	}
+
+	int[] getEdgeIndicesArray() {
+		logger.debug("Got edges: " + edgeIndices.size());
+		return edgeIndices.toArray();
+	}
+
+	public int startGraph(final String id, final boolean directed) {
+		networkId = Cytoscape.getCurrentNetwork().getIdentifier();
+		return 0;
+	}
+
+	public int node(final String id) {
+		CyNode node;
+		synchronized (LOCK) {
+			node = Cytoscape.getCyNode(id, false);
+			if (node == null) {
+				node = Cytoscape.getCyNode(id, true);
+				createdNodes.set(nodeIndices.size());
+			}
+		}
+		lastNode = node.getRootGraphIndex();
+		lastNodeId = node.getIdentifier();
+		nodeIndices.add(lastNode);
+		return lastNode;
+	}
+
+	/**
+	 * @return the root graph index of a node of the merge target, NO_ELEMENT
+	 *         if the network has no such node or there is no merge target
+	 */
+	public int existingNode(final String id) {
+		if (mergeTarget == null) return NO_ELEMENT;
+		final CyNode node = Cytoscape.getCyNode(id, false);
+		return node != null && mergeTarget.containsNode(node) ? node.getRootGraphIndex() : NO_ELEMENT;
+	}
+
+	public int edge(final int source, final int target) {
+		final CyNode sourceNode = (CyNode) Cytoscape.getRootGraph().getNode(source);
+		final CyNode targetNode = (CyNode) Cytoscape.getRootGraph().getNode(target);
+		CyEdge edge;
+		synchronized (LOCK) {
+			edge = Cytoscape.getCyEdge(sourceNode, targetNode, Semantics.INTERACTION, INTERACTION_TYPE, false);
+			if (edge == null) {
+				edge = Cytoscape.getCyEdge(sourceNode, targetNode, Semantics.INTERACTION, INTERACTION_TYPE, true);
+				createdEdges.set(edgeIndices.size());
+			}
+		}
+		lastEdge = edge.getRootGraphIndex();
+		lastEdgeId = edge.getIdentifier();
+		edgeIndices.add(lastEdge);
+		return lastEdge;
+	}
+
+	public void attribute(final GraphMLScope scope, final int element, final Attribute attribute,
+			final char[] data, final int start, final int length) {
+		if (removalMarker != null && scope != GraphMLScope.GRAPH && removalMarker.equals(attribute.name)) {
+			if (NumberDecoder.parseBoolean(data, start, length)) {
+				(scope == GraphMLScope.NODE ? removedNodes : removedEdges).add(element);
+			}
+			return;
+		}
+		final String id = identifier(scope, element);
+		attributes.add(attribute);
+		if (attributeBatch != null) {
+			attributeBatch.add(attribute, id, data, start, length);
+		} else {
+			synchronized (LOCK) {
+				attribute.setCyAttribute(cyAttributes.get(scope), id, data, start, length);
+			}
+		}
+	}
+
+	private String identifier(final GraphMLScope scope, final int element) {
+		switch (scope) {
+		case NODE:
+			if (element != lastNode) {
+				lastNode = element;
+				lastNodeId = Cytoscape.getRootGraph().getNode(element).getIdentifier();
+			}
+			return lastNodeId;
+		case EDGE:
+			if (element != lastEdge) {
+				lastEdge = element;
+				lastEdgeId = Cytoscape.getRootGraph().getEdge(element).getIdentifier();
+			}
+			return lastEdgeId;
+		default:
+			return networkId;
+		}
+	}
+
+	public void end() {
+		if (attributeBatch != null) {
+			attributeBatch.flush();
+		}
+	}
+
+	/**
+	 * Applies the import to the merge target: adds the read nodes and edges
+	 * to the network, and removes the marked ones, with the edges of the
+	 * removed nodes. The marked elements that did not exist before the
+	 * import are also removed from the root graph, with their values. The
+	 * values of the other elements are already stored.
+	 */
+	void merge() {
+		synchronized (LOCK) {
+			int added = 0;
+			final IntList createdRemoved = new IntList();
+			for (int i = 0; i < edgeIndices.size(); i++) {
+				final int index = edgeIndices.get(i);
+				final CyEdge edge = (CyEdge) Cytoscape.getRootGraph().getEdge(index);
+				if (removedEdges.contains(index)
+						|| removedNodes.contains(edge.getSource().getRootGraphIndex())
+						|| removedNodes.contains(edge.getTarget().getRootGraphIndex())) {
+					mergeTarget.removeEdge(index, false);
+					if (createdEdges.get(i)) {
+						deleteAttributes(GraphMLScope.EDGE, edge.getIdentifier());
+						createdRemoved.add(index);
+					}
+				} else {
+					mergeTarget.addEdge(index);
+					added++;
+				}
+			}
+			Cytoscape.getRootGraph().removeEdges(createdRemoved.toArray());
+			createdRemoved.clear();
+			logger.info("Merged " + added + " edges into " + mergeTarget.getTitle()
+					+ ", removed " + (edgeIndices.size() - added));
+			added = 0;
+			for (int i = 0; i < nodeIndices.size(); i++) {
+				final int index = nodeIndices.get(i);
+				if (removedNodes.contains(index)) {
+					mergeTarget.removeNode(index, false);
+					if (createdNodes.get(i)) {
+						deleteAttributes(GraphMLScope.NODE, Cytoscape.getRootGraph().getNode(index).getIdentifier());
+						createdRemoved.add(index);
+					}
+				} else {
+					mergeTarget.addNode(index);
+					added++;
+				}
+			}
+			Cytoscape.getRootGraph().removeNodes(createdRemoved.toArray());
+			logger.info("Merged " + added + " nodes into " + mergeTarget.getTitle()
+					+ ", removed " + (nodeIndices.size() - added));
+		}
+	}
+
+	/**
+	 * Removes the nodes and edges created by this import from the root graph,
+	 * along with the values of the imported attributes, and drops the
+	 * attribute values not stored yet. Nodes and edges that existed before
+	 * are kept, their previous attribute values are not restored.
+	 */
+	void rollback() {
+		synchronized (LOCK) {
+			final int[] edges = new int[createdEdges.cardinality()];
+			int e = 0;
+			for (int i = createdEdges.nextSetBit(0); i >= 0; i = createdEdges.nextSetBit(i + 1)) {
+				final int index = edgeIndices.get(i);
+				deleteAttributes(GraphMLScope.EDGE, Cytoscape.getRootGraph().getEdge(index).getIdentifier());
+				edges[e++] = index;
+			}
+			final int[] nodes = new int[createdNodes.cardinality()];
+			int n = 0;
+			for (int i = createdNodes.nextSetBit(0); i >= 0; i = createdNodes.nextSetBit(i + 1)) {
+				final int index = nodeIndices.get(i);
+				deleteAttributes(GraphMLScope.NODE, Cytoscape.getRootGraph().getNode(index).getIdentifier());
+				nodes[n++] = index;
+			}
+			Cytoscape.getRootGraph().removeEdges(edges);
+			Cytoscape.getRootGraph().removeNodes(nodes);
+			logger.info("GraphML import rolled back, removed " + nodes.length + " nodes and "
+					+ edges.length + " edges");
+		}
+		reset();
+	}
+
+	/**
+	 * Forgets the previous import, so its nodes, edges and values are
+	 * neither merged nor rolled back with the next one. The values not
+	 * stored yet are dropped.
+	 */
+	void reset() {
+		if (attributeBatch != null) {
+			attributeBatch.clear();
+		}
+		nodeIndices.clear();
+		edgeIndices.clear();
+		createdNodes.clear();
+		createdEdges.clear();
+		attributes.clear();
+		removedNodes.clear();
+		removedEdges.clear();
+		networkId = null;
+		lastNode = NO_ELEMENT;
+		lastNodeId = null;
+		lastEdge = NO_ELEMENT;
+		lastEdgeId = null;
+	}
+
+	private void deleteAttributes(final GraphMLScope scope, final String id) {
+		final CyAttributes attrs = cyAttributes.get(scope);
+		for (final Attribute attr : attributes) {
+			if (attr.id.scope == scope) {
+				attrs.deleteAttribute(id, attr.name);
+			}
+		}
+		if (scope == GraphMLScope.EDGE) {
+			attrs.deleteAttribute(id, Semantics.INTERACTION);
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact store of the edges whose endpoints were not known yet when the
+ * &lt;edge&gt; element was read, along with the values of their
+ * &lt;data&gt; elements.
+ * Endpoint ids and data keys are interned into integer symbols by a
+ * {@link NodeIdIndex}, which stores each distinct id once in a byte arena,
+ * and the edges are kept as pairs of symbols in primitive arrays, the data
+ * values in one char array. Once the arrays hold more than the spill
+ * threshold, they are appended to a temporary file, so the memory used by
+ * the buffer is bounded by the threshold and the compact table of the
+ * distinct ids.
+ */
+class DeferredEdgeBuffer {
+
+	static final int DEFAULT_SPILL_THRESHOLD = 1 << 20;
+
+	/**
+	 * Receives the buffered edges in the order they were added.
+	 */
+	interface Visitor {
+		void edge(String source, String target);
+
+		/**
+		 * A value of the edge passed last, in a buffer reused once the call returns.
+		 */
+		void data(String key, char[] text, int start, int length);
+	}
+
+	private final int spillThreshold;
+
+	/* Interned endpoint ids and data keys, the symbols are their references */
+	private final NodeIdIndex symbols;
+
+	/* In-memory edges, as pairs of symbols */
+	private int[] sources;
+	private int[] targets;
+	private int size;
+
+	/* In-memory data: number of values per edge, key symbols and text ends */
+	private int[] dataCounts;
+	private int[] dataKeys;
+	private int[] dataEnds;
+	private int dataSize;
+	private char[] dataText;
+
+	/* Edges spilled to disk */
+	private File spillFile;
+	private DataOutputStream spillStream;
+	private int spilledSize;
+	/* UTF-16 bytes of the spilled text */
+	private byte[] textBytes;
+
+	DeferredEdgeBuffer() {
+		this(DEFAULT_SPILL_THRESHOLD);
+	}
+
+	DeferredEdgeBuffer(final int spillThreshold) {
+		if (spillThreshold <= 0)
+			throw new IllegalArgumentException("spill threshold must be positive");
+		this.spillThreshold = spillThreshold;
+		symbols = new NodeIdIndex(false);
+		sources = new int[Math.min(spillThreshold, 1024)];
+		targets = new int[sources.length];
+		dataCounts = new int[sources.length];
+		dataKeys = new int[16];
+		dataEnds = new int[16];
+		dataText = new char[256];
+		textBytes = new byte[512];
+		size = 0;
+		dataSize = 0;
+		spilledSize = 0;
+	}
+
+	/**
+	 * @return the total number of buffered edges, including the spilled ones
+	 */
+	int size() {
+		return spilledSize + size;
+	}
+
+	void add(final String source, final String target) throws IOException {
+		// the text is bounded too, 16 chars per edge on average
+		if (size == spillThreshold || textLength() > 16L * spillThreshold) {
+			spill();
+		}
+		if (size == sources.length) {
+			final int capacity = Math.min(spillThreshold, 2 * sources.length);
+			sources = Arrays.copyOf(sources, capacity);
+			targets = Arrays.copyOf(targets, capacity);
+			dataCounts = Arrays.copyOf(dataCounts, capacity);
+		}
+		sources[size] = intern(source);
+		targets[size] = intern(target);
+		dataCounts[size] = 0;
+		size++;
+	}
+
+	/**
+	 * Adds a &lt;data&gt; value to the edge added last.
+	 */
+	void addData(final String key, final char[] text, final int start, final int length) {
+		if (size == 0)
+			throw new IllegalStateException("no edge to add the data to");
+		if (dataSize == dataKeys.length) {
+			dataKeys = Arrays.copyOf(dataKeys, 2 * dataSize);
+			dataEnds = Arrays.copyOf(dataEnds, 2 * dataSize);
+		}
+		final int textStart = textLength();
+		if (textStart + length > dataText.length) {
+			dataText = Arrays.copyOf(dataText, Math.max(textStart + length, 2 * dataText.length));
+		}
+		System.arraycopy(text, start, dataText, textStart, length);
+		dataKeys[dataSize] = intern(key);
+		dataEnds[dataSize] = textStart + length;
+		dataSize++;
+		dataCounts[size - 1]++;
+	}
+
+	private int textLength() {
+		return dataSize > 0 ? dataEnds[dataSize - 1] : 0;
+	}
+
+	/**
+	 * Passes all buffered edges to the visitor, spilled ones first,
+	 * and releases the buffer.
+	 */
+	void resolve(final Visitor visitor) throws IOException {
+		try {
+			if (spillStream != null) {
+				spillStream.close();
+				spillStream = null;
+				final DataInputStream in = new DataInputStream(
+						new BufferedInputStream(new FileInputStream(spillFile)));
+				try {
+					char[] text = new char[256];
+					for (int i = 0; i < spilledSize; i++) {
+						final int source = in.readInt();
+						final int target = in.readInt();
+						visitor.edge(symbols.key(source), symbols.key(target));
+						final int count = in.readInt();
+						for (int j = 0; j < count; j++) {
+							final int key = in.readInt();
+							final int length = in.readInt();
+							if (length > text.length) {
+								text = new char[Math.max(length, 2 * text.length)];
+							}
+							readChars(in, text, length);
+							visitor.data(symbols.key(key), text, 0, length);
+						}
+					}
+				} finally {
+					in.close();
+				}
+			}
+			int d = 0;
+			for (int i = 0; i < size; i++) {
+				visitor.edge(symbols.key(sources[i]), symbols.key(targets[i]));
+				for (int j = 0; j < dataCounts[i]; j++, d++) {
+					final int start = d > 0 ? dataEnds[d - 1] : 0;
+					visitor.data(symbols.key(dataKeys[d]), dataText, start, dataEnds[d] - start);
+				}
+			}
+		} finally {
+			dispose();
+		}
+	}
+
+	/**
+	 * Drops the buffered edges and deletes the spill file, if any.
+	 */
+	void dispose() {
+		if (spillStream != null) {
+			try {
+				spillStream.close();
+			} catch (IOException e) {
+				// the file is deleted anyway
+			}
+			spillStream = null;
+		}
+		if (spillFile != null) {
+			spillFile.delete();
+			spillFile = null;
+		}
+		symbols.clear();
+		size = 0;
+		dataSize = 0;
+		spilledSize = 0;
+	}
+
+	private int intern(final String id) {
+		return symbols.intern(id);
+	}
+
+	private void spill() throws IOException {
+		if (spillStream == null) {
+			spillFile = File.createTempFile("graphml-edges", ".bin");
+			spillFile.deleteOnExit();
+			spillStream = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(spillFile)));
+		}
+		int d = 0;
+		for (int i = 0; i < size; i++) {
+			spillStream.writeInt(sources[i]);
+			spillStream.writeInt(targets[i]);
+			spillStream.writeInt(dataCounts[i]);
+			for (int j = 0; j < dataCounts[i]; j++, d++) {
+				final int start = d > 0 ? dataEnds[d - 1] : 0;
+				spillStream.writeInt(dataKeys[d]);
+				spillStream.writeInt(dataEnds[d] - start);
+				writeChars(dataText, start, dataEnds[d] - start);
+			}
+		}
+		spilledSize += size;
+		size = 0;
+		dataSize = 0;
+	}
+
+	/**
+	 * Writes chars as UTF-16, like DataOutput.writeChar(), in one block.
+	 */
+	private void writeChars(final char[] text, final int start, final int length) throws IOException {
+		ensureTextBytes(length);
+		for (int i = 0; i < length; i++) {
+			final char c = text[start + i];
+			textBytes[2 * i] = (byte) (c >>> 8);
+			textBytes[2 * i + 1] = (byte) c;
+		}
+		spillStream.write(textBytes, 0, 2 * length);
+	}
+
+	private void readChars(final DataInputStream in, final char[] text, final int length) throws IOException {
+		ensureTextBytes(length);
+		in.readFully(textBytes, 0, 2 * length);
+		for (int i = 0; i < length; i++) {
+			text[i] = (char) ((textBytes[2 * i] & 0xff) << 8 | (textBytes[2 * i + 1] & 0xff));
+		}
+	}
+
+	private void ensureTextBytes(final int length) {
+		if (2 * length > textBytes.length) {
+			textBytes = new byte[Math.max(2 * length, 2 * textBytes.length)];
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.util.Arrays;
+
+/**
+ * Values of the element being read, held until the element is known to
+ * pass the conditions of a {@link GraphMLSelection}. Reused from element to
+ * element.
+ */
+class ElementValues {
+
+	private Attribute[] attributes = new Attribute[16];
+	// start and length of each value in the text
+	private int[] ranges = new int[32];
+	private int size = 0;
+	private char[] text = new char[256];
+	private int textLength = 0;
+
+	void add(final Attribute attribute, final char[] data, final int start, final int length) {
+		if (size == attributes.length) {
+			attributes = Arrays.copyOf(attributes, 2 * size);
+			ranges = Arrays.copyOf(ranges, 4 * size);
+		}
+		if (textLength + length > text.length) {
+			text = Arrays.copyOf(text, Math.max(textLength + length, 2 * text.length));
+		}
+		System.arraycopy(data, start, text, textLength, length);
+		attributes[size] = attribute;
+		ranges[2 * size] = textLength;
+		ranges[2 * size + 1] = length;
+		size++;
+		textLength += length;
+	}
+
+	int size() {
+		return size;
+	}
+
+	Attribute attribute(final int i) {
+		return attributes[i];
+	}
+
+	char[] text() {
+		return text;
+	}
+
+	int start(final int i) {
+		return ranges[2 * i];
+	}
+
+	int length(final int i) {
+		return ranges[2 * i + 1];
+	}
+
+	/**
+	 * @return the last value of the attribute, null if there is none
+	 */
+	String get(final String name) {
+		for (int i = size - 1; i >= 0; i--) {
+			if (attributes[i].name.equals(name)) return new String(text, start(i), length(i));
+		}
+		return null;
+	}
+
+	void clear() {
+		size = 0;
+		textLength = 0;
+	}
+}
@@ -0,0 +1,170 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import cytoscape.Cytoscape;
+import cytoscape.data.CyAttributes;
+
+/**
+ * Defaults of the attributes of an imported document, from the
+ * &lt;default&gt; elements of its keys (see
+ * {@link GraphMLReader#getAttributeDefaults()}). The import only stores the
+ * values of the &lt;data&gt; elements into CyAttributes; the elements
+ * without a value for an attribute with a default resolve to it when read
+ * through {@link #getAttribute(GraphMLScope, String, String)}, so a column
+ * of mostly identical values costs one entry.
+ */
+public class GraphMLAttributeDefaults {
+
+	// tags of the value classes in the snapshots
+	private static final byte BOOLEAN = 0;
+	private static final byte INTEGER = 1;
+	private static final byte DOUBLE = 2;
+	private static final byte STRING = 3;
+
+	private final Map<GraphMLScope, Map<String, Object>> defaults =
+			new EnumMap<GraphMLScope, Map<String, Object>>(GraphMLScope.class);
+
+	private GraphMLAttributeDefaults() {
+	}
+
+	/**
+	 * Collects the defaults of the keys read by the parser.
+	 */
+	GraphMLAttributeDefaults(final GraphMLParser parser) {
+		for (final GraphMLScope scope : new GraphMLScope[] { GraphMLScope.NODE, GraphMLScope.EDGE, GraphMLScope.GRAPH }) {
+			for (final Attribute attr : parser.getKeys(scope).values()) {
+				if (attr.getDefaultValue() != null) {
+					put(scope, attr.name, attr.getDefaultValue());
+				}
+			}
+		}
+	}
+
+	private void put(final GraphMLScope scope, final String name, final Object value) {
+		Map<String, Object> values = defaults.get(scope);
+		if (values == null) {
+			values = new HashMap<String, Object>();
+			defaults.put(scope, values);
+		}
+		values.put(name, value);
+	}
+
+	/**
+	 * Writes the defaults into the header of a {@link GraphMLSnapshot}.
+	 */
+	void write(final DataOutput out) throws IOException {
+		int count = 0;
+		for (final Map<String, Object> values : defaults.values()) {
+			count += values.size();
+		}
+		out.writeInt(count);
+		for (final Map.Entry<GraphMLScope, Map<String, Object>> scope : defaults.entrySet()) {
+			for (final Map.Entry<String, Object> entry : scope.getValue().entrySet()) {
+				out.writeByte(scope.getKey().ordinal());
+				GraphMLSnapshot.writeString(out, entry.getKey());
+				final Object value = entry.getValue();
+				if (value instanceof Boolean) {
+					out.writeByte(BOOLEAN);
+					out.writeBoolean((Boolean) value);
+				} else if (value instanceof Integer) {
+					out.writeByte(INTEGER);
+					out.writeInt((Integer) value);
+				} else if (value instanceof Double) {
+					out.writeByte(DOUBLE);
+					out.writeDouble((Double) value);
+				} else {
+					out.writeByte(STRING);
+					GraphMLSnapshot.writeString(out, value.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the defaults written by {@link #write(DataOutput)}.
+	 */
+	static GraphMLAttributeDefaults read(final DataInput in) throws IOException {
+		final GraphMLAttributeDefaults attributeDefaults = new GraphMLAttributeDefaults();
+		for (int i = in.readInt(); i > 0; i--) {
+			final GraphMLScope scope = GraphMLScope.values()[in.readByte()];
+			final String name = GraphMLSnapshot.readString(in);
+			final Object value;
+			switch (in.readByte()) {
+			case BOOLEAN:
+				value = in.readBoolean();
+				break;
+			case INTEGER:
+				value = in.readInt();
+				break;
+			case DOUBLE:
+				value = in.readDouble();
+				break;
+			case STRING:
+				value = GraphMLSnapshot.readString(in);
+				break;
+			default:
+				throw new IOException("Corrupt attribute default");
+			}
+			attributeDefaults.put(scope, name, value);
+		}
+		return attributeDefaults;
+	}
+
+	/**
+	 * @return true if no attribute has a default
+	 */
+	public boolean isEmpty() {
+		return defaults.isEmpty();
+	}
+
+	/**
+	 * @param scope
+	 *            NODE, EDGE or GRAPH
+	 * @return the names of the attributes of the scope that have a default
+	 */
+	public Set<String> getAttributeNames(final GraphMLScope scope) {
+		final Map<String, Object> values = defaults.get(scope);
+		return values != null ? Collections.unmodifiableSet(values.keySet()) : Collections.<String> emptySet();
+	}
+
+	/**
+	 * @return the default of the attribute, as stored in CyAttributes, null
+	 *         if it has none
+	 */
+	public Object getDefault(final GraphMLScope scope, final String name) {
+		final Map<String, Object> values = defaults.get(scope);
+		return values != null ? values.get(name) : null;
+	}
+
+	/**
+	 * @param id
+	 *            identifier of the node, edge or network
+	 * @return the value of the attribute in CyAttributes, or its default if
+	 *         the element has no value
+	 */
+	public Object getAttribute(final GraphMLScope scope, final String id, final String name) {
+		final Object value = cyAttributes(scope).getAttribute(id, name);
+		return value != null ? value : getDefault(scope, name);
+	}
+
+	private static CyAttributes cyAttributes(final GraphMLScope scope) {
+		switch (scope) {
+		case NODE:
+			return Cytoscape.getNodeAttributes();
+		case EDGE:
+			return Cytoscape.getEdgeAttributes();
+		case GRAPH:
+			return Cytoscape.getNetworkAttributes();
+		default:
+			throw new IllegalArgumentException("No attributes of the " + scope + " scope");
+		}
+	}
+}
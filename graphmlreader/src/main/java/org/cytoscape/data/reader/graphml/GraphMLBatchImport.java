@@ -0,0 +1,132 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cytoscape.CyNetwork;
+import cytoscape.logger.CyLogger;
+
+/**
+ * Imports several GraphML files into Cytoscape concurrently, one network
+ * per file. Each file is read on a thread of a bounded pool by its own
+ * {@link GraphMLReader}, into a sink that keeps the graph and the converted
+ * values in the heap without touching Cytoscape. Once a file is read, its
+ * network is created in Cytoscape under the lock that every import of
+ * this plugin takes to change Cytoscape, see {@link CytoscapeGraphSink},
+ * which is the only point where the import of a file meets the others. A
+ * file that fails does not stop the others.
+ * <p>
+ * The networks are created without views.
+ */
+public class GraphMLBatchImport {
+
+	private static final CyLogger logger = CyLogger.getLogger(GraphMLBatchImport.class);
+
+	private final int parallelism;
+
+	/**
+	 * Outcome of the import of one file.
+	 */
+	public static class Result {
+		private final String fileName;
+		private final CyNetwork network;
+		private final Exception error;
+
+		Result(final String fileName, final CyNetwork network, final Exception error) {
+			this.fileName = fileName;
+			this.network = network;
+			this.error = error;
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		/**
+		 * @return the network of the file, null if the import failed
+		 */
+		public CyNetwork getNetwork() {
+			return network;
+		}
+
+		/**
+		 * @return why the import failed, null if it did not
+		 */
+		public Exception getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * @param parallelism
+	 *            number of files read at the same time
+	 */
+	public GraphMLBatchImport(final int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Imports the files, and waits for all of them.
+	 *
+	 * @return the results, in the order of the files
+	 * @throws InterruptedException
+	 *             if the thread is interrupted, the files not read yet are
+	 *             not imported
+	 */
+	public List<Result> read(final List<String> fileNames) throws InterruptedException {
+		final List<Result> results = new ArrayList<Result>(fileNames.size());
+		if (fileNames.isEmpty()) return results;
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, fileNames.size()));
+		try {
+			final List<Future<CyNetwork>> networks = new ArrayList<Future<CyNetwork>>(fileNames.size());
+			for (final String fileName : fileNames) {
+				networks.add(pool.submit(new Callable<CyNetwork>() {
+					public CyNetwork call() throws IOException {
+						return read(fileName);
+					}
+				}));
+			}
+			for (int i = 0; i < fileNames.size(); i++) {
+				try {
+					results.add(new Result(fileNames.get(i), networks.get(i).get(), null));
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					logger.warn("Cannot import " + fileNames.get(i), cause);
+					results.add(new Result(fileNames.get(i), null,
+							cause instanceof Exception ? (Exception) cause : e));
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return results;
+	}
+
+	/**
+	 * Reads a file on the current thread, and commits its network.
+	 */
+	private static CyNetwork read(final String fileName) throws IOException {
+		final BufferedGraphSink sink = new BufferedGraphSink();
+		final GraphMLReader reader = new GraphMLReader(fileName);
+		reader.setGraphSink(sink);
+		reader.read();
+		final String title = reader.getNetworkName();
+		final ImportStatistics statistics = new ImportStatistics();
+		final long start = System.nanoTime();
+		synchronized (CytoscapeGraphSink.LOCK) {
+			final long locked = System.nanoTime();
+			final CyNetwork network = sink.commit(title, statistics);
+			logger.debug("Committed " + fileName + " in " + (System.nanoTime() - locked) / 1000000
+					+ " ms, after waiting " + (locked - start) / 1000000 + " ms");
+			return network;
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package org.cytoscape.data.reader.graphml;
+
+/**
+ * Thrown by the parser when the import is cancelled.
+ */
+public class GraphMLCancelledException extends GraphMLException {
+
+	public GraphMLCancelledException() {
+		super("GraphML import cancelled");
+	}
+}
@@ -0,0 +1,272 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The elements of a slice of the &lt;graph&gt; content, tokenized apart
+ * from the parser that builds the network.
+ * The slice is read with its own StAX reader (so it may be tokenized on any
+ * thread) and its &lt;graph&gt;, &lt;node&gt;, &lt;edge&gt; and &lt;data&gt;
+ * elements are recorded into compact buffers: one opcode per element, the
+ * ids and keys in a string array and the text of all the &lt;data&gt;
+ * elements in one char array. {@link #replay(GraphMLParser)} then feeds them
+ * to the parser in document order, as the StAX engine would have.
+ */
+class GraphMLChunk {
+
+	private static final byte GRAPH = 0;
+	private static final byte NODE = 1;
+	private static final byte EDGE = 2;
+	private static final byte DATA = 3;
+	private static final byte END = 4;
+
+	/*
+	 * Element names are not checked by the reader of a slice, which only
+	 * needs a root element to be well-formed.
+	 */
+	private static final byte[] OPEN = "<chunk>".getBytes(Charset.forName("US-ASCII"));
+	private static final byte[] CLOSE = "</chunk>".getBytes(Charset.forName("US-ASCII"));
+
+	private static final ObjectPool<XMLInputFactory> FACTORIES = new ObjectPool<XMLInputFactory>();
+
+	private final GraphMLParser handler;
+
+	private byte[] ops;
+	private int opCount;
+	private String[] strings;
+	private int stringCount;
+	// start and length of the <data> texts
+	private int[] ranges;
+	private int rangeCount;
+	private char[] text;
+	private int textLength;
+
+	// <data> elements with undeclared keys, by key
+	private final Map<String, Integer> unknownKeys;
+
+	// scope of the element being tokenized, to look up the keys
+	private GraphMLScope scope;
+
+	/**
+	 * @param handler
+	 *            parser the keys are looked up in; its key tables are only
+	 *            read, so several chunks may be tokenized concurrently
+	 */
+	GraphMLChunk(final GraphMLParser handler) {
+		this.handler = handler;
+		ops = new byte[1024];
+		strings = new String[1024];
+		ranges = new int[1024];
+		text = new char[8192];
+		unknownKeys = new HashMap<String, Integer>();
+		scope = GraphMLScope.GRAPH;
+	}
+
+	int size() {
+		return opCount;
+	}
+
+	/**
+	 * Reads the elements of the slice.
+	 *
+	 * @param slice
+	 *            a sequence of complete elements of the &lt;graph&gt; content
+	 * @param encoding
+	 *            encoding of the document
+	 */
+	void tokenize(final InputStream slice, final String encoding) throws XMLStreamException {
+		XMLInputFactory factory = FACTORIES.poll();
+		if (factory == null) {
+			// prefixes are declared by the document root, outside of the slice
+			factory = GraphMLStaxParser.createFactory(false);
+		}
+
+		final InputStream wrapped = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+				new ByteArrayInputStream(OPEN), slice, new ByteArrayInputStream(CLOSE))));
+		try {
+			final XMLStreamReader reader = factory.createXMLStreamReader(wrapped, encoding);
+			try {
+				reader.nextTag(); // <chunk>
+				while (reader.hasNext()) {
+					final int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						startElement(reader);
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						final GraphMLToken token = token(reader);
+						if (token == GraphMLToken.NODE || token == GraphMLToken.EDGE) {
+							scope = GraphMLScope.GRAPH;
+							addOp(END);
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} finally {
+			FACTORIES.offer(factory);
+		}
+	}
+
+	/**
+	 * Feeds the recorded elements to the parser.
+	 */
+	void replay(final GraphMLParser parser) {
+		int s = 0;
+		int r = 0;
+		for (int i = 0; i < opCount; i++) {
+			switch (ops[i]) {
+			case GRAPH:
+				parser.startGraph(strings[s], strings[s + 1]);
+				s += 2;
+				break;
+			case NODE:
+				parser.startNode(strings[s++]);
+				break;
+			case EDGE:
+				parser.startEdge(strings[s], strings[s + 1]);
+				s += 2;
+				break;
+			case DATA:
+				if (parser.startData(strings[s++])) {
+					parser.appendData(text, ranges[r], ranges[r + 1]);
+				}
+				r += 2;
+				parser.endData();
+				break;
+			case END:
+				parser.endElement();
+				break;
+			}
+		}
+		for (final Map.Entry<String, Integer> entry : unknownKeys.entrySet()) {
+			parser.unknownData(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private static GraphMLToken token(final XMLStreamReader reader) {
+		final String name = reader.getLocalName();
+		// without namespace processing the local name keeps its prefix
+		return GraphMLToken.fromString(name.indexOf(':') < 0 ? name
+				: name.substring(name.indexOf(':') + 1));
+	}
+
+	private void startElement(final XMLStreamReader reader) throws XMLStreamException {
+		final GraphMLToken token = token(reader);
+		if (token == null) {
+			skipElement(reader);
+			return;
+		}
+		switch (token) {
+		case GRAPH:
+			scope = GraphMLScope.GRAPH;
+			addOp(GRAPH);
+			addString(attribute(reader, GraphMLToken.ID));
+			addString(attribute(reader, GraphMLToken.EDGEDEFAULT));
+			break;
+		case NODE:
+			scope = GraphMLScope.NODE;
+			addOp(NODE);
+			addString(attribute(reader, GraphMLToken.ID));
+			break;
+		case EDGE:
+			scope = GraphMLScope.EDGE;
+			addOp(EDGE);
+			addString(attribute(reader, GraphMLToken.SOURCE));
+			addString(attribute(reader, GraphMLToken.TARGET));
+			break;
+		case DATA:
+			readData(reader);
+			break;
+		default:
+			// keys are only read in the header
+			skipElement(reader);
+		}
+	}
+
+	private void readData(final XMLStreamReader reader) throws XMLStreamException {
+		final String key = attribute(reader, GraphMLToken.KEY);
+		if (!handler.hasKey(scope, key)) {
+			if (!handler.isNonAttributeKey(key)) {
+				final Integer count = unknownKeys.get(key);
+				unknownKeys.put(key, count == null ? 1 : count + 1);
+			}
+			skipElement(reader);
+			return;
+		}
+		final int start = textLength;
+		int depth = 1;
+		while (depth > 0) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				addText(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				break;
+			}
+		}
+		addOp(DATA);
+		addString(key);
+		if (rangeCount + 2 > ranges.length) {
+			ranges = Arrays.copyOf(ranges, 2 * ranges.length);
+		}
+		ranges[rangeCount++] = start;
+		ranges[rangeCount++] = textLength - start;
+	}
+
+	private void addOp(final byte op) {
+		if (opCount == ops.length) {
+			ops = Arrays.copyOf(ops, 2 * ops.length);
+		}
+		ops[opCount++] = op;
+	}
+
+	private void addString(final String s) {
+		if (stringCount == strings.length) {
+			strings = Arrays.copyOf(strings, 2 * strings.length);
+		}
+		strings[stringCount++] = s;
+	}
+
+	private void addText(final char[] ch, final int start, final int length) {
+		final int newLength = textLength + length;
+		if (newLength > text.length) {
+			text = Arrays.copyOf(text, Math.max(newLength, 2 * text.length));
+		}
+		System.arraycopy(ch, start, text, textLength, length);
+		textLength = newLength;
+	}
+
+	private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private static String attribute(final XMLStreamReader reader, final GraphMLToken token) {
+		return reader.getAttributeValue(null, token.getTag());
+	}
+}
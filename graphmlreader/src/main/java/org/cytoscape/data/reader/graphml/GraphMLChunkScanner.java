@@ -0,0 +1,292 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds where a GraphML document can be split for the parallel import.
+ * The scan only looks at the markup (tags, comments, CDATA sections and
+ * processing instructions) without decoding the text, so it runs at about
+ * the speed of the memory, and cuts the content of the &lt;graph&gt; element
+ * at the start tags of its direct children (&lt;node&gt;, &lt;edge&gt; etc).
+ * Documents whose layout does not allow it are left to the sequential
+ * parser: non ASCII-compatible encodings, a DOCTYPE, more than one graph or
+ * markup after the graph.
+ * <p>
+ * The scan may also fill a {@link GraphMLDataIndex} with the byte ranges of
+ * the &lt;data&gt; of the nodes and edges, for the lazy attributes. The
+ * elements are then matched with the ones the parser reads by their order,
+ * so the documents with nodes or edges that are not direct children of the
+ * graph cannot be indexed.
+ */
+class GraphMLChunkScanner {
+
+	/**
+	 * Where the document is cut.
+	 */
+	static class Layout {
+		/* Encoding of the document */
+		String encoding;
+		/*
+		 * Start offsets of the chunks, the first one ends the header (the
+		 * prolog, the keys and the graph start tag) and the last one is the
+		 * end of the graph content
+		 */
+		long[] cuts;
+		/* Qualified names of the elements open at the end of the header */
+		List<String> openElements;
+
+		int chunkCount() {
+			return cuts.length - 1;
+		}
+	}
+
+	private static final String ASCII_MARKUP = "<?xml version='1.0'?>\"=/![]-";
+
+	private final MappedFile file;
+	private final long chunkSize;
+	private final GraphMLDataIndex index;
+	private long pos;
+
+	GraphMLChunkScanner(final MappedFile file, final long chunkSize) {
+		this(file, chunkSize, null);
+	}
+
+	/**
+	 * @param index
+	 *            gets the ranges of the &lt;data&gt; of the nodes and edges,
+	 *            null if not needed
+	 */
+	GraphMLChunkScanner(final MappedFile file, final long chunkSize, final GraphMLDataIndex index) {
+		this.file = file;
+		this.chunkSize = chunkSize;
+		this.index = index;
+	}
+
+	/**
+	 * @return the layout of the document, null if it cannot be split
+	 */
+	Layout scan() {
+		final long length = file.length();
+		pos = 0;
+		// skip the UTF-8 byte order mark, any other one is not ASCII-compatible
+		if (length >= 3 && file.get(0) == (byte) 0xEF && file.get(1) == (byte) 0xBB
+				&& file.get(2) == (byte) 0xBF) {
+			pos = 3;
+		}
+		while (pos < length && isSpace(file.get(pos))) pos++;
+		if (pos >= length || file.get(pos) != '<') return null;
+
+		final long first = pos;
+
+		final Layout layout = new Layout();
+		layout.encoding = "UTF-8";
+		final List<String> openElements = new ArrayList<String>();
+		final List<Long> cuts = new ArrayList<Long>();
+		int depth = 0;
+		int graphDepth = -1;
+		boolean graphClosed = false;
+		long lastCut = -1;
+		// node or edge being indexed, and the range of its <data>
+		GraphMLScope element = null;
+		long dataStart = -1;
+		long dataEnd = -1;
+		boolean inData = false;
+
+		while (pos < length) {
+			if (file.get(pos) != '<') {
+				pos++;
+				continue;
+			}
+			final long tagStart = pos;
+			if (pos + 1 >= length) return null;
+			final byte next = file.get(pos + 1);
+			if (next == '?') {
+				final long end = indexOf("?>", pos + 2);
+				if (end < 0) return null;
+				if (tagStart == first) {
+					final String encoding = declaredEncoding(tagStart, end);
+					if (encoding != null) {
+						if (!isAsciiCompatible(encoding)) return null;
+						layout.encoding = encoding;
+					}
+				}
+				pos = end + 2;
+			} else if (next == '!') {
+				final long end;
+				if (startsWith("<!--", pos)) {
+					end = indexOf("-->", pos + 4);
+				} else if (startsWith("<![CDATA[", pos)) {
+					end = indexOf("]]>", pos + 9);
+				} else {
+					// DOCTYPE, may declare entities
+					return null;
+				}
+				if (end < 0) return null;
+				pos = end + 3;
+			} else if (next == '/') {
+				final long end = indexOf(">", pos + 2);
+				if (end < 0) return null;
+				pos = end + 1;
+				depth--;
+				if (graphDepth < 0) {
+					if (openElements.isEmpty()) return null;
+					openElements.remove(openElements.size() - 1);
+				} else if (depth == graphDepth - 1 && !graphClosed) {
+					graphClosed = true;
+					if (cuts.isEmpty()) return null; // empty graph
+					cuts.add(tagStart);
+				} else if (element != null && depth == graphDepth + 1 && inData) {
+					inData = false;
+					dataEnd = pos;
+				} else if (element != null && depth == graphDepth) {
+					index.add(element, dataStart, dataEnd);
+					element = null;
+				}
+			} else {
+				final String name = readName(pos + 1);
+				final long end = tagEnd(pos + 1 + name.length());
+				if (name.length() == 0 || end < 0) return null;
+				pos = end + 1;
+				final boolean selfClosing = file.get(end - 1) == '/';
+				if (graphClosed) return null;
+				final GraphMLToken token = GraphMLToken.fromString(localName(name));
+				if (graphDepth < 0) {
+					if (token == GraphMLToken.GRAPH) {
+						if (selfClosing) return null;
+						graphDepth = depth + 1;
+					} else if (index != null && (token == GraphMLToken.NODE || token == GraphMLToken.EDGE)) {
+						return null;
+					}
+					if (!selfClosing) openElements.add(name);
+				} else if (depth == graphDepth) {
+					// direct child of the graph
+					if (lastCut < 0 || tagStart - lastCut >= chunkSize) {
+						cuts.add(tagStart);
+						lastCut = tagStart;
+					}
+					if (index != null && (token == GraphMLToken.NODE || token == GraphMLToken.EDGE)) {
+						final GraphMLScope scope = token == GraphMLToken.NODE ? GraphMLScope.NODE : GraphMLScope.EDGE;
+						if (selfClosing) {
+							index.add(scope, pos, pos);
+						} else {
+							element = scope;
+							dataStart = pos;
+							dataEnd = pos;
+						}
+					}
+				} else if (index != null) {
+					if (token == GraphMLToken.GRAPH || token == GraphMLToken.NODE || token == GraphMLToken.EDGE) {
+						// nested, or in another element
+						return null;
+					}
+					if (element != null && depth == graphDepth + 1 && token == GraphMLToken.DATA) {
+						if (dataEnd == dataStart) {
+							dataStart = tagStart;
+						}
+						dataEnd = pos;
+						inData = !selfClosing;
+					}
+				}
+				if (!selfClosing) depth++;
+			}
+		}
+		if (!graphClosed) return null;
+
+		layout.cuts = new long[cuts.size()];
+		for (int i = 0; i < layout.cuts.length; i++) {
+			layout.cuts[i] = cuts.get(i);
+		}
+		layout.openElements = openElements;
+		return layout;
+	}
+
+	private static boolean isSpace(final byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	private static String localName(final String name) {
+		return name.substring(name.indexOf(':') + 1);
+	}
+
+	private boolean startsWith(final String s, final long at) {
+		if (at + s.length() > file.length()) return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (file.get(at + i) != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the offset of the first occurrence of s from the given offset,
+	 *         -1 if there is none
+	 */
+	private long indexOf(final String s, final long from) {
+		final long last = file.length() - s.length();
+		final byte first = (byte) s.charAt(0);
+		for (long i = from; i <= last; i++) {
+			if (file.get(i) == first && startsWith(s, i)) return i;
+		}
+		return -1;
+	}
+
+	private String readName(final long from) {
+		final StringBuilder name = new StringBuilder();
+		for (long i = from; i < file.length(); i++) {
+			final byte b = file.get(i);
+			if (isSpace(b) || b == '/' || b == '>') break;
+			name.append((char) (b & 0xff));
+		}
+		return name.toString();
+	}
+
+	/**
+	 * @return the offset of the '&gt;' closing the start tag, skipping the
+	 *         quoted attribute values, -1 if there is none
+	 */
+	private long tagEnd(final long from) {
+		byte quote = 0;
+		for (long i = from; i < file.length(); i++) {
+			final byte b = file.get(i);
+			if (quote != 0) {
+				if (b == quote) quote = 0;
+			} else if (b == '"' || b == '\'') {
+				quote = b;
+			} else if (b == '>') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the encoding named by the XML declaration between the given
+	 *         offsets, null if it does not name one
+	 */
+	private String declaredEncoding(final long start, final long end) {
+		final StringBuilder decl = new StringBuilder();
+		for (long i = start; i < end; i++) {
+			decl.append((char) (file.get(i) & 0xff));
+		}
+		final String s = decl.toString();
+		if (!s.startsWith("<?xml")) return null;
+		final int at = s.indexOf("encoding");
+		if (at < 0) return null;
+		int open = at + "encoding".length();
+		while (open < s.length() && s.charAt(open) != '"' && s.charAt(open) != '\'') open++;
+		if (open >= s.length()) return null;
+		final int close = s.indexOf(s.charAt(open), open + 1);
+		return close < 0 ? null : s.substring(open + 1, close);
+	}
+
+	private static boolean isAsciiCompatible(final String encoding) {
+		try {
+			final Charset charset = Charset.forName(encoding);
+			return Arrays.equals(ASCII_MARKUP.getBytes("US-ASCII"), ASCII_MARKUP.getBytes(charset));
+		} catch (Exception e) {
+			return false;
+		}
+	}
+}
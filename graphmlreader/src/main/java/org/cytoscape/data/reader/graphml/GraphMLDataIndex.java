@@ -0,0 +1,124 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+ * Byte ranges of the &lt;data&gt; blocks of the nodes and edges of a
+ * document, in document order: the i-th range of a scope is the one of the
+ * i-th &lt;node&gt; or &lt;edge&gt; element, from the start of its first
+ * &lt;data&gt; child to the end of its last one. An element without data
+ * has an empty range. Filled by {@link GraphMLChunkScanner}.
+ * The ranges are complete elements, so the document without them is still
+ * well-formed, and is what the parser reads in lazy mode.
+ */
+class GraphMLDataIndex {
+
+	private final Ranges nodes = new Ranges();
+	private final Ranges edges = new Ranges();
+	private long dataBytes;
+
+	/**
+	 * Ranges of one scope, 12 bytes per element.
+	 */
+	private static class Ranges {
+		long[] starts = new long[1024];
+		int[] lengths = new int[1024];
+		int count;
+
+		void add(final long start, final int length) {
+			if (count == starts.length) {
+				starts = Arrays.copyOf(starts, 2 * count);
+				lengths = Arrays.copyOf(lengths, 2 * count);
+			}
+			starts[count] = start;
+			lengths[count] = length;
+			count++;
+		}
+	}
+
+	private Ranges ranges(final GraphMLScope scope) {
+		switch (scope) {
+		case NODE:
+			return nodes;
+		case EDGE:
+			return edges;
+		default:
+			throw new IllegalArgumentException("No data index of the " + scope + " scope");
+		}
+	}
+
+	/**
+	 * Adds the range of the next element of the scope.
+	 *
+	 * @param end
+	 *            end of the last &lt;data&gt; block, exclusive, the same as
+	 *            start if the element has none
+	 */
+	void add(final GraphMLScope scope, final long start, final long end) {
+		if (end - start > Integer.MAX_VALUE)
+			throw new GraphMLException("The <data> of a " + scope.tag + " are over 2 GB");
+		ranges(scope).add(start, (int) (end - start));
+		dataBytes += end - start;
+	}
+
+	int size(final GraphMLScope scope) {
+		return ranges(scope).count;
+	}
+
+	long start(final GraphMLScope scope, final int index) {
+		return ranges(scope).starts[index];
+	}
+
+	int length(final GraphMLScope scope, final int index) {
+		return ranges(scope).lengths[index];
+	}
+
+	/**
+	 * @return the total length of the ranges
+	 */
+	long dataBytes() {
+		return dataBytes;
+	}
+
+	/**
+	 * @return a stream of the file without the ranges of the nodes and edges
+	 */
+	InputStream streamWithoutData(final MappedFile file) {
+		return new SequenceInputStream(new Enumeration<InputStream>() {
+			// next range of each scope, the earlier one is skipped next
+			private int node = 0;
+			private int edge = 0;
+			private long pos = 0;
+
+			public boolean hasMoreElements() {
+				return pos < file.length();
+			}
+
+			public InputStream nextElement() {
+				if (!hasMoreElements()) throw new NoSuchElementException();
+				// the empty ranges do not cut the stream
+				while (node < nodes.count && nodes.lengths[node] == 0) node++;
+				while (edge < edges.count && edges.lengths[edge] == 0) edge++;
+				final long start = pos;
+				final Ranges next;
+				final int i;
+				if (node < nodes.count && (edge == edges.count || nodes.starts[node] < edges.starts[edge])) {
+					next = nodes;
+					i = node++;
+				} else if (edge < edges.count) {
+					next = edges;
+					i = edge++;
+				} else {
+					pos = file.length();
+					return file.stream(start, pos);
+				}
+				pos = next.starts[i] + next.lengths[i];
+				return file.stream(start, next.starts[i]);
+			}
+		});
+	}
+}
@@ -4,4 +4,8 @@ public class GraphMLException extends RuntimeException {
 	public GraphMLException(String message) {
 		super(message);
 	}
+
+	public GraphMLException(String message, Throwable cause) {
+		super(message, cause);
+	}
 }
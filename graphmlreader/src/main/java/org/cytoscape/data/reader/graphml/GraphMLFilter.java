@@ -1,9 +1,13 @@
 package org.cytoscape.data.reader.graphml;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.zip.GZIPInputStream;
 
 import cytoscape.data.ImportHandler;
 import cytoscape.data.readers.GraphReader;
@@ -14,15 +18,18 @@ public class GraphMLFilter extends CyFileFilter {
 	private static final String GRAPHML_NAMESPACE = "http://graphml.graphdrawing.org/xmlns";
 	private static final String GRAPHML_TAG = "graphml";
 
+	/* Bytes of a compressed file inflated to check its header */
+	private static final int HEADER_SIZE = 4096;
+
 	/**
 	 * GraphML Files are Graphs.
 	 */
 	private static String fileNature = ImportHandler.GRAPH_NATURE;
 	
 	/**
-	 * File Extensions.
+	 * File Extensions. Compressed files are .graphmlz, .graphml.gz or .xml.gz.
 	 */
-	private static String[] fileExtensions = { "xml", "graphml" };
+	private static String[] fileExtensions = { "xml", "graphml", "graphmlz", "gz" };
 	
 	/**
 	 * Filter Description.
@@ -64,7 +71,7 @@ public class GraphMLFilter extends CyFileFilter {
 		if (firstPass) {
 			//  Second test:  file header must contain the GraphML declaration
 			try {
-				final String header = getHeader(file);
+				final String header = getGraphMLHeader(file);
 
 				if (header.indexOf(GRAPHML_NAMESPACE) > 0 || header.indexOf(GRAPHML_TAG) > 0) {
 					return true;
@@ -90,7 +97,7 @@ public class GraphMLFilter extends CyFileFilter {
 		if (firstPass) {
 			//  Second test:  file header must contain the GraphML declaration
 			try {
-				final String header = getHeader(url);
+				final String header = getGraphMLHeader(url);
 				
 				if (header.contains("graphml")) {
 					return true;
@@ -102,4 +109,43 @@ public class GraphMLFilter extends CyFileFilter {
 		return false;
 
 	}
+
+	/**
+	 * Same as getHeader(), inflating the gzip-compressed files.
+	 */
+	private String getGraphMLHeader(File file) throws IOException {
+		final InputStream is = new BufferedInputStream(new FileInputStream(file));
+		try {
+			if (BackgroundGzipInputStream.isGzip(is)) {
+				return getCompressedHeader(is);
+			}
+		} finally {
+			is.close();
+		}
+		return getHeader(file);
+	}
+
+	private String getGraphMLHeader(URL url) throws IOException {
+		final String name = url.toString();
+		if (!name.endsWith("gz") && !name.endsWith("graphmlz")) {
+			return getHeader(url);
+		}
+		final InputStream is = new BufferedInputStream(url.openStream());
+		try {
+			return BackgroundGzipInputStream.isGzip(is) ? getCompressedHeader(is) : "";
+		} finally {
+			is.close();
+		}
+	}
+
+	private static String getCompressedHeader(InputStream compressed) throws IOException {
+		final InputStream is = new GZIPInputStream(compressed);
+		final byte[] header = new byte[HEADER_SIZE];
+		int length = 0;
+		int n;
+		while (length < header.length && (n = is.read(header, length, header.length - length)) > 0) {
+			length += n;
+		}
+		return new String(header, 0, length, "UTF-8");
+	}
 }
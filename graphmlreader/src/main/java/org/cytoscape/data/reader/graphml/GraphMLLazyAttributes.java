@@ -0,0 +1,450 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import cytoscape.logger.CyLogger;
+
+/**
+ * Attributes of the nodes and edges of a lazy import (see
+ * {@link GraphMLReader#setLazyAttributes(boolean)}), whose values are still
+ * in the file. The import recorded the byte range of the &lt;data&gt; of
+ * each node and edge; loading an attribute decodes its values from these
+ * ranges and stores them like the import would have, for all the elements
+ * at once. Each attribute is loaded once, the later calls return at once.
+ * <p>
+ * The values are read from the memory mapping of the file, which must not
+ * be changed until the attributes are loaded. The markup between the
+ * &lt;data&gt; elements is only scanned, not checked like the import does.
+ */
+public class GraphMLLazyAttributes {
+
+	private static final CyLogger logger = CyLogger.getLogger(GraphMLLazyAttributes.class);
+
+	private static final GraphMLScope[] SCOPES = { GraphMLScope.NODE, GraphMLScope.EDGE };
+
+	private final MappedFile file;
+	private final GraphMLDataIndex index;
+	private final GraphMLParser parser;
+	private final GraphSink sink;
+	private final CharsetDecoder decoder;
+	private final Set<Attribute> loaded;
+
+	// bytes of the current range and the text of the current value
+	private byte[] bytes;
+	private char[] text;
+	private int textLength;
+
+	GraphMLLazyAttributes(final MappedFile file, final String encoding, final GraphMLDataIndex index,
+			final GraphMLParser parser, final GraphSink sink) {
+		for (final GraphMLScope scope : SCOPES) {
+			if (index.size(scope) != parser.getLazyElements(scope).size())
+				throw new GraphMLException("The parser read " + parser.getLazyElements(scope).size() + " "
+						+ scope.tag + "s, the index has " + index.size(scope));
+		}
+		this.file = file;
+		this.index = index;
+		this.parser = parser;
+		this.sink = sink;
+		decoder = Charset.forName(encoding).newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		loaded = new HashSet<Attribute>();
+		bytes = new byte[1024];
+		text = new char[256];
+	}
+
+	/**
+	 * @param scope
+	 *            NODE or EDGE
+	 * @return the names of the attributes of the scope declared by the file
+	 */
+	public Set<String> getAttributeNames(final GraphMLScope scope) {
+		final Set<String> names = new LinkedHashSet<String>();
+		for (final Attribute attr : attributes(scope)) {
+			names.add(attr.name);
+		}
+		return names;
+	}
+
+	/**
+	 * @return true if the values of the attribute are loaded
+	 */
+	public synchronized boolean isLoaded(final GraphMLScope scope, final String name) {
+		for (final Attribute attr : attributes(scope)) {
+			if (attr.name.equals(name) && !loaded.contains(attr)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Loads the values of an attribute of the nodes or of the edges, if
+	 * they are not loaded yet.
+	 *
+	 * @param scope
+	 *            NODE or EDGE
+	 * @param name
+	 *            the attribute name, as declared by a &lt;key&gt;
+	 */
+	public synchronized void load(final GraphMLScope scope, final String name) throws IOException {
+		final List<Attribute> selected = new ArrayList<Attribute>();
+		for (final Attribute attr : attributes(scope)) {
+			if (attr.name.equals(name) && !loaded.contains(attr)) {
+				selected.add(attr);
+			}
+		}
+		load(scope, selected);
+	}
+
+	/**
+	 * Loads all the attributes that are not loaded yet, each scope in one
+	 * pass over the file.
+	 */
+	public synchronized void loadAll() throws IOException {
+		for (final GraphMLScope scope : SCOPES) {
+			final List<Attribute> selected = new ArrayList<Attribute>();
+			for (final Attribute attr : attributes(scope)) {
+				if (!loaded.contains(attr)) {
+					selected.add(attr);
+				}
+			}
+			load(scope, selected);
+		}
+	}
+
+	private List<Attribute> attributes(final GraphMLScope scope) {
+		if (scope != GraphMLScope.NODE && scope != GraphMLScope.EDGE)
+			throw new IllegalArgumentException("No lazy attributes of the " + scope + " scope");
+		return new ArrayList<Attribute>(parser.getKeys(scope).values());
+	}
+
+	private void load(final GraphMLScope scope, final List<Attribute> attrs) throws IOException {
+		if (attrs.isEmpty()) return;
+		final long start = System.nanoTime();
+		// the keys are markup, so in ASCII
+		final byte[][] keys = new byte[attrs.size()][];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = attrs.get(i).id.key.getBytes("US-ASCII");
+		}
+		int values = 0;
+		final int[] errors = new int[keys.length];
+		final IntList elements = parser.getLazyElements(scope);
+		for (int i = 0; i < elements.size(); i++) {
+			final int element = elements.get(i);
+			final int length = index.length(scope, i);
+			if (element == GraphSink.NO_ELEMENT || length == 0) continue;
+			read(index.start(scope, i), length);
+			int pos = 0;
+			while ((pos = nextData(pos, length)) >= 0) {
+				final int tagEnd = tagEnd(pos, length);
+				final int key = findKey(keys, pos, tagEnd);
+				if (bytes[tagEnd - 1] == '/') {
+					pos = tagEnd + 1;
+					continue;
+				}
+				textLength = 0;
+				pos = content(tagEnd + 1, length, key >= 0);
+				if (key < 0) continue;
+
+				int from = 0;
+				int to = textLength;
+				while (from < to && text[from] <= ' ') from++;
+				while (to > from && text[to - 1] <= ' ') to--;
+				if (from == to) continue;
+				try {
+					sink.attribute(scope, element, attrs.get(key), text, from, to - from);
+					values++;
+				} catch (NumberFormatException e) {
+					errors[key]++;
+				}
+			}
+		}
+		sink.end();
+		for (int k = 0; k < keys.length; k++) {
+			final Attribute attr = attrs.get(k);
+			loaded.add(attr);
+			if (errors[k] > 0) {
+				logger.warn(errors[k] + " values of <data> key " + attr.id.key + " are not a "
+						+ attr.datatype.getTag() + ", skipped");
+			}
+		}
+		logger.debug("Loaded " + values + " values of " + attrs.size() + " " + scope.tag + " attributes in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+	private void read(final long start, final int length) throws IOException {
+		if (length > bytes.length) {
+			bytes = new byte[Math.max(length, 2 * bytes.length)];
+		}
+		final InputStream in = file.stream(start, start + length);
+		int n = 0;
+		while (n < length) {
+			final int r = in.read(bytes, n, length - n);
+			if (r < 0) throw new IOException("The GraphML file was truncated since its import");
+			n += r;
+		}
+	}
+
+	/**
+	 * @return the offset of the next &lt;data&gt; start tag among the
+	 *         children of the element, -1 if there is none
+	 */
+	private int nextData(int pos, final int end) {
+		while (pos < end) {
+			if (bytes[pos] != '<') {
+				pos++;
+				continue;
+			}
+			final int next = pos + 1 < end ? bytes[pos + 1] : 0;
+			if (next == '!' || next == '?' || next == '/') {
+				pos = skipMarkup(pos, end);
+				continue;
+			}
+			final int nameEnd = nameEnd(pos + 1, end);
+			if (isData(pos + 1, nameEnd)) return pos;
+			// another child, skipped with its content
+			final int tagEnd = tagEnd(pos, end);
+			pos = bytes[tagEnd - 1] == '/' ? tagEnd + 1 : content(tagEnd + 1, end, false);
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads the content of an element up to its end tag.
+	 *
+	 * @param collect
+	 *            true to append its text to the current value
+	 * @return the offset after the end tag
+	 */
+	private int content(int pos, final int end, final boolean collect) {
+		int depth = 0;
+		int textStart = pos;
+		while (pos < end) {
+			final byte b = bytes[pos];
+			if (b == '&' && collect) {
+				appendText(textStart, pos);
+				pos = appendReference(pos, end);
+				textStart = pos;
+				continue;
+			}
+			if (b != '<') {
+				pos++;
+				continue;
+			}
+			if (collect) {
+				appendText(textStart, pos);
+			}
+			final int next = pos + 1 < end ? bytes[pos + 1] : 0;
+			if (next == '/') {
+				pos = skipMarkup(pos, end);
+				if (depth-- == 0) return pos;
+			} else if (next == '!' && startsWith("<![CDATA[", pos, end)) {
+				final int close = indexOf("]]>", pos + 9, end);
+				if (collect) {
+					appendText(pos + 9, close);
+				}
+				pos = close + 3;
+			} else if (next == '!' || next == '?') {
+				pos = skipMarkup(pos, end);
+			} else {
+				final int tagEnd = tagEnd(pos, end);
+				if (bytes[tagEnd - 1] != '/') depth++;
+				pos = tagEnd + 1;
+			}
+			textStart = pos;
+		}
+		return end;
+	}
+
+	/**
+	 * @return the offset after a comment, processing instruction or end tag
+	 */
+	private int skipMarkup(final int pos, final int end) {
+		if (startsWith("<!--", pos, end)) return indexOf("-->", pos + 4, end) + 3;
+		if (startsWith("<?", pos, end)) return indexOf("?>", pos + 2, end) + 2;
+		if (startsWith("<![CDATA[", pos, end)) return indexOf("]]>", pos + 9, end) + 3;
+		return indexOf(">", pos + 1, end) + 1;
+	}
+
+	private boolean startsWith(final String s, final int pos, final int end) {
+		if (pos + s.length() > end) return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (bytes[pos + i] != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the offset of s, or of the end if it is not found
+	 */
+	private int indexOf(final String s, final int from, final int end) {
+		for (int i = from; i <= end - s.length(); i++) {
+			if (startsWith(s, i, end)) return i;
+		}
+		return end;
+	}
+
+	private int nameEnd(int pos, final int end) {
+		while (pos < end && bytes[pos] > ' ' && bytes[pos] != '/' && bytes[pos] != '>') pos++;
+		return pos;
+	}
+
+	/**
+	 * @return true if the name, without its prefix, is "data"
+	 */
+	private boolean isData(final int start, final int end) {
+		int local = start;
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == ':') local = i + 1;
+		}
+		return end - local == 4 && startsWith("data", local, end);
+	}
+
+	/**
+	 * @return the offset of the '&gt;' closing the start tag at pos,
+	 *         skipping the quoted attribute values
+	 */
+	private int tagEnd(final int pos, final int end) {
+		byte quote = 0;
+		for (int i = pos + 1; i < end; i++) {
+			final byte b = bytes[i];
+			if (quote != 0) {
+				if (b == quote) quote = 0;
+			} else if (b == '"' || b == '\'') {
+				quote = b;
+			} else if (b == '>') {
+				return i;
+			}
+		}
+		return end - 1;
+	}
+
+	/**
+	 * @return the index of the value of the key attribute of the start tag
+	 *         in the keys, -1 if it is not one of them
+	 */
+	private int findKey(final byte[][] keys, final int pos, final int tagEnd) {
+		int i = nameEnd(pos + 1, tagEnd);
+		while (i < tagEnd) {
+			while (i < tagEnd && (bytes[i] <= ' ' || bytes[i] == '/')) i++;
+			final int nameStart = i;
+			while (i < tagEnd && bytes[i] > ' ' && bytes[i] != '=') i++;
+			final int nameEnd = i;
+			while (i < tagEnd && bytes[i] != '"' && bytes[i] != '\'') i++;
+			if (i >= tagEnd) return -1;
+			final byte quote = bytes[i];
+			final int valueStart = ++i;
+			while (i < tagEnd && bytes[i] != quote) i++;
+			final int valueEnd = i++;
+			if (nameEnd - nameStart == 3 && startsWith("key", nameStart, nameEnd)) {
+				for (int k = 0; k < keys.length; k++) {
+					if (matches(keys[k], valueStart, valueEnd)) return k;
+				}
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	private boolean matches(final byte[] key, final int start, final int end) {
+		if (end - start != key.length) return false;
+		for (int i = 0; i < key.length; i++) {
+			if (bytes[start + i] != key[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Appends the decoded bytes to the value, with the line ends
+	 * normalized as by the XML parser.
+	 */
+	private void appendText(final int start, final int end) {
+		if (start >= end) return;
+		// a character takes at least one byte in the ASCII-compatible encodings
+		ensureText(end - start);
+		final int from = textLength;
+		boolean ascii = true;
+		for (int i = start; i < end; i++) {
+			if (bytes[i] < 0) {
+				ascii = false;
+				break;
+			}
+		}
+		if (ascii) {
+			for (int i = start; i < end; i++) {
+				text[textLength++] = (char) bytes[i];
+			}
+		} else {
+			final CharBuffer out = CharBuffer.wrap(text, textLength, text.length - textLength);
+			decoder.reset();
+			decoder.decode(ByteBuffer.wrap(bytes, start, end - start), out, true);
+			decoder.flush(out);
+			textLength = out.position();
+		}
+		int to = from;
+		for (int i = from; i < textLength; i++) {
+			final char c = text[i];
+			if (c == '\r') {
+				text[to++] = '\n';
+				if (i + 1 < textLength && text[i + 1] == '\n') i++;
+			} else {
+				text[to++] = c;
+			}
+		}
+		textLength = to;
+	}
+
+	/**
+	 * Appends the character of the entity or character reference at pos,
+	 * or the reference as is if it is unknown.
+	 *
+	 * @return the offset after the reference
+	 */
+	private int appendReference(final int pos, final int end) {
+		int semicolon = pos + 1;
+		while (semicolon < end && semicolon - pos < 12 && bytes[semicolon] != ';') semicolon++;
+		if (semicolon >= end || bytes[semicolon] != ';') {
+			appendText(pos, pos + 1);
+			return pos + 1;
+		}
+		final String name = new String(bytes, pos + 1, semicolon - pos - 1, Charset.forName("US-ASCII"));
+		int c = -1;
+		if (name.equals("lt")) c = '<';
+		else if (name.equals("gt")) c = '>';
+		else if (name.equals("amp")) c = '&';
+		else if (name.equals("quot")) c = '"';
+		else if (name.equals("apos")) c = '\'';
+		else if (name.startsWith("#")) {
+			try {
+				c = name.startsWith("#x") ? Integer.parseInt(name.substring(2), 16)
+						: Integer.parseInt(name.substring(1));
+			} catch (NumberFormatException e) {
+				c = -1;
+			}
+		}
+		if (c < 0 || !Character.isValidCodePoint(c)) {
+			appendText(pos, semicolon + 1);
+		} else {
+			ensureText(2);
+			textLength += Character.toChars(c, text, textLength);
+		}
+		return semicolon + 1;
+	}
+
+	private void ensureText(final int more) {
+		if (textLength + more > text.length) {
+			text = Arrays.copyOf(text, Math.max(textLength + more, 2 * text.length));
+		}
+	}
+}
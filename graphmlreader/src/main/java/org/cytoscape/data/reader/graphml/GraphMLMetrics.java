@@ -0,0 +1,228 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import cytoscape.logger.CyLogger;
+
+/**
+ * Totals of the GraphML imports and exports, registered on the platform
+ * MBean server as {@value #OBJECT_NAME} when first used.
+ * The time of an import is split into XML tokenizing, Cytoscape object
+ * creation and attribute conversion, which tells whether slow imports are
+ * bound by the I/O and the parser or by the Cytoscape API.
+ */
+public class GraphMLMetrics implements GraphMLMetricsMBean {
+
+	public static final String OBJECT_NAME = "org.cytoscape.data.graphml:type=GraphMLMetrics";
+
+	private static final CyLogger logger = CyLogger.getLogger(GraphMLMetrics.class);
+
+	private static GraphMLMetrics instance = null;
+
+	private final AtomicLong imports = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong nodesRead = new AtomicLong();
+	private final AtomicLong edgesRead = new AtomicLong();
+	private final AtomicLong dataRead = new AtomicLong();
+	private final AtomicLong unknownData = new AtomicLong();
+	private final ConcurrentMap<String, AtomicLong> unknownKeys = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong conversionErrors = new AtomicLong();
+	private final ConcurrentMap<String, AtomicLong> conversionErrorKeys = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong tokenizingNanos = new AtomicLong();
+	private final AtomicLong creationNanos = new AtomicLong();
+	private final AtomicLong conversionNanos = new AtomicLong();
+	private final AtomicLong importNanos = new AtomicLong();
+	private volatile long lastPeakHeapDelta = 0;
+	private final AtomicLong maxPeakHeapDelta = new AtomicLong();
+	private volatile String lastImport = "";
+
+	private final AtomicLong exports = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong nodesWritten = new AtomicLong();
+	private final AtomicLong edgesWritten = new AtomicLong();
+	private final AtomicLong exportNanos = new AtomicLong();
+
+	private GraphMLMetrics() {
+	}
+
+	public static synchronized GraphMLMetrics getInstance() {
+		if (instance == null) {
+			instance = new GraphMLMetrics();
+			try {
+				final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				final ObjectName name = new ObjectName(OBJECT_NAME);
+				if (!server.isRegistered(name)) {
+					server.registerMBean(instance, name);
+				}
+			} catch (JMException e) {
+				logger.warn("Cannot register the GraphML metrics MBean", e);
+			}
+		}
+		return instance;
+	}
+
+	void recordImport(final ImportStatistics stats) {
+		imports.incrementAndGet();
+		bytesRead.addAndGet(stats.bytes);
+		nodesRead.addAndGet(stats.nodes);
+		edgesRead.addAndGet(stats.edges);
+		dataRead.addAndGet(stats.dataElements);
+		unknownData.addAndGet(stats.unknownDataElements);
+		addCounts(unknownKeys, stats.unknownKeys);
+		conversionErrors.addAndGet(stats.conversionErrors);
+		addCounts(conversionErrorKeys, stats.conversionErrorKeys);
+		tokenizingNanos.addAndGet(stats.tokenizingNanos());
+		creationNanos.addAndGet(stats.creationNanos);
+		conversionNanos.addAndGet(stats.conversionNanos);
+		importNanos.addAndGet(stats.totalNanos);
+		lastPeakHeapDelta = stats.peakHeapDelta;
+		long max;
+		do {
+			max = maxPeakHeapDelta.get();
+		} while (stats.peakHeapDelta > max && !maxPeakHeapDelta.compareAndSet(max, stats.peakHeapDelta));
+		lastImport = stats.toString();
+	}
+
+	private static void addCounts(final ConcurrentMap<String, AtomicLong> totals,
+			final Map<String, Integer> counts) {
+		for (final Map.Entry<String, Integer> entry : counts.entrySet()) {
+			AtomicLong count = totals.get(entry.getKey());
+			if (count == null) {
+				final AtomicLong newCount = new AtomicLong();
+				count = totals.putIfAbsent(entry.getKey(), newCount);
+				if (count == null) count = newCount;
+			}
+			count.addAndGet(entry.getValue());
+		}
+	}
+
+	private static String[] counts(final ConcurrentMap<String, AtomicLong> totals) {
+		final List<String> keys = new ArrayList<String>();
+		for (final Map.Entry<String, AtomicLong> entry : totals.entrySet()) {
+			keys.add(entry.getKey() + ": " + entry.getValue().get());
+		}
+		return keys.toArray(new String[keys.size()]);
+	}
+
+	/**
+	 * Records a GraphML export.
+	 */
+	public void recordExport(final long bytes, final int nodes, final int edges, final long nanos) {
+		exports.incrementAndGet();
+		bytesWritten.addAndGet(bytes);
+		nodesWritten.addAndGet(nodes);
+		edgesWritten.addAndGet(edges);
+		exportNanos.addAndGet(nanos);
+	}
+
+	private static long millis(final AtomicLong nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+	}
+
+	public long getImportCount() {
+		return imports.get();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	public long getNodesRead() {
+		return nodesRead.get();
+	}
+
+	public long getEdgesRead() {
+		return edgesRead.get();
+	}
+
+	public long getDataElementsRead() {
+		return dataRead.get();
+	}
+
+	public long getUnknownDataElements() {
+		return unknownData.get();
+	}
+
+	public String[] getUnknownDataKeys() {
+		return counts(unknownKeys);
+	}
+
+	public long getConversionErrors() {
+		return conversionErrors.get();
+	}
+
+	public String[] getConversionErrorKeys() {
+		return counts(conversionErrorKeys);
+	}
+
+	public long getTokenizingTime() {
+		return millis(tokenizingNanos);
+	}
+
+	public long getObjectCreationTime() {
+		return millis(creationNanos);
+	}
+
+	public long getAttributeConversionTime() {
+		return millis(conversionNanos);
+	}
+
+	public long getImportTime() {
+		return millis(importNanos);
+	}
+
+	public long getLastPeakHeapDelta() {
+		return lastPeakHeapDelta;
+	}
+
+	public long getMaxPeakHeapDelta() {
+		return maxPeakHeapDelta.get();
+	}
+
+	public String getLastImport() {
+		return lastImport;
+	}
+
+	public long getExportCount() {
+		return exports.get();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public long getNodesWritten() {
+		return nodesWritten.get();
+	}
+
+	public long getEdgesWritten() {
+		return edgesWritten.get();
+	}
+
+	public long getExportTime() {
+		return millis(exportNanos);
+	}
+
+	public void reset() {
+		for (final AtomicLong counter : new AtomicLong[] { imports, bytesRead, nodesRead, edgesRead,
+				dataRead, unknownData, conversionErrors, tokenizingNanos, creationNanos, conversionNanos, importNanos,
+				maxPeakHeapDelta, exports, bytesWritten, nodesWritten, edgesWritten, exportNanos }) {
+			counter.set(0);
+		}
+		unknownKeys.clear();
+		conversionErrorKeys.clear();
+		lastPeakHeapDelta = 0;
+		lastImport = "";
+	}
+}
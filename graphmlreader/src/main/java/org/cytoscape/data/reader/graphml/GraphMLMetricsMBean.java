@@ -0,0 +1,82 @@
+package org.cytoscape.data.reader.graphml;
+
+/**
+ * JMX view of {@link GraphMLMetrics}: totals over all the GraphML imports
+ * and exports since the start (or the last reset). Times are in ms.
+ */
+public interface GraphMLMetricsMBean {
+
+	long getImportCount();
+
+	long getBytesRead();
+
+	long getNodesRead();
+
+	long getEdgesRead();
+
+	long getDataElementsRead();
+
+	/**
+	 * @return number of &lt;data&gt; elements whose key is not declared
+	 */
+	long getUnknownDataElements();
+
+	/**
+	 * @return the undeclared &lt;data&gt; keys, as "key: count"
+	 */
+	String[] getUnknownDataKeys();
+
+	/**
+	 * @return number of values skipped as they are not of the type of their
+	 *         key
+	 */
+	long getConversionErrors();
+
+	/**
+	 * @return the keys with values of the wrong type, as "key: count"
+	 */
+	String[] getConversionErrorKeys();
+
+	/**
+	 * @return time spent reading and tokenizing the XML
+	 */
+	long getTokenizingTime();
+
+	/**
+	 * @return time spent creating the Cytoscape nodes and edges
+	 */
+	long getObjectCreationTime();
+
+	/**
+	 * @return time spent converting and storing the attribute values
+	 */
+	long getAttributeConversionTime();
+
+	long getImportTime();
+
+	/**
+	 * @return largest sample of the heap used by the last import over the
+	 *         heap used at its start, in bytes; the imports running at the
+	 *         same time count in each other's figures
+	 */
+	long getLastPeakHeapDelta();
+
+	long getMaxPeakHeapDelta();
+
+	/**
+	 * @return summary of the last import
+	 */
+	String getLastImport();
+
+	long getExportCount();
+
+	long getBytesWritten();
+
+	long getNodesWritten();
+
+	long getEdgesWritten();
+
+	long getExportTime();
+
+	void reset();
+}
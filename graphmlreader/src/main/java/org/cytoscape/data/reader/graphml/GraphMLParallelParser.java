@@ -0,0 +1,144 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLStreamException;
+
+import cytoscape.logger.CyLogger;
+
+/**
+ * Parallel import of a local GraphML file.
+ * The memory-mapped file is scanned for the boundaries of the top-level
+ * elements of the graph ({@link GraphMLChunkScanner}), the header (keys and
+ * graph start tag) is read first, then the content of the graph is cut into
+ * chunks that are tokenized on a thread pool ({@link GraphMLChunk}).
+ * The chunks are merged into the parser in document order while the next
+ * ones are being tokenized, so the network is the same as with the
+ * sequential import. Only a limited number of chunks is tokenized ahead of
+ * the merge, which bounds the memory used by the buffered elements.
+ */
+class GraphMLParallelParser {
+
+	private static final CyLogger logger = CyLogger.getLogger(GraphMLParallelParser.class);
+
+	static final long DEFAULT_CHUNK_SIZE = 4L << 20;
+
+	private final GraphMLParser handler;
+	private final int parallelism;
+	private final long chunkSize;
+	private GraphMLProgress progress;
+
+	GraphMLParallelParser(final GraphMLParser handler, final int parallelism) {
+		this(handler, parallelism, DEFAULT_CHUNK_SIZE);
+	}
+
+	GraphMLParallelParser(final GraphMLParser handler, final int parallelism, final long chunkSize) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be positive");
+		this.handler = handler;
+		this.parallelism = parallelism;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sets the progress that gets the offset of the merged chunks.
+	 */
+	void setProgress(final GraphMLProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Reads the whole document.
+	 *
+	 * @return false if the document cannot be split, nothing is read then
+	 *         and the caller should fall back to the sequential parser
+	 */
+	boolean parse(final MappedFile file) throws XMLStreamException {
+		final GraphMLChunkScanner.Layout layout = new GraphMLChunkScanner(file, chunkSize).scan();
+		if (layout == null) {
+			logger.debug("GraphML document layout does not allow a parallel import");
+			return false;
+		}
+		logger.debug("Parsing GraphML in " + layout.chunkCount() + " chunks on "
+				+ parallelism + " threads");
+
+		parseHeader(file, layout);
+		final ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		try {
+			final Deque<Future<GraphMLChunk>> pending = new ArrayDeque<Future<GraphMLChunk>>();
+			int next = 0;
+			int merged = 0;
+			while (next < layout.chunkCount() || !pending.isEmpty()) {
+				// keep the pool busy while the oldest chunk is merged
+				while (next < layout.chunkCount() && pending.size() < 2 * parallelism) {
+					pending.add(pool.submit(tokenizer(file, layout, next++)));
+				}
+				pending.remove().get().replay(handler);
+				merged++;
+				if (progress != null) {
+					progress.setBytes(layout.cuts[merged]);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GraphMLCancelledException();
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof XMLStreamException) throw (XMLStreamException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new GraphMLException("Cannot parse the document", cause);
+		} finally {
+			pool.shutdownNow();
+		}
+		handler.finishDocument();
+		return true;
+	}
+
+	/**
+	 * Reads the keys and the graph start tag, closing the elements left
+	 * open at the end of the header.
+	 */
+	private void parseHeader(final MappedFile file, final GraphMLChunkScanner.Layout layout)
+			throws XMLStreamException {
+		final StringBuilder closing = new StringBuilder();
+		for (int i = layout.openElements.size() - 1; i >= 0; i--) {
+			closing.append("</").append(layout.openElements.get(i)).append('>');
+		}
+		final InputStream header;
+		try {
+			header = new SequenceInputStream(file.stream(0, layout.cuts[0]),
+					new ByteArrayInputStream(closing.toString().getBytes(layout.encoding)));
+		} catch (UnsupportedEncodingException e) {
+			throw new XMLStreamException("Unsupported encoding " + layout.encoding, e);
+		}
+		new GraphMLStaxParser(handler).parsePart(header, layout.encoding);
+	}
+
+	private Callable<GraphMLChunk> tokenizer(final MappedFile file,
+			final GraphMLChunkScanner.Layout layout, final int index) {
+		final long start = layout.cuts[index];
+		final long end = layout.cuts[index + 1];
+		return new Callable<GraphMLChunk>() {
+			public GraphMLChunk call() throws XMLStreamException {
+				final GraphMLChunk chunk = new GraphMLChunk(handler);
+				try {
+					chunk.tokenize(file.stream(start, end), layout.encoding);
+				} catch (XMLStreamException e) {
+					throw new XMLStreamException("In the chunk at bytes " + start + "-" + end
+							+ " of the document: " + e.getMessage(), e.getLocation(), e);
+				}
+				return chunk;
+			}
+		};
+	}
+}
@@ -1,20 +1,20 @@
 package org.cytoscape.data.reader.graphml;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.apache.commons.lang.text.StrBuilder;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
-import cytoscape.CyEdge;
-import cytoscape.CyNode;
-import cytoscape.Cytoscape;
-import cytoscape.data.CyAttributes;
-import cytoscape.data.Semantics;
+import cytoscape.logger.CyLogger;
 
 /**
  * A SAX Parser for GraphML data file.
@@ -23,37 +23,91 @@ import cytoscape.data.Semantics;
  */
 public class GraphMLParser extends DefaultHandler {
 
-	// private static CyLogger logger = CyLogger.getLogger(GraphMLParser.class);
+	private static final CyLogger logger = CyLogger.getLogger(GraphMLParser.class);
 
-	private String networkName = null;
-
-	/* Internal lists of the created nodes and edges */
-	private List<CyNode> nodeList = null;
-	private List<CyEdge> edgeList = null;
+	/* Largest <data> buffer kept by reset() */
+	private static final int MAX_RETAINED_DATA = 1 << 16;
 
-	/* Map of XML ID's to nodes */
-	private Map<String, CyNode> nodeidMap = null;
+	/* Receives the graph */
+	private GraphSink sink = null;
 
-	/* Map of data type to nodes or edges */
-
-	private Map<AttributeId, Attribute> attributeMap = null;
+	private String networkName = null;
 
-	private CyNode currentNode = null;
-	private CyEdge currentEdge = null;
+	/* Numbers of the nodes and edges passed to the sink */
+	private int nodeCount = 0;
+	private int edgeCount = 0;
+
+	/* Map of XML ID's to the handles of the nodes */
+	private NodeIdIndex nodeIndex = null;
+	/* Finds the nodes the document refers to without declaring them, null if none */
+	private NodeLookup existingNodes = null;
+
+	/* Per-scope tables of the declared keys */
+	private Map<GraphMLScope, Map<String, Attribute>> keyTables = null;
+	private Map<String, Attribute> currentKeys = null;
+	/* Declared keys that are not attributes, e.g. yFiles graphics, or not selected */
+	private Set<String> nonAttributeKeys = null;
+	/* Attributes of the last <key>, one per scope, which get its <default> */
+	private final List<Attribute> lastKeyAttributes = new ArrayList<Attribute>();
+
+	/* Part of the document to import, null for all of it */
+	private GraphMLSelection selection = null;
+	/* true while skipping a node or edge that is not imported */
+	private boolean skipping = false;
+	/*
+	 * Scope of the element whose creation waits for the check of its
+	 * values, null if none, and what creates it
+	 */
+	private GraphMLScope pendingScope = null;
+	private String pendingNode = null;
+	private int pendingSource = GraphSink.NO_ELEMENT;
+	private int pendingTarget = GraphSink.NO_ELEMENT;
+	private ElementValues pendingValues = null;
 
 	// Attribute values
 	private GraphMLScope currentScope = null;
-	private String currentId;
-	private String currentAttributeKey = null;
-	private StrBuilder currentAttributeData = null;
-	private String currentEdgeSource = null;
-	private String currentEdgeTarget = null;
-
-	private Map<GraphMLScope, CyAttributes> cyAttributes;
+	/* Handle of the element that gets the <data> values */
+	private int currentElement = GraphSink.NO_ELEMENT;
+	private int graphElement = GraphSink.NO_ELEMENT;
+	/* true while reading an edge whose creation is deferred */
+	private boolean currentEdgeDeferred = false;
+	private Attribute currentAttribute = null;
+	private char[] currentAttributeData = null;
+	private int currentAttributeLength = 0;
 
 	/* node, edge, data parsing */
 	private boolean directed = false;
 
+	/* Edges waiting for their endpoints, null unless deferred edge mode is on */
+	private DeferredEdgeBuffer deferredEdges = null;
+
+	/*
+	 * Handles of the nodes and edges in document order, whose <data> are
+	 * left to the lazy attributes; null unless lazy data mode is on
+	 */
+	private IntList lazyNodes = null;
+	private IntList lazyEdges = null;
+	/* Positions in lazyEdges of the deferred edges, in the buffer order */
+	private IntList lazyDeferredEdges = null;
+
+	/* Progress of the import, null if not monitored */
+	private GraphMLProgress progress = null;
+
+	private ImportStatistics statistics = null;
+	// <data> values until the next timed conversion
+	private int conversionCountdown = 1;
+
+	/**
+	 * Finds the nodes that exist outside of the document, e.g. those of the
+	 * network a delta document is merged into.
+	 */
+	interface NodeLookup {
+		/**
+		 * @return the handle of the node, NO_ELEMENT if there is none
+		 */
+		int existingNode(String id);
+	}
+
 	/********************************************************************
 	 * Routines to handle keys
 	 *******************************************************************/
@@ -62,19 +116,24 @@ public class GraphMLParser extends DefaultHandler {
 	 * Main constructor for our parser. Initialize any local arrays. Note that
 	 * this parser is designed to be as memory efficient as possible. As a
 	 * result, a minimum number of local data structures
+	 * 
+	 * @param sink
+	 *            receives the graph
+	 * @param statistics
+	 *            gets the counters and timers of the import
 	 */
-	GraphMLParser() {
-		nodeList = new ArrayList<CyNode>();
-		edgeList = new ArrayList<CyEdge>();
-		nodeidMap = new HashMap<String, CyNode>();
-		currentAttributeData = new StrBuilder();
-
-		attributeMap = new HashMap<AttributeId, Attribute>();
-		currentScope = GraphMLScope.GRAPHML;
-		cyAttributes = new HashMap<GraphMLScope, CyAttributes>();
-		cyAttributes.put(GraphMLScope.NODE, Cytoscape.getNodeAttributes() );
-		cyAttributes.put(GraphMLScope.EDGE, Cytoscape.getEdgeAttributes() );
-		cyAttributes.put(GraphMLScope.GRAPH, Cytoscape.getNetworkAttributes() );
+	GraphMLParser(GraphSink sink, ImportStatistics statistics) {
+		this.sink = sink;
+		this.statistics = statistics;
+		nodeIndex = new NodeIdIndex(false);
+		currentAttributeData = new char[256];
+
+		keyTables = new EnumMap<GraphMLScope, Map<String, Attribute>>(GraphMLScope.class);
+		for ( final GraphMLScope scope : GraphMLScope.values() ) {
+			keyTables.put( scope, new HashMap<String, Attribute>() );
+		}
+		nonAttributeKeys = new HashSet<String>();
+		setScope( GraphMLScope.GRAPHML );
 	}
 
 	/********************************************************************
@@ -82,31 +141,168 @@ public class GraphMLParser extends DefaultHandler {
 	 * the resulting data.
 	 *******************************************************************/
 
-	int[] getNodeIndicesArray() {
+	String getNetworkName() {
+		return networkName;
+	}
 
-		System.out.println("Got nodes: " + nodeList.size());
+	ImportStatistics getStatistics() {
+		statistics.nodes = nodeCount;
+		statistics.edges = edgeCount;
+		return statistics;
+	}
 
-		int[] array = new int[nodeList.size()];
+	/**
+	 * Replaces the sink the graph is emitted to. Must be set before parsing.
+	 */
+	void setSink(GraphSink sink) {
+		this.sink = sink;
+	}
 
-		for (int i = 0; i < nodeList.size(); i++) {
-			array[i] = nodeList.get(i).getRootGraphIndex();
-		}
-		return array;
+	/**
+	 * Replaces the statistics that get the counters and timers. Must be set
+	 * before parsing.
+	 */
+	void setStatistics(ImportStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Enables deferred edge resolution: the edges referring to the nodes
+	 * that are not read yet are buffered and created at the end of the
+	 * document, so the nodes and edges may come in any order.
+	 */
+	void setDeferEdges(boolean deferEdges) {
+		deferredEdges = deferEdges ? new DeferredEdgeBuffer() : null;
+	}
+
+	/**
+	 * Imports only a part of the document. Must be set before parsing.
+	 *
+	 * @param selection
+	 *            the attributes and the elements to import, null for all
+	 */
+	void setSelection(GraphMLSelection selection) {
+		this.selection = selection;
+		pendingValues = selection != null ? new ElementValues() : null;
+	}
+
+	/**
+	 * Skips the &lt;data&gt; of the nodes and edges, which are read later by
+	 * {@link GraphMLLazyAttributes}, and records the handles of the elements
+	 * in document order to match them with their data. The data of the
+	 * graph are still read.
+	 */
+	void setLazyData(boolean lazyData) {
+		lazyNodes = lazyData ? new IntList() : null;
+		lazyEdges = lazyData ? new IntList() : null;
+		lazyDeferredEdges = lazyData ? new IntList() : null;
 	}
 
-	int[] getEdgeIndicesArray() {
+	/**
+	 * @return the handles of the nodes or edges whose data were skipped, in
+	 *         document order; NO_ELEMENT for the edges that were not created
+	 */
+	IntList getLazyElements(GraphMLScope scope) {
+		return scope == GraphMLScope.NODE ? lazyNodes : lazyEdges;
+	}
 
-		System.out.println("Got edges: " + edgeList.size());
+	/**
+	 * @return the declared keys of the scope, by id
+	 */
+	Map<String, Attribute> getKeys(GraphMLScope scope) {
+		return keyTables.get( scope );
+	}
 
-		int[] array = new int[edgeList.size()];
-		for (int i = 0; i < edgeList.size(); i++) {
-			array[i] = edgeList.get(i).getRootGraphIndex();
+	/**
+	 * Lets the edges refer to the nodes that are not in the document: an id
+	 * that is not declared is looked up once, and is then in the index as
+	 * if the node were read. Must be set before parsing.
+	 *
+	 * @param existingNodes
+	 *            finds the nodes, null if the edges only refer to the
+	 *            nodes of the document
+	 */
+	void setExistingNodes(NodeLookup existingNodes) {
+		this.existingNodes = existingNodes;
+	}
+
+	/**
+	 * Keeps the node id index outside of the Java heap, which leaves the heap
+	 * to Cytoscape when importing huge graphs. Must be set before parsing.
+	 */
+	void setOffHeapNodeIndex(boolean offHeap) {
+		if ( nodeIndex.isOffHeap() != offHeap ) {
+			nodeIndex = new NodeIdIndex(offHeap);
 		}
-		return array;
 	}
 
-	String getNetworkName() {
-		return networkName;
+	/**
+	 * Sets the progress the nodes and edges are reported to, which also
+	 * cancels the import.
+	 */
+	void setProgress(GraphMLProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Drops the state of an interrupted import: the deferred edges and the
+	 * node ids. The sink is not notified, what it got is up to its owner.
+	 */
+	void abort() {
+		if ( deferredEdges != null ) {
+			deferredEdges.dispose();
+		}
+		nodeIndex.clear();
+		skipping = false;
+		pendingScope = null;
+		if ( lazyNodes != null ) {
+			setLazyData( true );
+		}
+		nodeCount = 0;
+		edgeCount = 0;
+	}
+
+	/**
+	 * Brings the parser back to the state of a new one, without sink or
+	 * statistics, so it may read another document. The node id index and
+	 * the text buffer keep their memory, unless they grew large.
+	 */
+	void reset() {
+		if ( deferredEdges != null ) {
+			deferredEdges.dispose();
+			deferredEdges = null;
+		}
+		sink = null;
+		statistics = null;
+		progress = null;
+		networkName = null;
+		nodeCount = 0;
+		edgeCount = 0;
+		nodeIndex.reset();
+		existingNodes = null;
+		for ( final Map<String, Attribute> keys : keyTables.values() ) {
+			keys.clear();
+		}
+		nonAttributeKeys.clear();
+		lastKeyAttributes.clear();
+		setSelection( null );
+		skipping = false;
+		pendingScope = null;
+		pendingNode = null;
+		pendingSource = GraphSink.NO_ELEMENT;
+		pendingTarget = GraphSink.NO_ELEMENT;
+		currentElement = GraphSink.NO_ELEMENT;
+		graphElement = GraphSink.NO_ELEMENT;
+		currentEdgeDeferred = false;
+		currentAttribute = null;
+		if ( currentAttributeData.length > MAX_RETAINED_DATA ) {
+			currentAttributeData = new char[256];
+		}
+		currentAttributeLength = 0;
+		directed = false;
+		setLazyData( false );
+		conversionCountdown = 1;
+		setScope( GraphMLScope.GRAPHML );
 	}
 
 	/********************************************************************
@@ -121,89 +317,507 @@ public class GraphMLParser extends DefaultHandler {
 
 	@Override
 	public void endDocument() throws SAXException {
-
+		finishDocument();
 	}
 
 	@Override
 	public void startElement(String namespace, String localName, String qName,
 			Attributes atts) throws SAXException {
-		if (qName.equals(GraphMLToken.GRAPH.getTag())) {
-			currentScope = GraphMLScope.GRAPH;
-			currentId = Cytoscape.getCurrentNetwork().getIdentifier();
-			// parse directed or undirected
-			String edef = atts.getValue(GraphMLToken.EDGEDEFAULT.getTag());
-			directed = GraphMLToken.DIRECTED.getTag().equalsIgnoreCase(edef);
-
-			this.networkName = atts.getValue(GraphMLToken.ID.getTag());
-
-		} else if (qName.equals(GraphMLToken.KEY.getTag())) {
-			GraphMLScope scope = GraphMLScope.fromString( atts.getValue(GraphMLToken.FOR.getTag() ) );
-			Attribute attr = new Attribute( scope,
-					atts.getValue(GraphMLToken.ID.getTag() ),
+		final GraphMLToken token = GraphMLToken.fromString(qName);
+		if (token == null) return;
+		switch (token) {
+		case GRAPH:
+			startGraph(atts.getValue(GraphMLToken.ID.getTag()),
+					atts.getValue(GraphMLToken.EDGEDEFAULT.getTag()));
+			break;
+		case KEY:
+			addKey(atts.getValue(GraphMLToken.FOR.getTag()),
+					atts.getValue(GraphMLToken.ID.getTag()),
 					atts.getValue(GraphMLToken.ATTRNAME.getTag()),
-					GraphMLDataType.fromString( atts.getValue(GraphMLToken.ATTRTYPE.getTag()) ) );
-			if ( scope == GraphMLScope.ALL ) {
-				// if defined in every scope
-				for ( final GraphMLScope eachScope : GraphMLScope.values() ) {
-					if ( eachScope != GraphMLScope.ALL ) {
-						Attribute eachAttr = new Attribute( eachScope, attr.id.key,
-								attr.name, attr.datatype );
-						attributeMap.put( eachAttr.id, eachAttr );
-					}
-				}
-			} else {
-				attributeMap.put( attr.id,  attr );
-			}
-		} else if (qName.equals(GraphMLToken.NODE.getTag())) {
-			currentScope = GraphMLScope.NODE;
-			// Parse node entry.
-			currentId = atts.getValue(GraphMLToken.ID.getTag());
-			currentNode = Cytoscape.getCyNode(currentId, true);
-			nodeList.add(currentNode);
-			nodeidMap.put(currentId, currentNode);
-		} else if (qName.equals(GraphMLToken.EDGE.getTag())) {
-			currentScope = GraphMLScope.EDGE;
-			// Parse edge entry
-			currentEdgeSource = atts.getValue(GraphMLToken.SOURCE.getTag());
-			currentEdgeTarget = atts.getValue(GraphMLToken.TARGET.getTag());
-			CyNode sourceNode = nodeidMap.get(currentEdgeSource);
-			CyNode targetNode = nodeidMap.get(currentEdgeTarget);
-			currentEdge = Cytoscape.getCyEdge(sourceNode, targetNode,
-					Semantics.INTERACTION, "pp", true);
-			currentId = currentEdge.getIdentifier();
-			edgeList.add(currentEdge);
-		} else if (qName.equals(GraphMLToken.DATA.getTag())) {
-			currentAttributeData.clear();
-			currentAttributeKey = atts.getValue(GraphMLToken.KEY.getTag());
+					atts.getValue(GraphMLToken.ATTRTYPE.getTag()));
+			break;
+		case NODE:
+			startNode(atts.getValue(GraphMLToken.ID.getTag()));
+			break;
+		case EDGE:
+			startEdge(atts.getValue(GraphMLToken.SOURCE.getTag()),
+					atts.getValue(GraphMLToken.TARGET.getTag()));
+			break;
+		case DATA:
+			startData(atts.getValue(GraphMLToken.KEY.getTag()));
+			break;
+		case DEFAULT:
+			startDefault();
+			break;
 		}
 	}
 
 	@Override
 	public void characters(char[] ch, int start, int length) {
-		currentAttributeData.append(ch, start, length);
+		appendData(ch, start, length);
 	}
 
 	@Override
 	public void endElement(String uri, String localName, String qName)
 			throws SAXException {
-		
-		if (qName == GraphMLToken.DATA.getTag()) {
-			String dataText = currentAttributeData.toString().trim();
-			if ( dataText != null && dataText.length() > 0 ) {
-				final Attribute attr = attributeMap.get( new AttributeId( currentScope, currentAttributeKey ) );
-				if ( attr != null ) {
-					attr.setCyAttribute( cyAttributes.get( currentScope ), currentId, dataText );
-				} // FIXME warning attribute not found
+		final GraphMLToken token = GraphMLToken.fromString(qName);
+		if (token == null) return;
+		switch (token) {
+		case DATA:
+			endData();
+			break;
+		case DEFAULT:
+			endDefault();
+			break;
+		case NODE:
+		case EDGE:
+			endElement();
+			break;
+		}
+	}
+
+	/********************************************************************
+	 * Element routines. These are shared by the SAX callbacks above and by
+	 * the pull-based GraphMLStaxParser, which calls them directly.
+	 *******************************************************************/
+
+	private void setScope(GraphMLScope scope) {
+		currentScope = scope;
+		currentKeys = keyTables.get( scope );
+	}
+
+	void startGraph(String id, String edgeDefault) {
+		setScope( GraphMLScope.GRAPH );
+		// parse directed or undirected
+		directed = GraphMLToken.DIRECTED.getTag().equalsIgnoreCase(edgeDefault);
+		graphElement = sink.startGraph(id, directed);
+		currentElement = graphElement;
+
+		this.networkName = id;
+	}
+
+	void addKey(String forScope, String key, String name, String type) {
+		GraphMLScope scope = GraphMLScope.fromString( forScope );
+		Attribute attr = new Attribute( scope, key, name,
+				GraphMLDataType.fromString( type ) );
+		lastKeyAttributes.clear();
+		if ( attr.name == null ) {
+			// not an attribute, e.g. yFiles graphics
+			nonAttributeKeys.add( key );
+			return;
+		}
+		if ( selection != null && !selection.reads( attr ) ) {
+			// its values are skipped like the ones of the non attribute keys
+			nonAttributeKeys.add( key );
+			return;
+		}
+		if ( scope == GraphMLScope.ALL ) {
+			// if defined in every scope
+			for ( final GraphMLScope eachScope : GraphMLScope.values() ) {
+				if ( eachScope != GraphMLScope.ALL ) {
+					Attribute eachAttr = new Attribute( eachScope, attr.id.key,
+							attr.name, attr.datatype );
+					keyTables.get( eachScope ).put( eachAttr.id.key, eachAttr );
+					lastKeyAttributes.add( eachAttr );
+				}
+			}
+		} else if ( scope != null ) {
+			keyTables.get( scope ).put( attr.id.key, attr );
+			lastKeyAttributes.add( attr );
+		}
+	}
+
+	/**
+	 * Opens the &lt;default&gt; element of the last &lt;key&gt;.
+	 *
+	 * @return false if the key does not define an imported attribute, so the
+	 *         caller may skip the element contents
+	 */
+	boolean startDefault() {
+		currentAttributeLength = 0;
+		currentAttribute = lastKeyAttributes.isEmpty() ? null : lastKeyAttributes.get( 0 );
+		return currentAttribute != null;
+	}
+
+	/**
+	 * Closes the &lt;default&gt; element, its trimmed text becomes the value
+	 * of the elements without &lt;data&gt; for the key. The value is kept
+	 * by the attribute, not stored for each element.
+	 */
+	void endDefault() {
+		final Attribute attr = currentAttribute;
+		currentAttribute = null;
+		if ( attr == null || ( selection != null && !selection.keeps( attr ) ) ) return;
+		final String text = new String( currentAttributeData, 0, currentAttributeLength ).trim();
+		currentAttributeLength = 0;
+		if ( text.isEmpty() ) return;
+		try {
+			for ( final Attribute each : lastKeyAttributes ) {
+				each.setDefaultValue( text );
+			}
+		} catch ( NumberFormatException e ) {
+			logger.warn( "Default '" + text + "' of key " + attr.id.key + " is not a "
+					+ attr.datatype.getTag() + ", ignored" );
+		}
+	}
+
+	/**
+	 * Opens a &lt;node&gt; element.
+	 *
+	 * @return false if the node is not imported, so the caller may skip
+	 *         the element contents
+	 */
+	boolean startNode(String id) {
+		setScope( GraphMLScope.NODE );
+		if ( selection != null ) {
+			if ( !selection.acceptsNodeId( id ) ) {
+				statistics.skippedNodes++;
+				return skipElement();
+			}
+			if ( selection.hasConditions( GraphMLScope.NODE ) ) {
+				// created by endElement() if its values pass
+				startPending( GraphMLScope.NODE );
+				pendingNode = id;
+				return true;
+			}
+		}
+		currentElement = addNode(id);
+		return true;
+	}
+
+	private int addNode(String id) {
+		// Parse node entry.
+		final long start = System.nanoTime();
+		final int node = sink.node(id);
+		statistics.creationNanos += System.nanoTime() - start;
+		nodeCount++;
+		nodeIndex.put(id, node);
+		if ( lazyNodes != null ) {
+			lazyNodes.add(node);
+		}
+		if ( progress != null ) {
+			progress.check(nodeCount, edgeCount);
+		}
+		return node;
+	}
+
+	/**
+	 * @return the handle of the node, read or existing, NOT_FOUND if unknown
+	 */
+	private int findNode(String id) {
+		final int node = nodeIndex.get(id);
+		if ( node != NodeIdIndex.NOT_FOUND || existingNodes == null ) return node;
+		final int existing = existingNodes.existingNode(id);
+		if ( existing != GraphSink.NO_ELEMENT ) {
+			nodeIndex.put(id, existing);
+		}
+		return existing;
+	}
+
+	/**
+	 * Opens an &lt;edge&gt; element.
+	 *
+	 * @return false if the edge is not imported, so the caller may skip
+	 *         the element contents
+	 */
+	boolean startEdge(String source, String target) {
+		setScope( GraphMLScope.EDGE );
+		// Parse edge entry
+		final int sourceNode = findNode(source);
+		final int targetNode = findNode(target);
+		if ( sourceNode != NodeIdIndex.NOT_FOUND && targetNode != NodeIdIndex.NOT_FOUND ) {
+			if ( selection != null && selection.hasConditions( GraphMLScope.EDGE ) ) {
+				// created by endElement() if its values pass
+				startPending( GraphMLScope.EDGE );
+				pendingSource = sourceNode;
+				pendingTarget = targetNode;
+				return true;
+			}
+			currentElement = addEdge(sourceNode, targetNode);
+			if ( lazyEdges != null ) {
+				lazyEdges.add(currentElement);
+			}
+			return true;
+		}
+		currentElement = GraphSink.NO_ELEMENT;
+		if ( lazyEdges != null ) {
+			lazyEdges.add(GraphSink.NO_ELEMENT);
+		}
+		if ( deferredEdges == null ) {
+			undefinedEndpoint(source, target);
+			return skipElement();
+		}
+		if ( progress != null ) {
+			progress.check(nodeCount, edgeCount);
+		}
+		try {
+			deferredEdges.add(source, target);
+		} catch (IOException e) {
+			throw new GraphMLException("Cannot buffer the edge " + source
+					+ " -> " + target, e);
+		}
+		if ( lazyEdges != null ) {
+			// the handle is set when the edge is resolved
+			lazyDeferredEdges.add(lazyEdges.size() - 1);
+		}
+		// the edge <data> is buffered with the edge
+		currentEdgeDeferred = true;
+		return true;
+	}
+
+	/**
+	 * Ignores the rest of the current node or edge.
+	 *
+	 * @return false
+	 */
+	private boolean skipElement() {
+		currentElement = GraphSink.NO_ELEMENT;
+		skipping = true;
+		return false;
+	}
+
+	/**
+	 * Drops an edge to a node that is not read, or not imported.
+	 */
+	private void undefinedEndpoint(String source, String target) {
+		if ( selection != null && selection.filtersNodes() ) {
+			statistics.skippedEdges++;
+		} else {
+			logger.warn("Edge " + source + " -> " + target
+					+ " refers to an undefined node, ignored");
+		}
+	}
+
+	private void startPending(GraphMLScope scope) {
+		currentElement = GraphSink.NO_ELEMENT;
+		pendingScope = scope;
+		pendingValues.clear();
+	}
+
+	/**
+	 * Creates the pending element and stores its values, if they pass the
+	 * conditions of the selection.
+	 */
+	private void finishPending() {
+		final GraphMLScope scope = pendingScope;
+		pendingScope = null;
+		if ( !selection.accepts( scope, pendingValues ) ) {
+			if ( scope == GraphMLScope.NODE ) {
+				statistics.skippedNodes++;
+			} else {
+				statistics.skippedEdges++;
+			}
+			return;
+		}
+		final int element = scope == GraphMLScope.NODE ? addNode( pendingNode )
+				: addEdge( pendingSource, pendingTarget );
+		for ( int i = 0; i < pendingValues.size(); i++ ) {
+			setValue( scope, element, pendingValues.attribute( i ), pendingValues.text(),
+					pendingValues.start( i ), pendingValues.length( i ) );
+		}
+	}
+
+	private int addEdge(int sourceNode, int targetNode) {
+		final long start = System.nanoTime();
+		final int edge = sink.edge(sourceNode, targetNode);
+		statistics.creationNanos += System.nanoTime() - start;
+		edgeCount++;
+		if ( progress != null ) {
+			progress.check(nodeCount, edgeCount);
+		}
+		return edge;
+	}
+
+	/**
+	 * Opens a &lt;data&gt; element.
+	 * 
+	 * @return false if the key is not declared in the current scope (or
+	 *         carries no attribute name, like the yFiles graphics keys), so
+	 *         the caller may skip the element contents
+	 */
+	boolean startData(String key) {
+		currentAttributeLength = 0;
+		if ( skipping ) {
+			currentAttribute = null;
+			return false;
+		}
+		currentAttribute = currentKeys.get( key );
+		if ( currentAttribute == null && !nonAttributeKeys.contains( key ) ) {
+			unknownData( key, 1 );
+		}
+		if ( lazyNodes != null && currentScope != GraphMLScope.GRAPH ) {
+			// read by the lazy attributes
+			currentAttribute = null;
+		}
+		return currentAttribute != null;
+	}
+
+	/**
+	 * Counts &lt;data&gt; elements whose key is not declared in their scope.
+	 */
+	void unknownData(String key, int count) {
+		if ( !statistics.unknownKeys.containsKey( key ) ) {
+			logger.debug( "Undeclared <data> key " + key + " ignored" );
+		}
+		statistics.unknownKey( key, count );
+	}
+
+	/**
+	 * Counts the values that are not of the type of their attribute, they
+	 * are skipped.
+	 */
+	private void conversionError(Attribute attr, char[] data, int start, int length) {
+		if ( !statistics.conversionErrorKeys.containsKey( attr.id.key ) ) {
+			logger.warn( "Value '" + new String( data, start, length ) + "' of <data> key " + attr.id.key
+					+ " is not a " + attr.datatype.getTag() + ", the values of the key that cannot be converted are skipped" );
+		}
+		statistics.conversionError( attr.id.key );
+	}
+
+	/**
+	 * @return true if the key is declared, but does not define an attribute
+	 */
+	boolean isNonAttributeKey(String key) {
+		return nonAttributeKeys.contains( key );
+	}
+
+	/**
+	 * Checks a &lt;data&gt; key without changing the parser state, so it may
+	 * be called from other threads once the keys are read.
+	 */
+	boolean hasKey(GraphMLScope scope, String key) {
+		return keyTables.get( scope ).containsKey( key );
+	}
+
+	/**
+	 * Collects the text of the current &lt;data&gt; element.
+	 */
+	void appendData(char[] ch, int start, int length) {
+		if ( currentAttribute == null ) return;
+		final int newLength = currentAttributeLength + length;
+		if ( newLength > currentAttributeData.length ) {
+			currentAttributeData = Arrays.copyOf( currentAttributeData,
+					Math.max( newLength, 2 * currentAttributeData.length ) );
+		}
+		System.arraycopy( ch, start, currentAttributeData, currentAttributeLength, length );
+		currentAttributeLength = newLength;
+	}
+
+	/**
+	 * Closes the current &lt;data&gt; element and stores its trimmed text.
+	 */
+	void endData() {
+		final Attribute attr = currentAttribute;
+		currentAttribute = null;
+		if ( attr == null ) return; // counted by startData()
+		statistics.dataElements++;
+
+		// trim in place
+		int start = 0;
+		int end = currentAttributeLength;
+		while ( start < end && currentAttributeData[start] <= ' ' ) start++;
+		while ( end > start && currentAttributeData[end - 1] <= ' ' ) end--;
+		currentAttributeLength = 0;
+		if ( start == end ) return;
+
+		if ( currentEdgeDeferred ) {
+			deferredEdges.addData( attr.id.key, currentAttributeData, start, end - start );
+		} else if ( pendingScope != null ) {
+			pendingValues.add( attr, currentAttributeData, start, end - start );
+		} else if ( currentElement != GraphSink.NO_ELEMENT ) {
+			setValue( currentScope, currentElement, attr, currentAttributeData, start, end - start );
+		}
+	}
+
+	private void setValue(GraphMLScope scope, int element, Attribute attr,
+			char[] data, int start, int length) {
+		if ( selection != null && !selection.keeps( attr ) ) return; // only read for a condition
+		// time one conversion out of CONVERSION_SAMPLING, without the batch flushes
+		final boolean timed = --conversionCountdown == 0;
+		long startTime = 0;
+		if ( timed ) {
+			startTime = System.nanoTime() - statistics.flushNanos;
+		}
+		try {
+			sink.attribute( scope, element, attr, data, start, length );
+		} catch ( NumberFormatException e ) {
+			conversionError( attr, data, start, length );
+		}
+		if ( timed ) {
+			final long endTime = System.nanoTime() - statistics.flushNanos;
+			statistics.conversionNanos += ( endTime - startTime ) * ImportStatistics.CONVERSION_SAMPLING;
+			conversionCountdown = ImportStatistics.CONVERSION_SAMPLING;
+		}
+	}
+
+	/**
+	 * Closes the current &lt;node&gt; or &lt;edge&gt; element.
+	 */
+	void endElement() {
+		if ( pendingScope != null ) {
+			finishPending();
+		}
+		setScope( GraphMLScope.GRAPH ); // FIXME what if nested?
+		currentElement = graphElement;
+		currentEdgeDeferred = false;
+		skipping = false;
+	}
+
+	void finishDocument() {
+		if ( deferredEdges != null && deferredEdges.size() > 0 ) {
+			resolveDeferredEdges();
+		}
+		// the end of the sink stores the pending values, the flushes
+		// before it were not sampled
+		final long flushed = statistics.flushNanos;
+		final long start = System.nanoTime();
+		sink.end();
+		statistics.conversionNanos += System.nanoTime() - start + flushed;
+	}
+
+	private void resolveDeferredEdges() {
+		logger.debug("Resolving " + deferredEdges.size() + " deferred edges");
+		try {
+			deferredEdges.resolve(new DeferredEdgeBuffer.Visitor() {
+				private int edge = GraphSink.NO_ELEMENT;
+				private int resolved = 0;
+
+				public void edge(String source, String target) {
+					if ( pendingScope != null ) {
+						finishPending();
+					}
+					final int sourceNode = findNode(source);
+					final int targetNode = findNode(target);
+					if ( sourceNode == NodeIdIndex.NOT_FOUND || targetNode == NodeIdIndex.NOT_FOUND ) {
+						undefinedEndpoint(source, target);
+						edge = GraphSink.NO_ELEMENT;
+					} else if ( selection != null && selection.hasConditions( GraphMLScope.EDGE ) ) {
+						startPending( GraphMLScope.EDGE );
+						pendingSource = sourceNode;
+						pendingTarget = targetNode;
+						edge = GraphSink.NO_ELEMENT;
+					} else {
+						edge = addEdge(sourceNode, targetNode);
+					}
+					if ( lazyEdges != null ) {
+						lazyEdges.set(lazyDeferredEdges.get(resolved++), edge);
+					}
+				}
+
+				public void data(String key, char[] text, int start, int length) {
+					if ( pendingScope != null ) {
+						pendingValues.add( keyTables.get( GraphMLScope.EDGE ).get( key ), text, start, length );
+					} else if ( edge != GraphSink.NO_ELEMENT ) {
+						setValue( GraphMLScope.EDGE, edge, keyTables.get( GraphMLScope.EDGE ).get( key ),
+								text, start, length );
+					}
+				}
+			});
+			if ( pendingScope != null ) {
+				finishPending();
 			}
-			currentAttributeData.clear();
-		}
-		else if ( qName == GraphMLToken.NODE.getTag()
-				|| qName == GraphMLToken.EDGE.getTag()
-		){
-			currentScope = GraphMLScope.GRAPH; // FIXME what if nested?
-			currentId = Cytoscape.getCurrentNetwork().getIdentifier();
-			currentNode = null;
-			currentEdge = null;
+		} catch (IOException e) {
+			throw new GraphMLException("Cannot read the deferred edges back", e);
 		}
 	}
 
@@ -0,0 +1,11 @@
+package org.cytoscape.data.reader.graphml;
+
+/**
+ * XML engines available to {@link GraphMLReader}.
+ */
+public enum GraphMLParserEngine {
+	// pull-based javax.xml.stream parser driving GraphMLParser directly
+	STAX,
+	// SAX callbacks into GraphMLParser
+	SAX;
+}
@@ -0,0 +1,150 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import cytoscape.task.TaskMonitor;
+
+/**
+ * Progress and cancellation of an import.
+ * The bytes are counted by the input stream (or set by the parallel
+ * parser), the parser calls {@link #check(int, int)} for every node and
+ * edge. The monitor is updated from the parser thread at most every
+ * {@link #REPORT_INTERVAL} ms with the percentage of the document read and
+ * the throughput in MB/s, nodes/s and edges/s. The import is cancelled by
+ * {@link #cancel()} or by interrupting the parser thread.
+ */
+class GraphMLProgress {
+
+	static final long REPORT_INTERVAL = 500;
+
+	/* Elements between two checks of the clock */
+	private static final int CHECK_INTERVAL = 1024;
+
+	private final TaskMonitor monitor;
+	private final long length;
+	private final long startTime;
+
+	/* Gets the heap samples, null if none */
+	private ImportStatistics statistics;
+
+	private volatile long bytes;
+	private volatile boolean cancelled;
+
+	private int countdown;
+	private long lastReport;
+
+	/**
+	 * @param monitor
+	 *            monitor to update, may be null
+	 * @param length
+	 *            length of the document in bytes, 0 if unknown
+	 */
+	GraphMLProgress(final TaskMonitor monitor, final long length) {
+		this.monitor = monitor;
+		this.length = length;
+		this.startTime = System.currentTimeMillis();
+		this.lastReport = startTime;
+		// check the cancellation at the first element
+		this.countdown = 1;
+	}
+
+	/**
+	 * Requests the cancellation of the import, may be called from any thread.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Samples the heap into the statistics at every check of the clock.
+	 */
+	void setStatistics(final ImportStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	boolean isCancelled() {
+		return cancelled || Thread.currentThread().isInterrupted();
+	}
+
+	long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Sets the number of bytes read, for inputs that are not counted
+	 * by {@link #count(InputStream)}.
+	 */
+	void setBytes(final long bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * @return a stream that counts the bytes read from the given one
+	 */
+	InputStream count(final InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				final int b = super.read();
+				if (b >= 0) bytes++;
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				final int n = super.read(b, off, len);
+				if (n > 0) bytes += n;
+				return n;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				final long skipped = super.skip(n);
+				bytes += skipped;
+				return skipped;
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Called by the parser for every node and edge.
+	 *
+	 * @throws GraphMLCancelledException
+	 *             if the import is cancelled
+	 */
+	void check(final int nodes, final int edges) {
+		if (--countdown > 0) return;
+		countdown = CHECK_INTERVAL;
+		if (isCancelled()) throw new GraphMLCancelledException();
+		if (statistics != null) {
+			statistics.sampleHeap();
+		}
+
+		final long now = System.currentTimeMillis();
+		if (now - lastReport < REPORT_INTERVAL) return;
+		lastReport = now;
+		report(now, nodes, edges);
+	}
+
+	private void report(final long now, final int nodes, final int edges) {
+		if (monitor == null) return;
+		final long read = bytes;
+		final double seconds = Math.max(now - startTime, 1) / 1000.0;
+		if (length > 0) {
+			final int percent = (int) Math.min(99, 100 * read / length);
+			monitor.setPercentCompleted(percent);
+			if (read > 0) {
+				monitor.setEstimatedTimeRemaining((long) ((length - read) * (now - startTime) / (double) read));
+			}
+		}
+		monitor.setStatus(String.format("Loading GraphML data... %.1f MB/s, %d nodes/s, %d edges/s",
+				read / seconds / (1 << 20), (long) (nodes / seconds), (long) (edges / seconds)));
+	}
+}
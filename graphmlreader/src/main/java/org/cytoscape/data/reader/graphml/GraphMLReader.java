@@ -4,20 +4,25 @@
 
 package org.cytoscape.data.reader.graphml;
 
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URL;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLStreamException;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.ParserAdapter;
 
+import cytoscape.CyNetwork;
 import cytoscape.data.readers.AbstractGraphReader;
 import cytoscape.logger.CyLogger;
 import cytoscape.task.TaskMonitor;
@@ -27,13 +32,44 @@ import cytoscape.util.URLUtil;
 public class GraphMLReader extends AbstractGraphReader {
 	
 	private static final CyLogger logger = CyLogger.getLogger(GraphMLReader.class);
+
+	// idle parsers, shared by the imports so that small files do not pay for their setup
+	private static final ObjectPool<GraphMLParser> PARSERS = new ObjectPool<GraphMLParser>();
+	private static final ObjectPool<SAXParser> SAX_PARSERS = new ObjectPool<SAXParser>();
 	
 	private URL targetURL;
 
 	// GraphML file name to be loaded.
 	private String networkName = null;
 	private InputStream networkStream;
+	// parser of the running import, or the one kept by the lazy attributes
 	private GraphMLParser parser;
+	private ImportStatistics statistics;
+	private CytoscapeGraphSink cytoscapeSink;
+	private GraphSink sink;
+	private GraphMLSnapshotCache snapshotCache;
+	// key of the file in the cache
+	private GraphMLSnapshot.Key snapshotKey;
+	// id of the graph of the last import
+	private String graphId;
+	private GraphMLParserEngine engine = GraphMLParserEngine.STAX;
+	private int parallelism = 1;
+	private boolean memoryMapping = true;
+	private boolean lazyAttributes = false;
+	private boolean deferEdges = false;
+	private boolean offHeapNodeIndex = false;
+	private GraphMLSelection selection;
+	// network the document is merged into, null to build a new one
+	private CyNetwork mergeTarget;
+	private String removalMarker;
+	// values of the nodes and edges left in the file by a lazy import
+	private GraphMLLazyAttributes lazy;
+	// <default> of the keys of the last import
+	private GraphMLAttributeDefaults attributeDefaults;
+
+	// progress of the running import
+	private volatile GraphMLProgress progress;
+	private volatile boolean cancelled = false;
 
 	// For exception handling
 	private TaskMonitor taskMonitor;
@@ -62,7 +98,7 @@ public class GraphMLReader extends AbstractGraphReader {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		parser = new GraphMLParser();
+		createParser();
 	}
 
 	/**
@@ -76,8 +112,14 @@ public class GraphMLReader extends AbstractGraphReader {
 	public GraphMLReader(final String fileName, final TaskMonitor monitor) {
 		super(fileName);
 		this.taskMonitor = monitor;
-		networkStream = FileUtil.getInputStream(fileName, monitor);
-		parser = new GraphMLParser();
+		// the stream is opened by read(), unless the file is memory-mapped
+		createParser();
+	}
+
+	private void createParser() {
+		statistics = new ImportStatistics();
+		cytoscapeSink = new CytoscapeGraphSink(statistics);
+		sink = cytoscapeSink;
 	}
 
 	/**
@@ -90,6 +132,212 @@ public class GraphMLReader extends AbstractGraphReader {
 		this.taskMonitor = monitor;
 	}
 
+	/**
+	 * Selects the XML engine used to read the document. StAX is used by
+	 * default, SAX is kept as a fallback.
+	 * 
+	 * @param engine
+	 *            the engine to use
+	 */
+	public void setParserEngine(GraphMLParserEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Enables deferred edge resolution, so the edges may precede the nodes
+	 * they connect. Unresolved edges are buffered (on disk past a threshold)
+	 * and created at the end of the document.
+	 * 
+	 * @param deferEdges
+	 *            true to defer the edges with unknown endpoints
+	 */
+	public void setDeferredEdgeResolution(boolean deferEdges) {
+		this.deferEdges = deferEdges;
+	}
+
+	/**
+	 * Sets how many values of a GraphML attribute are buffered before they
+	 * are stored into CyAttributes. The values are stored column by column,
+	 * the remaining ones at the end of the document. Cytoscape 2.8 has no
+	 * bulk setter, so a column still takes one setAttribute() per value;
+	 * the batches only convert the values into primitive arrays first and
+	 * group the stores, at the cost of keeping the ids of the elements.
+	 * 
+	 * @param batchSize
+	 *            number of values per column, 0 (the default) to store each
+	 *            value as it is read
+	 */
+	public void setAttributeBatchSize(int batchSize) {
+		cytoscapeSink.setAttributeBatchSize(batchSize);
+	}
+
+	/**
+	 * Sends the graph to the given sink instead of building it in
+	 * Cytoscape, e.g. to fill other structures in a headless service.
+	 * getNodeIndicesArray() and getEdgeIndicesArray() are empty then, and a
+	 * cancelled import leaves what the sink got to its owner.
+	 * 
+	 * @param sink
+	 *            the sink, null for Cytoscape
+	 */
+	public void setGraphSink(GraphSink sink) {
+		this.sink = sink != null ? sink : cytoscapeSink;
+	}
+
+	/**
+	 * Caches the graphs of the local files in binary snapshots. A file that
+	 * is unchanged since its last import is read from its snapshot, which
+	 * skips the XML parsing; otherwise the graph is recorded while the file
+	 * is parsed and the snapshot is written at the end.
+	 * 
+	 * @param cache
+	 *            the cache, null (the default) to always parse the files
+	 */
+	public void setSnapshotCache(GraphMLSnapshotCache cache) {
+		this.snapshotCache = cache;
+	}
+
+	/**
+	 * Keeps the index of the GraphML node ids outside of the Java heap
+	 * (about 30 to 50 bytes per node with short ids), which leaves the heap
+	 * to Cytoscape when importing graphs of millions of nodes.
+	 *
+	 * @param offHeap
+	 *            true to allocate the index in direct buffers
+	 */
+	public void setOffHeapNodeIndex(boolean offHeap) {
+		this.offHeapNodeIndex = offHeap;
+	}
+
+	/**
+	 * Sets how many threads tokenize the document. With more than one, a
+	 * memory-mapped local file read with the StAX engine is cut at the
+	 * boundaries of its nodes and edges, and the chunks are tokenized in
+	 * parallel and merged in document order. Other documents are read
+	 * sequentially.
+	 * 
+	 * @param parallelism
+	 *            number of threads, 1 (the default) for the sequential import
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Enables reading the local files through a read-only memory mapping,
+	 * so the parser gets the bytes straight from the page cache instead of
+	 * a chain of buffered file streams. Gzip-compressed files are inflated
+	 * from the mapping. On by default.
+	 * 
+	 * @param memoryMapping
+	 *            false to always read the files as streams
+	 */
+	public void setMemoryMapping(boolean memoryMapping) {
+		this.memoryMapping = memoryMapping;
+	}
+
+	/**
+	 * Imports only a part of the document: some attributes, the nodes and
+	 * edges that pass some conditions. The values of the other attributes
+	 * and the other elements are skipped by the XML parser, without being
+	 * collected or created in Cytoscape. The snapshot cache and the lazy
+	 * attributes do not apply to a partial import.
+	 * 
+	 * @param selection
+	 *            the part to import, null (the default) for the whole
+	 *            document
+	 */
+	public void setSelection(GraphMLSelection selection) {
+		this.selection = selection;
+	}
+
+	/**
+	 * Merges the document into an existing network, as a delta: its nodes
+	 * and edges are added to the network, or updated with the values of
+	 * their &lt;data&gt; if they already exist, and its edges may refer to the
+	 * nodes of the network without declaring them. The ids of the network
+	 * are looked up as the edges refer to them, so the cost of the merge
+	 * depends on the size of the delta, not on that of the network. Only
+	 * applies when reading into Cytoscape; the snapshot cache and the lazy
+	 * attributes do not apply to a merge.
+	 * 
+	 * @param target
+	 *            the network, null (the default) to build a new one from
+	 *            the node and edge indices
+	 */
+	public void setMergeTarget(CyNetwork target) {
+		this.mergeTarget = target;
+	}
+
+	/**
+	 * Sets the attribute that marks the nodes and edges to remove from the
+	 * merge target: an element of the delta with a true value is removed
+	 * from the network, with the edges of a removed node. The marker values
+	 * are not stored.
+	 * 
+	 * @param attributeName
+	 *            name of the attribute, null (the default) if the delta only
+	 *            adds and updates
+	 */
+	public void setRemovalMarker(String attributeName) {
+		this.removalMarker = attributeName;
+	}
+
+	/**
+	 * Enables the lazy attributes: the import builds the network and an
+	 * index of the &lt;data&gt; of each node and edge, without decoding them,
+	 * and the values of an attribute are read from the file when it is
+	 * loaded with {@link #getLazyAttributes()}. This shortens the import of
+	 * the files with many attributes, when only a few of them are used.
+	 * Only applies to the local, uncompressed files read through a memory
+	 * mapping into Cytoscape, whose nodes and edges are direct children of
+	 * the graph; the attributes of the other documents, and of the graph
+	 * itself, are read during the import. The XML parser only reads what
+	 * is left of the document, sequentially. Off by default.
+	 * 
+	 * @param lazyAttributes
+	 *            true to leave the node and edge values in the file until
+	 *            they are loaded
+	 */
+	public void setLazyAttributes(boolean lazyAttributes) {
+		this.lazyAttributes = lazyAttributes;
+	}
+
+	/**
+	 * @return the attributes of the nodes and edges left to load after a
+	 *         lazy import, null if all the values were read by the import
+	 */
+	public GraphMLLazyAttributes getLazyAttributes() {
+		return lazy;
+	}
+
+	/**
+	 * @return the defaults of the attributes of the last import, from the
+	 *         &lt;default&gt; of the keys. They are not stored into
+	 *         CyAttributes for each element without a value, and resolve
+	 *         through the returned object instead. Null before the import.
+	 */
+	public GraphMLAttributeDefaults getAttributeDefaults() {
+		return attributeDefaults;
+	}
+
+	/**
+	 * Cancels the import. May be called from any thread, the parser stops
+	 * at the next node or edge and removes the nodes and edges it created;
+	 * read() then throws an InterruptedIOException. Interrupting the reading
+	 * thread has the same effect. A cancel() before read() cancels the next
+	 * import; once an import ends, the reader may read again.
+	 */
+	public void cancel() {
+		cancelled = true;
+		final GraphMLProgress current = progress;
+		if (current != null) {
+			current.cancel();
+		}
+	}
+
 	/**
 	 * DOCUMENT ME!
 	 * 
@@ -114,6 +362,7 @@ public class GraphMLReader extends AbstractGraphReader {
 	 * @throws SAXException
 	 */
 	private void readGraphml() throws SAXException, IOException {
+		SnapshotRecorder recorder = null;
 		try {
 			try {
 				try {
@@ -126,14 +375,99 @@ public class GraphMLReader extends AbstractGraphReader {
 						taskMonitor.setStatus("Loading GraphML data...");
 					}
 
-					// Get out parser
-					SAXParserFactory spf = SAXParserFactory.newInstance();
-					SAXParser sp = spf.newSAXParser();
-					ParserAdapter pa = new ParserAdapter(sp.getParser());
+					statistics.start();
+					lazy = null;
+					attributeDefaults = null;
+					graphId = null;
+					parser = acquireParser();
+					cytoscapeSink.reset();
+					final boolean merging = mergeTarget != null && sink == cytoscapeSink;
+					cytoscapeSink.setMergeTarget(merging ? mergeTarget : null, removalMarker);
+					parser.setExistingNodes(merging ? cytoscapeSink : null);
+					if (!readSnapshot()) {
+						final MappedFile mappedFile = mapLocalFile();
+						final boolean compressed;
+						final GraphMLDataIndex dataIndex = new GraphMLDataIndex();
+						GraphMLChunkScanner.Layout layout = null;
+						if (mappedFile != null) {
+							compressed = BackgroundGzipInputStream.isGzip(mappedFile);
+							if (!compressed) {
+								layout = indexData(mappedFile, dataIndex);
+							}
+							if (layout != null) {
+								// the parser only gets the nodes and edges without their data
+								startProgress(mappedFile.length() - dataIndex.dataBytes());
+								networkStream = progress.count(dataIndex.streamWithoutData(mappedFile));
+							} else {
+								startProgress(mappedFile.length());
+								networkStream = progress.count(mappedFile.stream(0, mappedFile.length()));
+							}
+						} else {
+							if (networkStream == null) {
+								networkStream = FileUtil.getInputStream(fileName, taskMonitor);
+							}
+							startProgress(targetURL == null ? new File(fileName).length() : 0);
+							networkStream = new BufferedInputStream(progress.count(networkStream),
+									BackgroundGzipInputStream.BLOCK_SIZE);
+							compressed = BackgroundGzipInputStream.isGzip(networkStream);
+						}
+						if (compressed) {
+							networkStream = new BackgroundGzipInputStream(networkStream);
+						}
+						parser.setLazyData(layout != null);
+						// the snapshot of a lazy import would have no values
+						if (layout == null) {
+							recorder = startRecording();
+						}
+
+						if (engine == GraphMLParserEngine.STAX) {
+							if (mappedFile == null || compressed || layout != null || !readInParallel(mappedFile)) {
+								new GraphMLStaxParser(parser).parse(networkStream);
+							}
+						} else {
+							// Get out parser
+							SAXParser sp = SAX_PARSERS.poll();
+							if (sp == null) {
+								sp = SAXParserFactory.newInstance().newSAXParser();
+							}
+							try {
+								ParserAdapter pa = new ParserAdapter(sp.getParser());
 
-					pa.setContentHandler(parser);
-					pa.setErrorHandler(parser);
-					pa.parse(new InputSource(networkStream));
+								pa.setContentHandler(parser);
+								pa.setErrorHandler(parser);
+								pa.parse(new InputSource(networkStream));
+							} finally {
+								releaseSaxParser(sp);
+							}
+						}
+						// with the counts of the parser
+						statistics = parser.getStatistics();
+						graphId = parser.getNetworkName();
+						attributeDefaults = new GraphMLAttributeDefaults(parser);
+						if (layout != null) {
+							lazy = new GraphMLLazyAttributes(mappedFile, layout.encoding, dataIndex, parser, sink);
+						}
+
+						if (recorder != null) {
+							storeSnapshot(recorder);
+						}
+						if (merging) {
+							cytoscapeSink.merge();
+						}
+					}
+
+					statistics.bytes = progress.getBytes();
+					statistics.finish();
+					GraphMLMetrics.getInstance().recordImport(statistics);
+					logger.info(statistics.toString());
+
+					if (taskMonitor != null) {
+						taskMonitor.setPercentCompleted(100);
+					}
+				} catch (GraphMLCancelledException e) {
+					parser.abort();
+					cytoscapeSink.rollback();
+					throw new InterruptedIOException(e.getMessage());
 
 				} catch (OutOfMemoryError oe) {
 					/*
@@ -153,6 +487,19 @@ public class GraphMLReader extends AbstractGraphReader {
 							+ e.getLineNumber() + " -- '" + e.getMessage()
 							+ "'", e);
 					throw new IOException("Could not parse the file.", e);
+				} catch (XMLStreamException e) {
+					logger.error("GraphMLStaxParser: fatal parsing error on line "
+							+ (e.getLocation() != null ? e.getLocation().getLineNumber() : -1)
+							+ " -- '" + e.getMessage() + "'", e);
+					throw new IOException("Could not parse the file.", e);
+				} finally {
+					// the lazy attributes read the keys of the parser later,
+					// a failed or cancelled import leaves the parser reusable
+					if (lazy == null && parser != null) {
+						parser.reset();
+						PARSERS.offer(parser);
+						parser = null;
+					}
 				}
 			} finally {
 				if (networkStream != null) {
@@ -160,16 +507,160 @@ public class GraphMLReader extends AbstractGraphReader {
 				}
 			}
 		} finally {
+			if (recorder != null) {
+				recorder.dispose();
+			}
 			networkStream = null;
+			progress = null;
+			cancelled = false;
+		}
+	}
+
+	/**
+	 * Reads the graph from its snapshot, if the cache has an up-to-date one.
+	 * 
+	 * @return false if the document is to be parsed
+	 */
+	private boolean readSnapshot() throws IOException {
+		snapshotKey = null;
+		if (snapshotCache == null || targetURL != null || selection != null || mergeTarget != null) return false;
+		final File file = new File(fileName);
+		if (!file.isFile()) return false;
+		snapshotKey = snapshotCache.key(file);
+		final GraphMLSnapshot snapshot = snapshotCache.find(snapshotKey);
+		if (snapshot == null) return false;
+
+		logger.debug("Reading " + fileName + " from its snapshot");
+		startProgress(snapshot.length());
+		snapshot.replay(sink, progress, statistics);
+		graphId = snapshot.getGraphId();
+		attributeDefaults = snapshot.getAttributeDefaults();
+		return true;
+	}
+
+	/**
+	 * Sends the parsed graph through a recorder of its snapshot, if it is
+	 * to be cached.
+	 * 
+	 * @return the recorder, null if none
+	 */
+	private SnapshotRecorder startRecording() {
+		if (snapshotKey == null) return null;
+		try {
+			final SnapshotRecorder recorder = snapshotCache.record(sink);
+			parser.setSink(recorder);
+			return recorder;
+		} catch (IOException e) {
+			logger.warn("Cannot record the snapshot of " + fileName, e);
+			return null;
+		}
+	}
+
+	private void storeSnapshot(final SnapshotRecorder recorder) {
+		// no snapshot of a file changed during the import
+		final File file = new File(fileName);
+		if (!recorder.isRecording() || file.lastModified() != snapshotKey.modified
+				|| file.length() != snapshotKey.size)
+			return;
+		recorder.setAttributeDefaults(attributeDefaults);
+		try {
+			snapshotCache.store(snapshotKey, recorder);
+		} catch (IOException e) {
+			logger.warn("Cannot write the snapshot of " + fileName, e);
+		}
+	}
+
+	/**
+	 * Takes an idle parser, or creates one, and sets it up for this reader.
+	 */
+	private GraphMLParser acquireParser() {
+		GraphMLParser idle = PARSERS.poll();
+		if (idle == null) {
+			idle = new GraphMLParser(sink, statistics);
+		} else {
+			idle.setSink(sink);
+			idle.setStatistics(statistics);
+		}
+		idle.setDeferEdges(deferEdges);
+		idle.setOffHeapNodeIndex(offHeapNodeIndex);
+		idle.setSelection(selection);
+		return idle;
+	}
+
+	private static void releaseSaxParser(final SAXParser sp) {
+		try {
+			sp.reset();
+		} catch (UnsupportedOperationException e) {
+			// not reusable
+			return;
+		}
+		SAX_PARSERS.offer(sp);
+	}
+
+	private void startProgress(final long length) {
+		progress = new GraphMLProgress(taskMonitor, length);
+		progress.setStatistics(statistics);
+		if (cancelled) {
+			progress.cancel();
+		}
+		parser.setProgress(progress);
+	}
+
+	/**
+	 * Maps the local file, if it can be read directly.
+	 * 
+	 * @return null if the document is to be read as a stream
+	 */
+	private MappedFile mapLocalFile() {
+		if (!memoryMapping || targetURL != null) return null;
+		// zip archives are unpacked by FileUtil, gzip is detected by its magic bytes
+		final String name = fileName.toLowerCase();
+		if (name.endsWith(".zip") || name.endsWith(".jar")) return null;
+		final File file = new File(fileName);
+		if (!file.isFile() || file.length() == 0) return null;
+		try {
+			return new MappedFile(file);
+		} catch (IOException e) {
+			logger.warn("Cannot map " + fileName + ", reading it as a stream", e);
+			return null;
 		}
 	}
 
+	/**
+	 * Indexes the data of the nodes and edges of a mapped file, if the
+	 * attributes are lazy.
+	 * 
+	 * @return the layout of the document, null if its values are to be read
+	 *         by the import
+	 */
+	private GraphMLChunkScanner.Layout indexData(final MappedFile mappedFile, final GraphMLDataIndex dataIndex) {
+		if (!lazyAttributes || sink != cytoscapeSink || selection != null || mergeTarget != null) return null;
+		final GraphMLChunkScanner.Layout layout = new GraphMLChunkScanner(mappedFile,
+				GraphMLParallelParser.DEFAULT_CHUNK_SIZE, dataIndex).scan();
+		if (layout == null) {
+			logger.debug("GraphML document layout does not allow lazy attributes, reading them");
+		}
+		return layout;
+	}
+
+	/**
+	 * Reads a mapped file with the parallel parser, if enabled.
+	 * 
+	 * @return false if the document is to be read sequentially
+	 */
+	private boolean readInParallel(final MappedFile mappedFile) throws XMLStreamException {
+		if (parallelism <= 1) return false;
+		final GraphMLParallelParser parallelParser = new GraphMLParallelParser(parser, parallelism);
+		parallelParser.setProgress(progress);
+		return parallelParser.parse(mappedFile);
+	}
+
 	public int[] getEdgeIndicesArray() {
-		return parser.getEdgeIndicesArray();
+		return cytoscapeSink.getEdgeIndicesArray();
 	}
 
 	public String getNetworkName() {
-		this.networkName = parser.getNetworkName();
+		this.networkName = graphId;
 		if (networkName == null)
 			this.networkName = "GraphML Network " + System.currentTimeMillis();
 
@@ -177,7 +668,7 @@ public class GraphMLReader extends AbstractGraphReader {
 	}
 
 	public int[] getNodeIndicesArray() {
-		return parser.getNodeIndicesArray();
+		return cytoscapeSink.getNodeIndicesArray();
 	}
 
 }
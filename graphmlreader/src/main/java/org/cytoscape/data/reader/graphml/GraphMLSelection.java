@@ -0,0 +1,126 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Part of a GraphML document to import (see
+ * {@link GraphMLReader#setSelection(GraphMLSelection)}): the attributes to
+ * keep, and the conditions on the nodes and edges. The values of the other
+ * attributes are skipped by the parser without being collected, and the
+ * nodes and edges that do not pass are neither created nor read further;
+ * the edges of a node that is not imported are dropped too.
+ * <p>
+ * The conditions on the ids are checked when the element starts. The
+ * conditions on the values are checked at its end, once its &lt;data&gt;
+ * are read, and an element without the value does not pass.
+ */
+public class GraphMLSelection {
+
+	/* Names or key ids of the kept attributes, null for all of them */
+	private Set<String> attributes = null;
+	private Pattern nodeIds = null;
+	private final Map<String, Pattern> nodeConditions = new LinkedHashMap<String, Pattern>();
+	private final Map<String, Pattern> edgeConditions = new LinkedHashMap<String, Pattern>();
+
+	/**
+	 * Keeps only the given attributes.
+	 *
+	 * @param names
+	 *            attribute names or &lt;key&gt; ids
+	 */
+	public GraphMLSelection attributes(final String... names) {
+		attributes = new HashSet<String>(Arrays.asList(names));
+		return this;
+	}
+
+	/**
+	 * Keeps only the nodes whose whole id matches a regular expression.
+	 */
+	public GraphMLSelection nodeIds(final String regex) {
+		nodeIds = Pattern.compile(regex);
+		return this;
+	}
+
+	/**
+	 * Keeps only the nodes with a value of the attribute that matches a
+	 * regular expression, as a whole. The value is the trimmed text of the
+	 * &lt;data&gt; element. The attribute need not be kept.
+	 */
+	public GraphMLSelection nodeAttribute(final String name, final String regex) {
+		nodeConditions.put(name, Pattern.compile(regex));
+		return this;
+	}
+
+	/**
+	 * Keeps only the edges with a value of the attribute that matches a
+	 * regular expression, as a whole.
+	 *
+	 * @see #nodeAttribute(String, String)
+	 */
+	public GraphMLSelection edgeAttribute(final String name, final String regex) {
+		edgeConditions.put(name, Pattern.compile(regex));
+		return this;
+	}
+
+	/**
+	 * @return true if the values of the attribute are imported
+	 */
+	boolean keeps(final Attribute attr) {
+		return attributes == null || attributes.contains(attr.name) || attributes.contains(attr.id.key);
+	}
+
+	/**
+	 * @return true if the values of the attribute are to be read, to be
+	 *         imported or to check a condition
+	 */
+	boolean reads(final Attribute attr) {
+		return keeps(attr) || nodeConditions.containsKey(attr.name) || edgeConditions.containsKey(attr.name);
+	}
+
+	boolean acceptsNodeId(final String id) {
+		return nodeIds == null || nodeIds.matcher(id).matches();
+	}
+
+	/**
+	 * @return true if some nodes may not be imported
+	 */
+	boolean filtersNodes() {
+		return nodeIds != null || !nodeConditions.isEmpty();
+	}
+
+	/**
+	 * @return true if the elements of the scope are checked at their end
+	 */
+	boolean hasConditions(final GraphMLScope scope) {
+		return !conditions(scope).isEmpty();
+	}
+
+	/**
+	 * @return true if the values of an element pass the conditions of its
+	 *         scope
+	 */
+	boolean accepts(final GraphMLScope scope, final ElementValues values) {
+		for (final Map.Entry<String, Pattern> condition : conditions(scope).entrySet()) {
+			final String value = values.get(condition.getKey());
+			if (value == null || !condition.getValue().matcher(value).matches()) return false;
+		}
+		return true;
+	}
+
+	private Map<String, Pattern> conditions(final GraphMLScope scope) {
+		switch (scope) {
+		case NODE:
+			return nodeConditions;
+		case EDGE:
+			return edgeConditions;
+		default:
+			return Collections.emptyMap();
+		}
+	}
+}
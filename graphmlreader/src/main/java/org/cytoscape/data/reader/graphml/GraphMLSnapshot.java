@@ -0,0 +1,258 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Binary snapshot of an imported graph, read back instead of the GraphML
+ * document it was made from.
+ * <p>
+ * Layout: magic, version and header length ints, then the header and the
+ * sections. The header holds the key of the source document (path, size,
+ * modification time and content hash), the graph id and direction, the
+ * counts, the descriptions of the attribute columns, the defaults of the
+ * attributes and the length of each section. The sections are the node ids, the edges as pairs of
+ * node numbers, then one section per attribute with the element numbers
+ * and the typed values. Numbers are in document order, so a snapshot is
+ * replayed into any {@link GraphSink}.
+ */
+class GraphMLSnapshot {
+
+	static final int MAGIC = 0x474d4c53; // "GMLS"
+	static final int VERSION = 2;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Identity of the source document.
+	 */
+	static class Key {
+		final String path;
+		final long size;
+		final long modified;
+		final long hash;
+
+		Key(final String path, final long size, final long modified, final long hash) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * Description of an attribute column section.
+	 */
+	static class ColumnInfo {
+		final Attribute attribute;
+		final int count;
+
+		ColumnInfo(final Attribute attribute, final int count) {
+			this.attribute = attribute;
+			this.count = count;
+		}
+	}
+
+	private final MappedFile file;
+	private final Key key;
+	private final String graphId;
+	private final boolean directed;
+	private final int nodeCount;
+	private final int edgeCount;
+	private final ColumnInfo[] columns;
+	private final GraphMLAttributeDefaults attributeDefaults;
+	// start offsets of the sections, and the end of the last one
+	private final long[] sections;
+
+	private GraphMLSnapshot(final MappedFile file) throws IOException {
+		this.file = file;
+		final DataInputStream prefix = new DataInputStream(file.stream(0, Math.min(12, file.length())));
+		if (prefix.readInt() != MAGIC)
+			throw new IOException("Not a GraphML snapshot");
+		if (prefix.readInt() != VERSION)
+			throw new IOException("Unsupported GraphML snapshot version");
+		final int headerLength = prefix.readInt();
+		final DataInputStream header = new DataInputStream(new BufferedInputStream(
+				file.stream(12, 12 + headerLength)));
+
+		key = new Key(readString(header), header.readLong(), header.readLong(), header.readLong());
+		graphId = readString(header);
+		directed = header.readBoolean();
+		nodeCount = header.readInt();
+		edgeCount = header.readInt();
+		columns = new ColumnInfo[header.readInt()];
+		for (int i = 0; i < columns.length; i++) {
+			final GraphMLScope scope = GraphMLScope.values()[header.readByte()];
+			final String attrKey = readString(header);
+			final String name = readString(header);
+			final GraphMLDataType type = GraphMLDataType.fromString(readString(header));
+			columns[i] = new ColumnInfo(new Attribute(scope, attrKey, name, type), header.readInt());
+		}
+		attributeDefaults = GraphMLAttributeDefaults.read(header);
+		sections = new long[2 + columns.length + 1];
+		sections[0] = 12 + headerLength;
+		for (int i = 1; i < sections.length; i++) {
+			sections[i] = sections[i - 1] + header.readLong();
+		}
+		if (sections[sections.length - 1] != file.length())
+			throw new IOException("Truncated GraphML snapshot");
+	}
+
+	/**
+	 * @return the snapshot, null if the file is not a complete snapshot
+	 */
+	static GraphMLSnapshot open(final File file) {
+		try {
+			return new GraphMLSnapshot(new MappedFile(file));
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// corrupt header
+			return null;
+		}
+	}
+
+	Key getKey() {
+		return key;
+	}
+
+	String getGraphId() {
+		return graphId;
+	}
+
+	GraphMLAttributeDefaults getAttributeDefaults() {
+		return attributeDefaults;
+	}
+
+	long length() {
+		return file.length();
+	}
+
+	private DataInputStream section(final int index, final GraphMLProgress progress) {
+		InputStream in = file.stream(sections[index], sections[index + 1]);
+		if (progress != null) {
+			in = progress.count(in);
+		}
+		return new DataInputStream(new BufferedInputStream(in, 1 << 16));
+	}
+
+	/**
+	 * Emits the graph to the sink, as the parser did when the snapshot was
+	 * made, except that the values come column by column after the edges.
+	 */
+	void replay(final GraphSink sink, final GraphMLProgress progress,
+			final ImportStatistics statistics) throws IOException {
+		final int graph = sink.startGraph(graphId, directed);
+
+		final int[] nodes = new int[nodeCount];
+		DataInputStream in = section(0, progress);
+		long start = System.nanoTime();
+		for (int i = 0; i < nodeCount; i++) {
+			nodes[i] = sink.node(readString(in));
+			if (progress != null) {
+				progress.check(i + 1, 0);
+			}
+		}
+		final int[] edges = new int[edgeCount];
+		in = section(1, progress);
+		for (int i = 0; i < edgeCount; i++) {
+			final int source = in.readInt();
+			edges[i] = sink.edge(nodes[source], nodes[in.readInt()]);
+			if (progress != null) {
+				progress.check(nodeCount, i + 1);
+			}
+		}
+		statistics.creationNanos += System.nanoTime() - start;
+		statistics.nodes = nodeCount;
+		statistics.edges = edgeCount;
+
+		start = System.nanoTime();
+		char[] text = new char[64];
+		for (int c = 0; c < columns.length; c++) {
+			final Attribute attr = columns[c].attribute;
+			final GraphMLScope scope = attr.id.scope;
+			in = section(2 + c, progress);
+			for (int i = 0; i < columns[c].count; i++) {
+				final int element = in.readInt();
+				final String value = readValue(in, attr.datatype);
+				if (value.length() > text.length) {
+					text = new char[Math.max(value.length(), 2 * text.length)];
+				}
+				value.getChars(0, value.length(), text, 0);
+				final int handle = scope == GraphMLScope.NODE ? nodes[element]
+						: scope == GraphMLScope.EDGE ? edges[element] : graph;
+				sink.attribute(scope, handle, attr, text, 0, value.length());
+			}
+			statistics.dataElements += columns[c].count;
+		}
+		sink.end();
+		statistics.conversionNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Writes the value of the text in the form of the attribute type.
+	 *
+	 * @throws NumberFormatException
+	 *             if the text is not a value of the type
+	 */
+	static void writeValue(final DataOutput out, final GraphMLDataType type, final String text)
+			throws IOException {
+		switch (type == null ? GraphMLDataType.STRING : type) {
+		case INT:
+			out.writeInt(Integer.parseInt(text));
+			break;
+		case LONG:
+			out.writeLong(Long.parseLong(text));
+			break;
+		case FLOAT:
+		case DOUBLE:
+			out.writeDouble(Double.parseDouble(text));
+			break;
+		case BOOLEAN:
+			out.writeBoolean(Boolean.parseBoolean(text));
+			break;
+		default:
+			writeString(out, text);
+		}
+	}
+
+	private static String readValue(final DataInput in, final GraphMLDataType type) throws IOException {
+		switch (type == null ? GraphMLDataType.STRING : type) {
+		case INT:
+			return Integer.toString(in.readInt());
+		case LONG:
+			return Long.toString(in.readLong());
+		case FLOAT:
+		case DOUBLE:
+			return Double.toString(in.readDouble());
+		case BOOLEAN:
+			return in.readBoolean() ? "true" : "false";
+		default:
+			return readString(in);
+		}
+	}
+
+	static void writeString(final DataOutput out, final String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		final byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(final DataInput in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) return null;
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -0,0 +1,197 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+import cytoscape.logger.CyLogger;
+
+/**
+ * Directory of binary snapshots of imported GraphML files. After a file
+ * has been parsed, its graph is written to a snapshot: the node ids, the
+ * edges and the attribute values in typed columns. The next imports of the
+ * file, as long as its path, size, modification time and content hash are
+ * unchanged, read the snapshot instead of parsing the XML.
+ * <p>
+ * The least recently used snapshots are deleted when the directory grows
+ * over its size limit. A snapshot that is stale or cannot be read is
+ * deleted and the file is parsed again, so the directory may be cleared at
+ * any time.
+ */
+public class GraphMLSnapshotCache {
+
+	private static final CyLogger logger = CyLogger.getLogger(GraphMLSnapshotCache.class);
+
+	static final String SUFFIX = ".gmlsnap";
+
+	private final File directory;
+	private final long maxBytes;
+
+	/**
+	 * @param directory
+	 *            directory of the snapshots, created if needed
+	 * @param maxBytes
+	 *            total size of the snapshots to keep
+	 */
+	public GraphMLSnapshotCache(final File directory, final long maxBytes) {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("maxBytes must be positive");
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return the total size of the snapshots in the directory
+	 */
+	public long size() {
+		long total = 0;
+		for (final File snapshot : snapshots()) {
+			total += snapshot.length();
+		}
+		return total;
+	}
+
+	/**
+	 * Deletes all the snapshots.
+	 */
+	public synchronized void clear() {
+		for (final File snapshot : snapshots()) {
+			snapshot.delete();
+		}
+	}
+
+	private File[] snapshots() {
+		final File[] files = directory.listFiles(new FileFilter() {
+			public boolean accept(final File file) {
+				return file.isFile() && file.getName().endsWith(SUFFIX);
+			}
+		});
+		return files != null ? files : new File[0];
+	}
+
+	File snapshotFile(final String path) {
+		final CRC32 crc = new CRC32();
+		final byte[] bytes = path.getBytes();
+		crc.update(bytes, 0, bytes.length);
+		final long hash = (crc.getValue() << 32) | (path.hashCode() & 0xffffffffL);
+		return new File(directory, String.format("%016x", hash) + SUFFIX);
+	}
+
+	/**
+	 * @return the key of the file as it is now
+	 */
+	GraphMLSnapshot.Key key(final File source) throws IOException {
+		final long size = source.length();
+		final long modified = source.lastModified();
+		return new GraphMLSnapshot.Key(source.getCanonicalPath(), size, modified, contentHash(source));
+	}
+
+	/**
+	 * Finds the snapshot of a file with the given key.
+	 *
+	 * @return the snapshot, or null if there is none
+	 */
+	synchronized GraphMLSnapshot find(final GraphMLSnapshot.Key key) {
+		final File file = snapshotFile(key.path);
+		if (!file.isFile()) return null;
+
+		final GraphMLSnapshot snapshot = GraphMLSnapshot.open(file);
+		final GraphMLSnapshot.Key found = snapshot != null ? snapshot.getKey() : null;
+		if (found == null || !found.path.equals(key.path) || found.size != key.size
+				|| found.modified != key.modified || found.hash != key.hash) {
+			logger.debug("Deleting stale GraphML snapshot " + file);
+			file.delete();
+			return null;
+		}
+		// the modification time orders the snapshots for the eviction
+		file.setLastModified(System.currentTimeMillis());
+		return snapshot;
+	}
+
+	/**
+	 * @return a recorder of the graph sent to the sink, with its temporary
+	 *         files in the directory
+	 */
+	SnapshotRecorder record(final GraphSink sink) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create " + directory);
+		return new SnapshotRecorder(sink, directory);
+	}
+
+	/**
+	 * Writes the snapshot recorded from a file, then evicts the least
+	 * recently used snapshots over the size limit.
+	 */
+	synchronized void store(final GraphMLSnapshot.Key key, final SnapshotRecorder recorder)
+			throws IOException {
+		final File file = snapshotFile(key.path);
+		final File temp = new File(directory, file.getName() + ".tmp");
+		try {
+			recorder.write(temp, key);
+			file.delete();
+			if (!temp.renameTo(file))
+				throw new IOException("Cannot rename " + temp + " to " + file);
+		} finally {
+			temp.delete();
+		}
+		evict(file);
+	}
+
+	private void evict(final File keep) {
+		final File[] files = snapshots();
+		long total = 0;
+		for (final File snapshot : files) {
+			total += snapshot.length();
+		}
+		if (total <= maxBytes) return;
+
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(final File a, final File b) {
+				final long ma = a.lastModified();
+				final long mb = b.lastModified();
+				return ma < mb ? -1 : ma > mb ? 1 : 0;
+			}
+		});
+		for (final File snapshot : files) {
+			if (total <= maxBytes) break;
+			// the new snapshot goes last, even if it alone is over the limit
+			if (snapshot.equals(keep)) continue;
+			total -= snapshot.length();
+			snapshot.delete();
+		}
+		if (total > maxBytes) {
+			keep.delete();
+		}
+	}
+
+	/**
+	 * @return the CRC-32 and Adler-32 checksums of the content, in the high
+	 *         and low halves
+	 */
+	static long contentHash(final File source) throws IOException {
+		final CRC32 crc = new CRC32();
+		final Adler32 adler = new Adler32();
+		final MappedFile mapped = new MappedFile(source);
+		final InputStream in = mapped.stream(0, mapped.length());
+		final byte[] buffer = new byte[1 << 16];
+		int n;
+		while ((n = in.read(buffer, 0, buffer.length)) > 0) {
+			crc.update(buffer, 0, n);
+			adler.update(buffer, 0, n);
+		}
+		return (crc.getValue() << 32) | adler.getValue();
+	}
+}
@@ -0,0 +1,201 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A StAX (pull) parser for GraphML data file.
+ * Drives the element routines of {@link GraphMLParser} directly from the
+ * event loop, so no SAX callbacks are involved, and skips the subtrees
+ * (yFiles graphics, undeclared &lt;data&gt; keys, descriptions, nodes and
+ * edges that are not imported etc) that do not contribute to the network
+ * without collecting their text.
+ */
+class GraphMLStaxParser {
+
+	/* Implementation specific: reuse the stream reader of the factory and its buffers */
+	private static final String REUSE_INSTANCE = "reuse-instance";
+
+	private static final ObjectPool<XMLInputFactory> FACTORIES = new ObjectPool<XMLInputFactory>();
+
+	private final GraphMLParser handler;
+
+	GraphMLStaxParser(final GraphMLParser handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Creates a factory for the GraphML documents. Each factory is used by
+	 * one import at a time, so the readers it creates may reuse each other.
+	 *
+	 * @param namespaceAware
+	 *            false to read parts of a document, whose prefixes are
+	 *            declared outside of them
+	 */
+	static XMLInputFactory createFactory(final boolean namespaceAware) {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, namespaceAware);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		if (factory.isPropertySupported(REUSE_INSTANCE)) {
+			factory.setProperty(REUSE_INSTANCE, Boolean.TRUE);
+		}
+		return factory;
+	}
+
+	void parse(final InputStream is) throws XMLStreamException {
+		final XMLInputFactory factory = acquireFactory();
+		try {
+			read(factory.createXMLStreamReader(is));
+		} finally {
+			FACTORIES.offer(factory);
+		}
+		handler.finishDocument();
+	}
+
+	/**
+	 * Reads a part of the document, without completing it.
+	 */
+	void parsePart(final InputStream is, final String encoding) throws XMLStreamException {
+		final XMLInputFactory factory = acquireFactory();
+		try {
+			read(factory.createXMLStreamReader(is, encoding));
+		} finally {
+			FACTORIES.offer(factory);
+		}
+	}
+
+	private static XMLInputFactory acquireFactory() {
+		final XMLInputFactory factory = FACTORIES.poll();
+		return factory != null ? factory : createFactory(true);
+	}
+
+	private void read(final XMLStreamReader reader) throws XMLStreamException {
+		try {
+			while (reader.hasNext()) {
+				final int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					startElement(reader);
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					final GraphMLToken token = GraphMLToken.fromString(reader.getLocalName());
+					if (token == GraphMLToken.NODE || token == GraphMLToken.EDGE) {
+						handler.endElement();
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void startElement(final XMLStreamReader reader) throws XMLStreamException {
+		final GraphMLToken token = GraphMLToken.fromString(reader.getLocalName());
+		if (token == null) {
+			// <graphml> is the document root, everything else is unsupported
+			if (!GraphMLScope.GRAPHML.tag.equals(reader.getLocalName())) {
+				skipElement(reader);
+			}
+			return;
+		}
+		switch (token) {
+		case GRAPH:
+			handler.startGraph(attribute(reader, GraphMLToken.ID),
+					attribute(reader, GraphMLToken.EDGEDEFAULT));
+			break;
+		case KEY:
+			handler.addKey(attribute(reader, GraphMLToken.FOR),
+					attribute(reader, GraphMLToken.ID),
+					attribute(reader, GraphMLToken.ATTRNAME),
+					attribute(reader, GraphMLToken.ATTRTYPE));
+			break;
+		case NODE:
+			if (!handler.startNode(attribute(reader, GraphMLToken.ID))) {
+				skipElement(reader);
+				handler.endElement();
+			}
+			break;
+		case EDGE:
+			if (!handler.startEdge(attribute(reader, GraphMLToken.SOURCE),
+					attribute(reader, GraphMLToken.TARGET))) {
+				skipElement(reader);
+				handler.endElement();
+			}
+			break;
+		case DATA:
+			readData(reader);
+			break;
+		case DEFAULT:
+			if (handler.startDefault()) {
+				readText(reader);
+				handler.endDefault();
+			} else {
+				skipElement(reader);
+			}
+			break;
+		default:
+			skipElement(reader);
+		}
+	}
+
+	/**
+	 * Reads the text of the current &lt;data&gt; element up to its end tag.
+	 * Contents of undeclared keys are skipped without being collected.
+	 */
+	private void readData(final XMLStreamReader reader) throws XMLStreamException {
+		if (!handler.startData(attribute(reader, GraphMLToken.KEY))) {
+			skipElement(reader);
+			return;
+		}
+		readText(reader);
+		handler.endData();
+	}
+
+	/**
+	 * Passes the text of the current element to the handler, up to its end
+	 * tag.
+	 */
+	private void readText(final XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				handler.appendData(reader.getTextCharacters(), reader.getTextStart(),
+						reader.getTextLength());
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Skips the current element including all its children,
+	 * leaving the reader at its end tag.
+	 */
+	private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private static String attribute(final XMLStreamReader reader, final GraphMLToken token) {
+		return reader.getAttributeValue(null, token.getTag());
+	}
+}
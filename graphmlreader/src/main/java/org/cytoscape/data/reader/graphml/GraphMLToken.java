@@ -1,5 +1,8 @@
 package org.cytoscape.data.reader.graphml;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum GraphMLToken {
 
 	// GraphML Tags
@@ -11,6 +14,15 @@ public enum GraphMLToken {
 	SOURCE("source"), TARGET("target"), DATA("data"), TYPE("type");
 	
 	private final String tag;
+
+	private static final Map<String, GraphMLToken> tagMap;
+
+	static {
+		tagMap = new HashMap<String, GraphMLToken>();
+		for (GraphMLToken token : GraphMLToken.values()) {
+			tagMap.put(token.tag, token);
+		}
+	}
 	
 	private GraphMLToken(final String tag) {
 		this.tag = tag;
@@ -21,10 +33,6 @@ public enum GraphMLToken {
 	}
 	
 	public static GraphMLToken fromString(final String tag) {
-		for (GraphMLToken token : GraphMLToken.values()) {
-			if(token.getTag().equals(tag))
-				return token;
-		}
-		return null;
+		return tag != null ? tagMap.get(tag) : null;
 	}
 }
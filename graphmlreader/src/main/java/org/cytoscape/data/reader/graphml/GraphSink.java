@@ -0,0 +1,64 @@
+package org.cytoscape.data.reader.graphml;
+
+/**
+ * Receiver of the graph read from a GraphML document.
+ * The parser resolves the GraphML ids and emits the graph, its nodes, its
+ * edges and their &lt;data&gt; values in document order, referring to the
+ * elements by the int handles the sink returns. The sink decides how they
+ * are stored: {@link CytoscapeGraphSink} fills the Cytoscape root graph and
+ * CyAttributes, others may build their own structures without touching the
+ * Cytoscape globals.
+ * <p>
+ * All methods are called from the thread that runs the import.
+ */
+public interface GraphSink {
+
+	/** Handle of no element, node() and edge() must not return it */
+	int NO_ELEMENT = Integer.MIN_VALUE;
+
+	/**
+	 * Starts the graph.
+	 *
+	 * @param id
+	 *            GraphML id of the graph, may be null
+	 * @param directed
+	 *            true if the edges are directed by default
+	 * @return handle of the graph, passed to attribute() for its data
+	 */
+	int startGraph(String id, boolean directed);
+
+	/**
+	 * Adds a node. The parser maps the id to the returned handle, so a node
+	 * declared twice is passed twice.
+	 *
+	 * @return handle of the node
+	 */
+	int node(String id);
+
+	/**
+	 * Adds an edge between two nodes returned by node().
+	 *
+	 * @return handle of the edge
+	 */
+	int edge(int source, int target);
+
+	/**
+	 * Sets an attribute value of the graph, a node or an edge.
+	 * The value is the trimmed text of the &lt;data&gt; element, in a buffer
+	 * that the parser reuses once the call returns.
+	 *
+	 * @param scope
+	 *            GRAPH, NODE or EDGE
+	 * @param element
+	 *            handle returned by startGraph(), node() or edge()
+	 * @param attribute
+	 *            the declared key of the value
+	 */
+	void attribute(GraphMLScope scope, int element, Attribute attribute,
+			char[] data, int start, int length);
+
+	/**
+	 * Called once the whole document is read and all the edges are added.
+	 */
+	void end();
+}
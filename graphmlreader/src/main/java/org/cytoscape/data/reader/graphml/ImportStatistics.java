@@ -0,0 +1,132 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counters and timers of one import, filled by the thread that builds the
+ * network and published to {@link GraphMLMetrics} once the import is over.
+ * The attribute conversion runs once per &lt;data&gt; element, so it is
+ * only timed for one value out of {@link #CONVERSION_SAMPLING} and the
+ * total is extrapolated; the node and edge creation by the sink is timed
+ * for every element. The tokenizing time is what remains of the import time.
+ */
+class ImportStatistics {
+
+	static final int CONVERSION_SAMPLING = 64;
+
+	long bytes;
+	int nodes;
+	int edges;
+	// nodes and edges left out by the selection
+	int skippedNodes;
+	int skippedEdges;
+	long dataElements;
+	long unknownDataElements;
+	final Map<String, Integer> unknownKeys = new HashMap<String, Integer>();
+	// values skipped as they are not of the type of their key
+	long conversionErrors;
+	final Map<String, Integer> conversionErrorKeys = new HashMap<String, Integer>();
+
+	long creationNanos;
+	long conversionNanos;
+	// bulk stores of the sink, part of the conversion time but not sampled
+	long flushNanos;
+	long totalNanos;
+	long peakHeapDelta;
+
+	private long startNanos;
+	private long startHeap;
+	private long peakHeap;
+
+	/**
+	 * Clears the counters of a previous import, and starts the import clock
+	 * and the heap peak tracking.
+	 */
+	void start() {
+		bytes = 0;
+		nodes = 0;
+		edges = 0;
+		skippedNodes = 0;
+		skippedEdges = 0;
+		dataElements = 0;
+		unknownDataElements = 0;
+		unknownKeys.clear();
+		conversionErrors = 0;
+		conversionErrorKeys.clear();
+		creationNanos = 0;
+		conversionNanos = 0;
+		flushNanos = 0;
+		totalNanos = 0;
+		peakHeapDelta = 0;
+		startNanos = System.nanoTime();
+		startHeap = usedHeap();
+		peakHeap = startHeap;
+	}
+
+	/**
+	 * Records the heap used now, called by the progress every few thousand
+	 * nodes and edges.
+	 */
+	void sampleHeap() {
+		peakHeap = Math.max(peakHeap, usedHeap());
+	}
+
+	private static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Stops the clock. The peak heap delta is the largest sample of the used
+	 * heap, garbage included, over the heap used at the start. The heap is
+	 * shared, so the imports running at the same time count in each other's
+	 * delta.
+	 */
+	void finish() {
+		totalNanos = System.nanoTime() - startNanos;
+		sampleHeap();
+		peakHeapDelta = Math.max(0, peakHeap - startHeap);
+	}
+
+	void unknownKey(final String key, final int count) {
+		final Integer previous = unknownKeys.get(key);
+		unknownKeys.put(key, previous == null ? count : previous + count);
+		unknownDataElements += count;
+	}
+
+	void conversionError(final String key) {
+		final Integer previous = conversionErrorKeys.get(key);
+		conversionErrorKeys.put(key, previous == null ? 1 : previous + 1);
+		conversionErrors++;
+	}
+
+	long tokenizingNanos() {
+		return Math.max(0, totalNanos - creationNanos - conversionNanos);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("GraphML import: ").append(nodes).append(" nodes, ").append(edges)
+				.append(" edges, ").append(dataElements).append(" <data> elements, ")
+				.append(bytes).append(" bytes in ").append(totalNanos / 1000000).append(" ms (tokenizing ")
+				.append(tokenizingNanos() / 1000000).append(" ms, object creation ")
+				.append(creationNanos / 1000000).append(" ms, attribute conversion ")
+				.append(conversionNanos / 1000000).append(" ms), peak heap delta ")
+				.append(peakHeapDelta >> 20).append(" MB");
+		if (skippedNodes > 0 || skippedEdges > 0) {
+			sb.append(", ").append(skippedNodes).append(" nodes and ").append(skippedEdges)
+					.append(" edges not selected");
+		}
+		if (unknownDataElements > 0) {
+			sb.append(", ").append(unknownDataElements).append(" <data> elements with undeclared keys ")
+					.append(unknownKeys);
+		}
+		if (conversionErrors > 0) {
+			sb.append(", ").append(conversionErrors).append(" values of the wrong type skipped ")
+					.append(conversionErrorKeys);
+		}
+		return sb.toString();
+	}
+}
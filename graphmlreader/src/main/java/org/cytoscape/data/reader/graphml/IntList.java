@@ -0,0 +1,60 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of ints.
+ */
+class IntList {
+
+	private int[] data;
+	private int size;
+
+	IntList() {
+		this(1024);
+	}
+
+	IntList(final int capacity) {
+		data = new int[Math.max(capacity, 1)];
+		size = 0;
+	}
+
+	void add(final int value) {
+		if (size == data.length) {
+			data = Arrays.copyOf(data, Math.max(2 * data.length, 16));
+		}
+		data[size++] = value;
+	}
+
+	int get(final int index) {
+		if (index >= size) throw new IndexOutOfBoundsException(index + " >= " + size);
+		return data[index];
+	}
+
+	void set(final int index, final int value) {
+		if (index >= size) throw new IndexOutOfBoundsException(index + " >= " + size);
+		data[index] = value;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		// the old array may have been returned by toArray()
+		data = new int[16];
+		size = 0;
+	}
+
+	/**
+	 * @return the values; the backing array is trimmed to the size once and
+	 *         returned as is. It is full then, so the next add() moves the
+	 *         values to a new array and the returned one is never changed.
+	 */
+	int[] toArray() {
+		if (data.length != size) {
+			data = Arrays.copyOf(data, size);
+		}
+		return data;
+	}
+}
@@ -0,0 +1,126 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a whole file.
+ * A MappedByteBuffer cannot address more than 2 GB, so the file is mapped
+ * in fixed-size windows and the positions are split into a window index
+ * and an offset in the window. The mappings are released by the garbage
+ * collector once the object is unreachable.
+ */
+class MappedFile {
+
+	static final int WINDOW_BITS = 30;
+
+	private final MappedByteBuffer[] windows;
+	private final int windowBits;
+	private final long windowMask;
+	private final long length;
+
+	MappedFile(final File file) throws IOException {
+		this(file, WINDOW_BITS);
+	}
+
+	/**
+	 * @param windowBits
+	 *            log2 of the window size, for the tests
+	 */
+	MappedFile(final File file, final int windowBits) throws IOException {
+		this.windowBits = windowBits;
+		this.windowMask = (1L << windowBits) - 1;
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			length = channel.size();
+			final long windowSize = 1L << windowBits;
+			windows = new MappedByteBuffer[(int) ((length + windowSize - 1) >>> windowBits)];
+			for (int i = 0; i < windows.length; i++) {
+				final long start = (long) i << windowBits;
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+						Math.min(windowSize, length - start));
+			}
+		} finally {
+			// the mappings stay valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	long length() {
+		return length;
+	}
+
+	byte get(final long pos) {
+		return windows[(int) (pos >>> windowBits)].get((int) (pos & windowMask));
+	}
+
+	/**
+	 * @return a stream of the bytes from start (inclusive) to end (exclusive)
+	 */
+	InputStream stream(final long start, final long end) {
+		return new RegionStream(start, Math.min(end, length));
+	}
+
+	private class RegionStream extends InputStream {
+
+		private long pos;
+		private final long end;
+		private ByteBuffer window;
+
+		RegionStream(final long start, final long end) {
+			this.pos = start;
+			this.end = end;
+		}
+
+		/**
+		 * Positions the current window at pos.
+		 * @return the bytes left in the window, up to the end of the region
+		 */
+		private int seek() {
+			final int index = (int) (pos >>> windowBits);
+			window = windows[index].duplicate();
+			window.position((int) (pos & windowMask));
+			return (int) Math.min(window.remaining(), end - pos);
+		}
+
+		@Override
+		public int read() {
+			if (pos >= end) return -1;
+			window = null;
+			return get(pos++) & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) {
+			if (len == 0) return 0;
+			if (pos >= end) return -1;
+			int n = window != null ? (int) Math.min(window.remaining(), end - pos) : 0;
+			if (n == 0) {
+				n = seek();
+			}
+			n = Math.min(n, len);
+			window.get(b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public long skip(final long n) {
+			final long skipped = Math.max(0, Math.min(n, end - pos));
+			pos += skipped;
+			window = null;
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, end - pos);
+		}
+	}
+}
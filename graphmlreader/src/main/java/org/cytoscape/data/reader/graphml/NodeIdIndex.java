@@ -0,0 +1,303 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Map of the GraphML node ids to the handles the {@link GraphSink} gave the
+ * nodes (root graph indices in Cytoscape), without an object per entry.
+ * The ids are stored once in an append-only key arena, as Latin-1 bytes (or
+ * UTF-16 chars if they need it), and the table is an open-addressing table
+ * with linear probing whose slots are three ints: the hash of the id, the
+ * position of the id in the arena and the handle. Both may live
+ * outside of the Java heap (direct buffers).
+ * <p>
+ * Memory use: the table grows to keep its load between 1/3 and 2/3, so
+ * 18 to 36 bytes per node, plus 4 + the id length (rounded up to a multiple
+ * of 4) bytes in the arena for Latin-1 ids. Ids of 8 characters cost 30 to
+ * 48 bytes per node, compared to about 100 bytes for a HashMap entry with
+ * its String key.
+ * <p>
+ * The index may also intern strings: {@link #intern(String)} gives each
+ * distinct string the reference of its record, which {@link #key(int)}
+ * turns back into the string.
+ */
+class NodeIdIndex {
+
+	/* Value of get() for unknown ids, it is not the handle of an element */
+	static final int NOT_FOUND = GraphSink.NO_ELEMENT;
+
+	private static final int SLOT_INTS = 3;
+	private static final int PAGE_BITS = 30;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int UTF16_FLAG = 1 << 31;
+	// largest table and key page kept by reset(), 768 KB and 1 MB
+	private static final int RETAINED_CAPACITY = 1 << 16;
+	private static final int RETAINED_PAGE_SIZE = 1 << 20;
+
+	private final boolean offHeap;
+
+	// slots: hash, key reference + 1 (0 for an empty slot), value
+	private IntBuffer table;
+	private int capacity;
+	private int size;
+
+	// key arena: 4-byte aligned records of a length header and the chars
+	private final List<ByteBuffer> pages;
+	private ByteBuffer page;
+
+	NodeIdIndex(final boolean offHeap) {
+		this(1024, offHeap);
+	}
+
+	NodeIdIndex(final int expectedSize, final boolean offHeap) {
+		this.offHeap = offHeap;
+		capacity = 16;
+		while (capacity < expectedSize * 3 / 2) capacity <<= 1;
+		table = allocateTable(capacity);
+		pages = new ArrayList<ByteBuffer>();
+		page = null;
+	}
+
+	private IntBuffer allocateTable(final int slots) {
+		final long bytes = (long) slots * SLOT_INTS * 4;
+		if (bytes > Integer.MAX_VALUE) throw new IllegalStateException("node id index full");
+		return offHeap ? ByteBuffer.allocateDirect((int) bytes).asIntBuffer()
+		               : IntBuffer.allocate(slots * SLOT_INTS);
+	}
+
+	int size() {
+		return size;
+	}
+
+	private static int hash(final String id) {
+		// spread the bits of String.hashCode(), which is cached by the String
+		int h = id.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	/**
+	 * @return the handle of the node, NOT_FOUND if unknown
+	 */
+	int get(final String id) {
+		final int hash = hash(id);
+		final int mask = capacity - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			final int base = slot * SLOT_INTS;
+			final int ref = table.get(base + 1);
+			if (ref == 0) return NOT_FOUND;
+			if (table.get(base) == hash && keyEquals(ref - 1, id)) {
+				return table.get(base + 2);
+			}
+		}
+	}
+
+	/**
+	 * Maps the id to the given handle, replacing the previous one.
+	 */
+	void put(final String id, final int index) {
+		final int hash = hash(id);
+		final int mask = capacity - 1;
+		int slot = hash & mask;
+		for (;; slot = (slot + 1) & mask) {
+			final int base = slot * SLOT_INTS;
+			final int ref = table.get(base + 1);
+			if (ref == 0) break;
+			if (table.get(base) == hash && keyEquals(ref - 1, id)) {
+				table.put(base + 2, index);
+				return;
+			}
+		}
+		final int base = slot * SLOT_INTS;
+		table.put(base, hash);
+		table.put(base + 1, addKey(id) + 1);
+		table.put(base + 2, index);
+		if (++size > capacity * 2 / 3) {
+			grow();
+		}
+	}
+
+	/**
+	 * Adds the string if it is unknown. The handle of an interned string is
+	 * its reference, so an index should either intern strings or map ids.
+	 *
+	 * @return the reference of the string, a non-negative int
+	 */
+	int intern(final String id) {
+		final int hash = hash(id);
+		final int mask = capacity - 1;
+		int slot = hash & mask;
+		for (;; slot = (slot + 1) & mask) {
+			final int base = slot * SLOT_INTS;
+			final int ref = table.get(base + 1);
+			if (ref == 0) break;
+			if (table.get(base) == hash && keyEquals(ref - 1, id)) {
+				return ref - 1;
+			}
+		}
+		final int ref = addKey(id);
+		final int base = slot * SLOT_INTS;
+		table.put(base, hash);
+		table.put(base + 1, ref + 1);
+		table.put(base + 2, ref);
+		if (++size > capacity * 2 / 3) {
+			grow();
+		}
+		return ref;
+	}
+
+	/**
+	 * @return the string of a reference returned by intern()
+	 */
+	String key(final int ref) {
+		final long offset = (long) ref << 2;
+		final ByteBuffer keyPage = pages.get((int) (offset >>> PAGE_BITS));
+		final int pos = (int) (offset & (PAGE_SIZE - 1));
+		final int header = keyPage.getInt(pos);
+		final int length = header & ~UTF16_FLAG;
+		final char[] chars = new char[length];
+		if ((header & UTF16_FLAG) != 0) {
+			for (int i = 0; i < length; i++) {
+				chars[i] = keyPage.getChar(pos + 4 + 2 * i);
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) (keyPage.get(pos + 4 + i) & 0xff);
+			}
+		}
+		return new String(chars);
+	}
+
+	void clear() {
+		capacity = 16;
+		table = allocateTable(capacity);
+		size = 0;
+		pages.clear();
+		page = null;
+	}
+
+	/**
+	 * Empties the index for the next document, keeping the table and the
+	 * first key page unless they grew large.
+	 */
+	void reset() {
+		if (capacity > RETAINED_CAPACITY) {
+			clear();
+			return;
+		}
+		if (table.hasArray()) {
+			Arrays.fill(table.array(), 0);
+		} else {
+			for (int i = 0; i < capacity * SLOT_INTS; i++) {
+				table.put(i, 0);
+			}
+		}
+		size = 0;
+		final ByteBuffer first = pages.isEmpty() ? null : pages.get(0);
+		pages.clear();
+		page = null;
+		if (first != null && first.capacity() <= RETAINED_PAGE_SIZE) {
+			first.clear();
+			page = first;
+			pages.add(page);
+		}
+	}
+
+	boolean isOffHeap() {
+		return offHeap;
+	}
+
+	private void grow() {
+		final IntBuffer old = table;
+		final int oldCapacity = capacity;
+		capacity <<= 1;
+		table = allocateTable(capacity);
+		final int mask = capacity - 1;
+		for (int i = 0; i < oldCapacity; i++) {
+			final int ref = old.get(i * SLOT_INTS + 1);
+			if (ref == 0) continue;
+			final int hash = old.get(i * SLOT_INTS);
+			int slot = hash & mask;
+			while (table.get(slot * SLOT_INTS + 1) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table.put(slot * SLOT_INTS, hash);
+			table.put(slot * SLOT_INTS + 1, ref);
+			table.put(slot * SLOT_INTS + 2, old.get(i * SLOT_INTS + 2));
+		}
+	}
+
+	private ByteBuffer allocatePage(final int bytes) {
+		return offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+	}
+
+	private static boolean isLatin1(final String id) {
+		for (int i = 0; i < id.length(); i++) {
+			if (id.charAt(i) > 0xff) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Appends the id to the arena.
+	 *
+	 * @return the reference of the record, its offset in 4-byte units
+	 */
+	private int addKey(final String id) {
+		final boolean latin1 = isLatin1(id);
+		final int dataBytes = latin1 ? id.length() : 2 * id.length();
+		final int recordBytes = (4 + dataBytes + 3) & ~3;
+		if (recordBytes > PAGE_SIZE) throw new IllegalArgumentException("node id too long");
+		if (page == null || PAGE_SIZE - page.position() < recordBytes) {
+			page = allocatePage(Math.max(recordBytes, 1 << 16));
+			pages.add(page);
+		} else if (page.remaining() < recordBytes) {
+			// the last page grows up to PAGE_SIZE, the offsets in it do not change
+			final ByteBuffer grown = allocatePage((int) Math.min(PAGE_SIZE,
+					Math.max(2L * page.capacity(), page.position() + recordBytes)));
+			page.flip();
+			grown.put(page);
+			page = grown;
+			pages.set(pages.size() - 1, page);
+		}
+		final long offset = ((long) (pages.size() - 1) << PAGE_BITS) + page.position();
+		page.putInt(latin1 ? id.length() : id.length() | UTF16_FLAG);
+		for (int i = 0; i < id.length(); i++) {
+			if (latin1) {
+				page.put((byte) id.charAt(i));
+			} else {
+				page.putChar(id.charAt(i));
+			}
+		}
+		page.position(page.position() + (recordBytes - 4 - dataBytes));
+		final long ref = offset >>> 2;
+		if (ref >= Integer.MAX_VALUE) throw new IllegalStateException("node id index full");
+		return (int) ref;
+	}
+
+	private boolean keyEquals(final int ref, final String id) {
+		final long offset = (long) ref << 2;
+		final ByteBuffer keyPage = pages.get((int) (offset >>> PAGE_BITS));
+		final int pos = (int) (offset & (PAGE_SIZE - 1));
+		final int header = keyPage.getInt(pos);
+		final boolean utf16 = (header & UTF16_FLAG) != 0;
+		final int length = header & ~UTF16_FLAG;
+		if (length != id.length()) return false;
+		if (utf16) {
+			for (int i = 0; i < length; i++) {
+				if (keyPage.getChar(pos + 4 + 2 * i) != id.charAt(i)) return false;
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				if ((char) (keyPage.get(pos + 4 + i) & 0xff) != id.charAt(i)) return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,148 @@
+package org.cytoscape.data.reader.graphml;
+
+/**
+ * Decodes the values of the typed attributes straight from the characters
+ * of the parser buffer, without creating a String per value.
+ * The results are those of Integer.parseInt(), Long.parseLong(),
+ * Double.parseDouble() and Boolean.parseBoolean() on the same text.
+ * Doubles with up to 15 significant digits and a small exponent, as
+ * written by most tools, are computed exactly from their digits; the other
+ * ones are handed to Double.parseDouble().
+ */
+final class NumberDecoder {
+
+	private static final char[] TRUE = "true".toCharArray();
+
+	// the powers of ten that are exact doubles
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+		1e21, 1e22
+	};
+
+	// largest mantissa a double holds exactly
+	private static final long MAX_EXACT_MANTISSA = (1L << 53) - 1;
+
+	private NumberDecoder() {
+	}
+
+	/**
+	 * @throws NumberFormatException
+	 *             if the text is not an int
+	 */
+	static int parseInt(final char[] data, final int start, final int length) {
+		final long value = parseLong(data, start, length);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw invalid(data, start, length);
+		return (int) value;
+	}
+
+	/**
+	 * @throws NumberFormatException
+	 *             if the text is not a long
+	 */
+	static long parseLong(final char[] data, final int start, final int length) {
+		int pos = start;
+		final int end = start + length;
+		boolean negative = false;
+		if (pos < end && (data[pos] == '-' || data[pos] == '+')) {
+			negative = data[pos] == '-';
+			pos++;
+		}
+		if (pos == end) throw invalid(data, start, length);
+		// accumulated negatively, as Long.MIN_VALUE has no positive counterpart
+		final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		final long multiplyLimit = limit / 10;
+		long value = 0;
+		for (; pos < end; pos++) {
+			final int digit = data[pos] - '0';
+			if (digit < 0 || digit > 9 || value < multiplyLimit) throw invalid(data, start, length);
+			value *= 10;
+			if (value < limit + digit) throw invalid(data, start, length);
+			value -= digit;
+		}
+		return negative ? value : -value;
+	}
+
+	/**
+	 * @throws NumberFormatException
+	 *             if the text is not a double
+	 */
+	static double parseDouble(final char[] data, final int start, final int length) {
+		int pos = start;
+		final int end = start + length;
+		boolean negative = false;
+		if (pos < end && (data[pos] == '-' || data[pos] == '+')) {
+			negative = data[pos] == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		boolean point = false;
+		for (; pos < end; pos++) {
+			final char c = data[pos];
+			if (c >= '0' && c <= '9') {
+				if (mantissa > (MAX_EXACT_MANTISSA - 9) / 10) return parseSlowly(data, start, length);
+				mantissa = 10 * mantissa + (c - '0');
+				if (point) exponent--;
+				digits++;
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) return parseSlowly(data, start, length);
+		if (pos < end) {
+			if (data[pos] != 'e' && data[pos] != 'E') return parseSlowly(data, start, length);
+			pos++;
+			boolean negativeExponent = false;
+			if (pos < end && (data[pos] == '-' || data[pos] == '+')) {
+				negativeExponent = data[pos] == '-';
+				pos++;
+			}
+			if (pos == end) return parseSlowly(data, start, length);
+			int explicit = 0;
+			for (; pos < end; pos++) {
+				final int digit = data[pos] - '0';
+				if (digit < 0 || digit > 9 || explicit > 1000) return parseSlowly(data, start, length);
+				explicit = 10 * explicit + digit;
+			}
+			exponent += negativeExponent ? -explicit : explicit;
+		}
+		// the mantissa and the power of ten are exact, so is their rounded
+		// product or quotient
+		final double value;
+		if (mantissa == 0) {
+			value = 0.0;
+		} else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+			value = mantissa * POWERS_OF_TEN[exponent];
+		} else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+			value = mantissa / POWERS_OF_TEN[-exponent];
+		} else {
+			return parseSlowly(data, start, length);
+		}
+		return negative ? -value : value;
+	}
+
+	private static double parseSlowly(final char[] data, final int start, final int length) {
+		return Double.parseDouble(new String(data, start, length));
+	}
+
+	/**
+	 * @return true if the text is "true", ignoring case
+	 */
+	static boolean parseBoolean(final char[] data, final int start, final int length) {
+		if (length != TRUE.length) return false;
+		for (int i = 0; i < TRUE.length; i++) {
+			if (Character.toLowerCase(data[start + i]) != TRUE[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static NumberFormatException invalid(final char[] data, final int start, final int length) {
+		return new NumberFormatException("For input string: \"" + new String(data, start, length) + "\"");
+	}
+}
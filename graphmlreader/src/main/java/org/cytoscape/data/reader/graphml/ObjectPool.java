@@ -0,0 +1,57 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Idle instances of an object that is costly to create, e.g. an XML parser,
+ * shared by the imports running on any thread. An instance taken with
+ * {@link #poll()} belongs to its caller until it is given back with
+ * {@link #offer(Object)}, in a state the next caller may use; the pool
+ * itself does not reset it. At most {@code maxIdle} instances are kept, the
+ * others are left to the garbage collector.
+ */
+class ObjectPool<T> {
+
+	private final Queue<T> idle = new ConcurrentLinkedQueue<T>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final int maxIdle;
+
+	/**
+	 * Keeps up to two instances per processor.
+	 */
+	ObjectPool() {
+		this(2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	ObjectPool(final int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * @return an idle instance, null if there is none
+	 */
+	T poll() {
+		final T instance = idle.poll();
+		if (instance != null) {
+			idleCount.decrementAndGet();
+		}
+		return instance;
+	}
+
+	/**
+	 * Gives back an instance that is no longer used.
+	 */
+	void offer(final T instance) {
+		if (idleCount.incrementAndGet() > maxIdle) {
+			idleCount.decrementAndGet();
+			return;
+		}
+		idle.offer(instance);
+	}
+
+	int idleCount() {
+		return idleCount.get();
+	}
+}
@@ -0,0 +1,236 @@
+package org.cytoscape.data.reader.graphml;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cytoscape.logger.CyLogger;
+
+/**
+ * Sink that passes the graph on to another sink and records it into the
+ * sections of a {@link GraphMLSnapshot}.
+ * The elements get the numbers of the snapshot as handles, which are
+ * translated to the handles of the other sink. The sections are written
+ * to temporary files as the graph is read, so recording does not keep the
+ * graph in the heap, and joined into the snapshot by {@link #write}.
+ * If a value does not match the type of its attribute, recording stops
+ * and no snapshot is written.
+ */
+class SnapshotRecorder implements GraphSink {
+
+	private static final CyLogger logger = CyLogger.getLogger(SnapshotRecorder.class);
+
+	private final GraphSink sink;
+	private final File directory;
+
+	private String graphId;
+	private boolean directed;
+	private int graph = NO_ELEMENT;
+	private final IntList nodes;
+	private final IntList edges;
+
+	private final Section nodeSection;
+	private final Section edgeSection;
+	private final Map<Attribute, Section> columns;
+	// null if the keys have no defaults
+	private GraphMLAttributeDefaults attributeDefaults;
+
+	private boolean recording = true;
+
+	/**
+	 * Temporary file of a section.
+	 */
+	private static class Section {
+		final File file;
+		final DataOutputStream out;
+		int count;
+
+		Section(final File directory) throws IOException {
+			file = File.createTempFile("graphml-snapshot", ".part", directory);
+			file.deleteOnExit();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		}
+	}
+
+	SnapshotRecorder(final GraphSink sink, final File directory) throws IOException {
+		this.sink = sink;
+		this.directory = directory;
+		nodes = new IntList();
+		edges = new IntList();
+		columns = new LinkedHashMap<Attribute, Section>();
+		nodeSection = new Section(directory);
+		edgeSection = new Section(directory);
+	}
+
+	public int startGraph(final String id, final boolean directed) {
+		graphId = id;
+		this.directed = directed;
+		graph = sink.startGraph(id, directed);
+		return 0;
+	}
+
+	public int node(final String id) {
+		nodes.add(sink.node(id));
+		if (recording) {
+			try {
+				GraphMLSnapshot.writeString(nodeSection.out, id);
+			} catch (IOException e) {
+				stop(e);
+			}
+		}
+		return nodes.size() - 1;
+	}
+
+	public int edge(final int source, final int target) {
+		edges.add(sink.edge(nodes.get(source), nodes.get(target)));
+		if (recording) {
+			try {
+				edgeSection.out.writeInt(source);
+				edgeSection.out.writeInt(target);
+			} catch (IOException e) {
+				stop(e);
+			}
+		}
+		return edges.size() - 1;
+	}
+
+	public void attribute(final GraphMLScope scope, final int element, final Attribute attribute,
+			final char[] data, final int start, final int length) {
+		final int handle = scope == GraphMLScope.NODE ? nodes.get(element)
+				: scope == GraphMLScope.EDGE ? edges.get(element) : graph;
+		sink.attribute(scope, handle, attribute, data, start, length);
+		if (!recording) return;
+		try {
+			Section column = columns.get(attribute);
+			if (column == null) {
+				column = new Section(directory);
+				columns.put(attribute, column);
+			}
+			column.out.writeInt(element);
+			GraphMLSnapshot.writeValue(column.out, attribute.datatype, new String(data, start, length));
+			column.count++;
+		} catch (NumberFormatException e) {
+			logger.debug("Value of " + attribute.name + " does not match its type, no snapshot");
+			stop(null);
+		} catch (IOException e) {
+			stop(e);
+		}
+	}
+
+	public void end() {
+		sink.end();
+	}
+
+	/**
+	 * Sets the defaults of the attributes, known once the document is read.
+	 */
+	void setAttributeDefaults(final GraphMLAttributeDefaults attributeDefaults) {
+		this.attributeDefaults = attributeDefaults;
+	}
+
+	boolean isRecording() {
+		return recording;
+	}
+
+	private void stop(final IOException e) {
+		if (e != null) {
+			logger.warn("Cannot record the GraphML snapshot", e);
+		}
+		recording = false;
+		dispose();
+	}
+
+	/**
+	 * Writes the snapshot of the recorded graph.
+	 */
+	void write(final File file, final GraphMLSnapshot.Key key) throws IOException {
+		final List<Section> sections = new ArrayList<Section>();
+		sections.add(nodeSection);
+		sections.add(edgeSection);
+		sections.addAll(columns.values());
+		for (final Section section : sections) {
+			section.out.close();
+		}
+
+		final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		final DataOutputStream header = new DataOutputStream(headerBytes);
+		GraphMLSnapshot.writeString(header, key.path);
+		header.writeLong(key.size);
+		header.writeLong(key.modified);
+		header.writeLong(key.hash);
+		GraphMLSnapshot.writeString(header, graphId);
+		header.writeBoolean(directed);
+		header.writeInt(nodes.size());
+		header.writeInt(edges.size());
+		header.writeInt(columns.size());
+		for (final Map.Entry<Attribute, Section> entry : columns.entrySet()) {
+			final Attribute attr = entry.getKey();
+			header.writeByte(attr.id.scope.ordinal());
+			GraphMLSnapshot.writeString(header, attr.id.key);
+			GraphMLSnapshot.writeString(header, attr.name);
+			GraphMLSnapshot.writeString(header, attr.datatype == null ? null : attr.datatype.getTag());
+			header.writeInt(entry.getValue().count);
+		}
+		if (attributeDefaults != null) {
+			attributeDefaults.write(header);
+		} else {
+			header.writeInt(0);
+		}
+		for (final Section section : sections) {
+			header.writeLong(section.file.length());
+		}
+		header.close();
+
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			final DataOutputStream prefix = new DataOutputStream(out);
+			prefix.writeInt(GraphMLSnapshot.MAGIC);
+			prefix.writeInt(GraphMLSnapshot.VERSION);
+			prefix.writeInt(headerBytes.size());
+			headerBytes.writeTo(out);
+			final FileChannel channel = out.getChannel();
+			for (final Section section : sections) {
+				final FileInputStream in = new FileInputStream(section.file);
+				try {
+					final FileChannel source = in.getChannel();
+					long position = 0;
+					final long size = source.size();
+					while (position < size) {
+						position += source.transferTo(position, size - position, channel);
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Deletes the temporary files of the sections.
+	 */
+	void dispose() {
+		final List<Section> sections = new ArrayList<Section>();
+		sections.add(nodeSection);
+		sections.add(edgeSection);
+		sections.addAll(columns.values());
+		for (final Section section : sections) {
+			try {
+				section.out.close();
+			} catch (IOException e) {
+				// deleted anyway
+			}
+			section.file.delete();
+		}
+	}
+}
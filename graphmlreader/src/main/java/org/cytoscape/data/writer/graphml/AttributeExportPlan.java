@@ -0,0 +1,128 @@
+package org.cytoscape.data.writer.graphml;
+
+import giny.model.GraphObject;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import cytoscape.data.CyAttributes;
+
+/**
+ * Attributes of the network, of the nodes or of the edges, as written in
+ * the &lt;data&gt; elements. The key id and the type of each attribute are
+ * resolved once, when the &lt;key&gt; elements are written, so writing the
+ * data of an element is one typed lookup per attribute, without the name
+ * list and key id map lookups per element. The values equal to the
+ * &lt;default&gt; of their key are left out.
+ * The plan is read-only once built, and may be shared by several threads.
+ */
+class AttributeExportPlan {
+
+	private static final String DATA = "data";
+
+	private final CyAttributes attrs;
+	private String[] names;
+	private String[] keyIds;
+	private byte[] types;
+	private Object[] defaults;
+	private int size;
+
+	AttributeExportPlan(final CyAttributes attrs) {
+		this.attrs = attrs;
+		names = new String[16];
+		keyIds = new String[16];
+		types = new byte[16];
+		defaults = new Object[16];
+		size = 0;
+	}
+
+	/**
+	 * @param defaultValue
+	 *            the &lt;default&gt; of the key, null if none
+	 */
+	void add(final String name, final String keyId, final Object defaultValue) {
+		if (size == names.length) {
+			names = Arrays.copyOf(names, 2 * size);
+			keyIds = Arrays.copyOf(keyIds, 2 * size);
+			types = Arrays.copyOf(types, 2 * size);
+			defaults = Arrays.copyOf(defaults, 2 * size);
+		}
+		names[size] = name;
+		keyIds[size] = keyId;
+		types[size] = attrs.getType(name);
+		defaults[size] = defaultValue;
+		size++;
+	}
+
+	/**
+	 * Finds the value of the attribute shared by most of the elements, which
+	 * may be left to the &lt;default&gt; of its key: it must be the value of
+	 * over half of them, and every element must have a value, as the
+	 * elements without one would read back as the default. The lists and
+	 * maps have no default.
+	 *
+	 * @return the value, null if there is none
+	 */
+	Object dominantValue(final String name, final List<? extends GraphObject> elements) {
+		final byte type = attrs.getType(name);
+		if (type != CyAttributes.TYPE_BOOLEAN && type != CyAttributes.TYPE_FLOATING
+				&& type != CyAttributes.TYPE_INTEGER && type != CyAttributes.TYPE_STRING)
+			return null;
+		// majority vote, then a count of the candidate
+		Object candidate = null;
+		int votes = 0;
+		for (final GraphObject element : elements) {
+			final Object val = value(type, name, element.getIdentifier());
+			if (val == null) return null;
+			if (votes == 0) {
+				candidate = val;
+				votes = 1;
+			} else if (candidate.equals(val)) {
+				votes++;
+			} else {
+				votes--;
+			}
+		}
+		if (candidate == null) return null;
+		int count = 0;
+		for (final GraphObject element : elements) {
+			if (candidate.equals(value(type, name, element.getIdentifier()))) count++;
+		}
+		return count > elements.size() / 2 && count > 1 ? candidate : null;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Writes a &lt;data&gt; element for each attribute the element has.
+	 */
+	void appendData(final GraphMLOutput out, final String id) throws IOException {
+		for (int i = 0; i < size; i++) {
+			final Object val = value(types[i], names[i], id);
+			if (val != null && !val.equals(defaults[i])) {
+				out.startElement(DATA);
+				out.attribute("key", keyIds[i]);
+				out.text(val.toString());
+				out.endElement();
+			}
+		}
+	}
+
+	private Object value(final byte type, final String name, final String id) {
+		switch (type) {
+		case CyAttributes.TYPE_BOOLEAN:
+			return attrs.getBooleanAttribute(id, name);
+		case CyAttributes.TYPE_FLOATING:
+			return attrs.getDoubleAttribute(id, name);
+		case CyAttributes.TYPE_INTEGER:
+			return attrs.getIntegerAttribute(id, name);
+		case CyAttributes.TYPE_STRING:
+			return attrs.getStringAttribute(id, name);
+		default:
+			return attrs.getAttribute(id, name);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package org.cytoscape.data.writer.graphml;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the bytes to the target stream on a separate thread, gzip
+ * compressing them if requested, so the serialization of the document,
+ * its compression and the I/O overlap. The bytes are handed over in blocks
+ * through a bounded queue, which limits how far the serialization runs
+ * ahead of the writer. An error of the writer is thrown by the next write()
+ * or by close(), which waits for the writer and closes the target stream.
+ */
+class BackgroundOutputStream extends OutputStream {
+
+	static final int BLOCK_SIZE = 1 << 16;
+	static final int QUEUE_BLOCKS = 16;
+
+	/**
+	 * Bytes to write, the last block has no data.
+	 */
+	private static class Block {
+		final byte[] data;
+		final int length;
+
+		Block(final byte[] data, final int length) {
+			this.data = data;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Gzip stream with a given compression level.
+	 */
+	private static class LevelGZIPOutputStream extends GZIPOutputStream {
+		LevelGZIPOutputStream(final OutputStream out, final int level) throws IOException {
+			super(out, BLOCK_SIZE);
+			def.setLevel(level);
+		}
+	}
+
+	private final BlockingQueue<Block> queue;
+	// written blocks, for reuse
+	private final BlockingQueue<byte[]> free;
+	private final Thread writer;
+	private volatile IOException failure;
+
+	private byte[] buffer;
+	private int count;
+	private boolean closed;
+
+	/**
+	 * Writes the bytes as they are.
+	 */
+	BackgroundOutputStream(final OutputStream target) {
+		this(target, false, 0);
+	}
+
+	/**
+	 * Writes the bytes gzip compressed.
+	 *
+	 * @param gzipLevel
+	 *            compression level, 1 (fastest) to 9 (best)
+	 */
+	BackgroundOutputStream(final OutputStream target, final int gzipLevel) {
+		this(target, true, gzipLevel);
+	}
+
+	private BackgroundOutputStream(final OutputStream target, final boolean gzip, final int gzipLevel) {
+		if (gzip && (gzipLevel < 1 || gzipLevel > 9))
+			throw new IllegalArgumentException("gzip level must be between 1 and 9");
+		queue = new ArrayBlockingQueue<Block>(QUEUE_BLOCKS);
+		free = new ArrayBlockingQueue<byte[]>(QUEUE_BLOCKS + 1);
+		buffer = new byte[BLOCK_SIZE];
+		count = 0;
+		closed = false;
+		writer = new Thread(new Runnable() {
+			public void run() {
+				drain(target, gzip, gzipLevel);
+			}
+		}, "GraphML writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private void drain(final OutputStream target, final boolean gzip, final int gzipLevel) {
+		IOException error = null;
+		OutputStream out = target;
+		try {
+			if (gzip) {
+				out = new LevelGZIPOutputStream(target, gzipLevel);
+			}
+		} catch (IOException e) {
+			error = e;
+			failure = e;
+		}
+		try {
+			// after an error the blocks are dropped, so the queue never blocks
+			Block block;
+			while ((block = queue.take()).data != null) {
+				if (error == null) {
+					try {
+						out.write(block.data, 0, block.length);
+					} catch (IOException e) {
+						error = e;
+						failure = e;
+					}
+				}
+				free.offer(block.data);
+			}
+			if (error == null) {
+				if (gzip) {
+					((GZIPOutputStream) out).finish();
+				}
+				out.flush();
+			}
+		} catch (InterruptedException e) {
+			// abandoned by an interrupted close()
+		} catch (IOException e) {
+			error = e;
+		} finally {
+			try {
+				target.close();
+			} catch (IOException e) {
+				if (error == null) error = e;
+			}
+			failure = error;
+		}
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		if (count == buffer.length) {
+			handOver();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(final byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (count == buffer.length) {
+				handOver();
+			}
+			final int n = Math.min(len, buffer.length - count);
+			System.arraycopy(b, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Queues the full buffer for the writer.
+	 */
+	private void handOver() throws IOException {
+		if (closed) throw new IOException("Stream closed");
+		if (failure != null) throw failure;
+		put(new Block(buffer, count));
+		final byte[] reused = free.poll();
+		buffer = reused != null ? reused : new byte[BLOCK_SIZE];
+		count = 0;
+	}
+
+	private void put(final Block block) throws InterruptedIOException {
+		try {
+			queue.put(block);
+		} catch (InterruptedException e) {
+			writer.interrupt();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing");
+		}
+	}
+
+	/**
+	 * Does not wait for the writer: the queued blocks are written anyway,
+	 * and close() waits for all of them.
+	 */
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		if (count > 0) {
+			put(new Block(buffer, count));
+			count = 0;
+		}
+		put(new Block(null, 0));
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			writer.interrupt();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing");
+		}
+		if (failure != null) throw failure;
+	}
+}
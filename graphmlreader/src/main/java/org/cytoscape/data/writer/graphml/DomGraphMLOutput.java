@@ -0,0 +1,83 @@
+package org.cytoscape.data.writer.graphml;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Builds the GraphML document as a DOM tree and serializes it with an
+ * indenting Transformer once it is complete.
+ */
+class DomGraphMLOutput implements GraphMLOutput {
+
+	private final Document doc;
+	private final String namespace;
+	private final List<Element> elements;
+
+	DomGraphMLOutput(final Document doc, final String namespace) {
+		this.doc = doc;
+		this.namespace = namespace;
+		this.elements = new ArrayList<Element>();
+	}
+
+	private Element current() {
+		return elements.get(elements.size() - 1);
+	}
+
+	private Node parent() {
+		return elements.isEmpty() ? doc : current();
+	}
+
+	public void startElement(final String name) {
+		final Element elm = elements.isEmpty() ? doc.createElementNS(namespace, name)
+		                                       : doc.createElement(name);
+		parent().appendChild(elm);
+		elements.add(elm);
+	}
+
+	public void attribute(final String name, final String value) {
+		current().setAttribute(name, value);
+	}
+
+	public void text(final String text) {
+		current().setTextContent(text);
+	}
+
+	public void comment(final String text) {
+		parent().appendChild(doc.createComment(text));
+	}
+
+	public void endElement() {
+		elements.remove(elements.size() - 1);
+	}
+
+	public void finish() {
+		if (!elements.isEmpty()) throw new IllegalStateException("unclosed elements");
+	}
+
+	void transform(final OutputStream outputStream) throws TransformerException {
+		TransformerFactory transFactory = TransformerFactory.newInstance();
+		transFactory.setAttribute("indent-number", 4);
+		Transformer transformer = transFactory.newTransformer();
+
+		transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+		transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+
+		DOMSource source = new DOMSource(doc);
+
+		StreamResult result = new StreamResult(outputStream);
+		transformer.transform(source, result);
+	}
+}
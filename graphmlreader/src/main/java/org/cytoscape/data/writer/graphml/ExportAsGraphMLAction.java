@@ -10,6 +10,7 @@ import javax.swing.event.MenuEvent;
 
 import cytoscape.CyNetwork;
 import cytoscape.Cytoscape;
+import cytoscape.CytoscapeInit;
 import cytoscape.task.Task;
 import cytoscape.task.TaskMonitor;
 import cytoscape.task.ui.JTaskConfig;
@@ -24,6 +25,7 @@ public class ExportAsGraphMLAction extends CytoscapeAction {
 	private static final long serialVersionUID = 3291201728797501188L;
 
 	private static final String GRAPHML_EXT = "graphml";
+	private static final String GZIP_EXT = "gz";
 
 	/**
 	 * Creates a new ExportAsGMLAction object.
@@ -43,6 +45,8 @@ public class ExportAsGraphMLAction extends CytoscapeAction {
 		try {
 
 			CyFileFilter cyFileFilter = new CyFileFilter(GRAPHML_EXT);
+			// .graphml.gz files are written gzip compressed
+			cyFileFilter.addExtension(GRAPHML_EXT + "." + GZIP_EXT);
 
 			String suggestedFileName = network.getIdentifier();
 			if (!suggestedFileName.endsWith("." + GRAPHML_EXT)) {
@@ -58,11 +62,15 @@ public class ExportAsGraphMLAction extends CytoscapeAction {
 			return;
 		}
 
-		if (!name.endsWith("." + GRAPHML_EXT))
+		if (!name.endsWith("." + GRAPHML_EXT) && !name.endsWith("." + GRAPHML_EXT + "." + GZIP_EXT))
 			name = name + "." + GRAPHML_EXT;
 
 		// Create Task
 		ExportAsGraphMLTask task = new ExportAsGraphMLTask(name, network, networkView);
+		if (name.endsWith("." + GZIP_EXT)) {
+			task.setGzipLevel(getGzipLevel());
+		}
+		task.setKeyDefaults(getKeyDefaults());
 
 		// Configure JTask Dialog Pop-Up Box
 		JTaskConfig jTaskConfig = new JTaskConfig();
@@ -75,6 +83,27 @@ public class ExportAsGraphMLAction extends CytoscapeAction {
 		TaskManager.executeTask(task, jTaskConfig);
 	}
 
+	/**
+	 * @return the gzip level of the compressed files, from the
+	 *         graphml.export.gzipLevel property (6 by default)
+	 */
+	private static int getGzipLevel() {
+		final String level = CytoscapeInit.getProperties().getProperty("graphml.export.gzipLevel");
+		try {
+			return level != null ? Math.max(1, Math.min(9, Integer.parseInt(level.trim()))) : 6;
+		} catch (NumberFormatException e) {
+			return 6;
+		}
+	}
+
+	/**
+	 * @return true if the dominant values are written as key defaults, from
+	 *         the graphml.export.keyDefaults property (false by default)
+	 */
+	private static boolean getKeyDefaults() {
+		return Boolean.parseBoolean(CytoscapeInit.getProperties().getProperty("graphml.export.keyDefaults"));
+	}
+
 	public void menuSelected(MenuEvent e) {
 		enableForNetwork();
 	}
@@ -88,6 +117,9 @@ class ExportAsGraphMLTask implements Task {
 	private String fileName;
 	private CyNetwork network;
 	private CyNetworkView networkView;
+	// 0 to write plain XML
+	private int gzipLevel = 0;
+	private boolean keyDefaults = false;
 
 	private TaskMonitor taskMonitor;
 
@@ -105,6 +137,23 @@ class ExportAsGraphMLTask implements Task {
 		this.networkView = networkView;
 	}
 
+	/**
+	 * Compresses the file with gzip.
+	 * 
+	 * @param gzipLevel
+	 *            compression level, 1 (fastest) to 9 (best), 0 for plain XML
+	 */
+	void setGzipLevel(int gzipLevel) {
+		this.gzipLevel = gzipLevel;
+	}
+
+	/**
+	 * Writes the dominant values of the attributes as key defaults.
+	 */
+	void setKeyDefaults(boolean keyDefaults) {
+		this.keyDefaults = keyDefaults;
+	}
+
 	/**
 	 * Executes Task
 	 */
@@ -161,7 +210,8 @@ class ExportAsGraphMLTask implements Task {
 	}
 
 	/**
-	 * Saves Graph to File.
+	 * Saves Graph to File. The file is written, and compressed, by a
+	 * background thread while the network is serialized.
 	 * 
 	 * @throws IOException
 	 *             Error Writing to File.
@@ -170,8 +220,12 @@ class ExportAsGraphMLTask implements Task {
 		OutputStream outputStream = null;
 
 		try {
-			outputStream = new FileOutputStream( fileName, false );
+			final FileOutputStream fileStream = new FileOutputStream( fileName, false );
+			outputStream = gzipLevel > 0 ? new BackgroundOutputStream( fileStream, gzipLevel )
+					: new BackgroundOutputStream( fileStream );
 			final GraphMLWriter writer = new GraphMLWriter(network, networkView, outputStream, taskMonitor);
+			writer.setStreaming(true);
+			writer.setKeyDefaults(keyDefaults);
 			writer.write();
 		} finally {
 			if (outputStream != null) {
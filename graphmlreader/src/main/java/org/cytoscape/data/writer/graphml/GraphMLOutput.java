@@ -0,0 +1,26 @@
+package org.cytoscape.data.writer.graphml;
+
+import java.io.IOException;
+
+/**
+ * Target of the GraphML elements produced by {@link GraphMLWriter}.
+ * Elements are opened and closed in document order, the attributes and
+ * the text of an element follow its startElement().
+ */
+interface GraphMLOutput {
+
+	void startElement(String name) throws IOException;
+
+	void attribute(String name, String value) throws IOException;
+
+	void text(String text) throws IOException;
+
+	void comment(String text) throws IOException;
+
+	void endElement() throws IOException;
+
+	/**
+	 * Completes the document and writes out whatever is still pending.
+	 */
+	void finish() throws IOException;
+}
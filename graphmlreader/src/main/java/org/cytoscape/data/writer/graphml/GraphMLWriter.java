@@ -1,28 +1,33 @@
 package org.cytoscape.data.writer.graphml;
 
+import giny.model.GraphObject;
 import giny.view.EdgeView;
 import giny.view.NodeView;
 
 import java.awt.Color;
 import java.awt.Paint;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import org.cytoscape.data.reader.graphml.GraphMLMetrics;
 
 import cytoscape.CyEdge;
 import cytoscape.CyNetwork;
@@ -51,6 +56,9 @@ public class GraphMLWriter {
 	
 	private static final String GRAPHICS_ATTRID = "__YWorks_Graphics__";
 
+	// nodes or edges serialized by a task of the parallel export
+	private static final int RANGE_SIZE = 1024;
+
 	private static final Map<Integer, String> shapeCodeMap;
 	
 	static {
@@ -90,8 +98,52 @@ public class GraphMLWriter {
 
 	private	DocumentBuilderFactory factory;
 	private	DocumentBuilder builder;
-	private Document doc;
+	private GraphMLOutput out;
 	private Map<String, String> attrIdMap;
+	// the attributes and graphics keys of the document being written
+	private AttributeExportPlan networkPlan;
+	private AttributeExportPlan nodePlan;
+	private AttributeExportPlan edgePlan;
+	private String nodeGraphicsKey;
+	private String edgeGraphicsKey;
+	private boolean streaming;
+	private boolean keyDefaults;
+	private int parallelism;
+	private int rangeSize;
+	// workers of the parallel export, for the duration of a write()
+	private ExecutorService pool;
+	private int nodesWritten;
+	private int edgesWritten;
+
+	/**
+	 * Writes a node or an edge.
+	 */
+	private interface ElementWriter<T> {
+		void write( GraphMLOutput out, T element ) throws IOException;
+	}
+
+	/**
+	 * Counts the bytes of the document.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		long count = 0;
+
+		CountingOutputStream( final OutputStream out ) {
+			super( out );
+		}
+
+		@Override
+		public void write( final int b ) throws IOException {
+			out.write( b );
+			count++;
+		}
+
+		@Override
+		public void write( final byte[] b, final int off, final int len ) throws IOException {
+			out.write( b, off, len );
+			count += len;
+		}
+	}
 
 	private static String EncodeCytoscapeAttr( String objectType, String name ) {
 		return objectType + ':' + name;
@@ -119,224 +171,370 @@ public class GraphMLWriter {
 		this.monitor = taskMonitor;
 		factory = null;
 		builder = null;
-		doc = null;
+		out = null;
 		attrIdMap = null;
+		streaming = false;
+		keyDefaults = false;
+		parallelism = 1;
+		rangeSize = RANGE_SIZE;
 	}
 
-	public void write() throws IOException, ParserConfigurationException, TransformerException {
-		initDocument();
+	/**
+	 * Enables the streaming mode: the elements are written to the output
+	 * stream as the network is traversed, instead of building the whole
+	 * document in memory first. The output is the same in both modes.
+	 *
+	 * @param streaming
+	 *            true to stream the document
+	 */
+	public void setStreaming(final boolean streaming) {
+		this.streaming = streaming;
+	}
 
-		TransformerFactory transFactory = TransformerFactory.newInstance();
-		transFactory.setAttribute("indent-number", 4);
-		Transformer transformer = transFactory.newTransformer();
-		
-		transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-		transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-		
-		DOMSource source = new DOMSource(doc);
-		
-		StreamResult result = new StreamResult(outputStream); 
-		transformer.transform(source, result);
+	/**
+	 * Writes the value shared by most of the nodes, or of the edges, as the
+	 * &lt;default&gt; of its key, and leaves it out of their &lt;data&gt;.
+	 * Only the attributes that every element has get a default, since a
+	 * reader gives it to the elements without a value. The attributes are
+	 * read twice more before the document is written.
+	 *
+	 * @param keyDefaults
+	 *            true to write the defaults, false (the default) to write
+	 *            every value
+	 */
+	public void setKeyDefaults(final boolean keyDefaults) {
+		this.keyDefaults = keyDefaults;
+	}
+
+	/**
+	 * Sets how many threads serialize the nodes and edges in the streaming
+	 * mode. The elements are cut in ranges, which are written to buffers
+	 * in parallel and copied to the output stream in order, so the output
+	 * is the same as with a single thread. The network and its attributes
+	 * must not change during the export.
+	 *
+	 * @param parallelism
+	 *            number of threads, 1 (the default) for the sequential export
+	 */
+	public void setParallelism( final int parallelism ) {
+		if ( parallelism < 1 )
+			throw new IllegalArgumentException( "parallelism must be positive" );
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param rangeSize
+	 *            number of elements per task of the parallel export, for the
+	 *            tests
+	 */
+	void setRangeSize( final int rangeSize ) {
+		this.rangeSize = rangeSize;
+	}
 
-		doc = null;
+	public void write() throws IOException, ParserConfigurationException, TransformerException {
+		if ( out != null ) throw new RuntimeException( "document already initialized" );
+
+		final long start = System.nanoTime();
+		final CountingOutputStream countingStream = new CountingOutputStream( outputStream );
+		writeTo( countingStream );
+		countingStream.flush();
+		GraphMLMetrics.getInstance().recordExport( countingStream.count, nodesWritten, edgesWritten,
+				System.nanoTime() - start );
 	}
 
-	private void initDocument() throws ParserConfigurationException {
-		if ( factory == null ) factory = DocumentBuilderFactory.newInstance();
-		if ( builder == null ) builder = factory.newDocumentBuilder();
-		if ( doc != null ) throw new RuntimeException( "document already initialized" );
-		doc = builder.newDocument();
+	private void writeTo( final OutputStream outputStream )
+			throws IOException, ParserConfigurationException, TransformerException {
+		if ( streaming ) {
+			out = new StreamGraphMLOutput( outputStream );
+			// the threads only start with the first range
+			pool = parallelism > 1 ? Executors.newFixedThreadPool( parallelism ) : null;
+			try {
+				writeDocument();
+				out.finish();
+			} finally {
+				out = null;
+				if ( pool != null ) {
+					pool.shutdownNow();
+					pool = null;
+				}
+			}
+		} else {
+			if ( factory == null ) factory = DocumentBuilderFactory.newInstance();
+			if ( builder == null ) builder = factory.newDocumentBuilder();
+			final DomGraphMLOutput domOut = new DomGraphMLOutput( builder.newDocument(), GRAPHMLNS_URL );
+			out = domOut;
+			try {
+				writeDocument();
+				out.finish();
+				domOut.transform( outputStream );
+			} finally {
+				out = null;
+			}
+		}
+	}
+
+	private void writeDocument() throws IOException {
 		attrIdMap = new HashMap<String, String>();
+		nodesWritten = 0;
+		edgesWritten = 0;
 		
-		Element root = doc.createElementNS(GRAPHMLNS_URL, GRAPHML);
-		root.setAttribute( "xmlns", GRAPHMLNS_URL );
-		root.setAttribute( "xmlns:y", YWORKSNS_URL );
-		root.setAttribute( "xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance" );
-		root.setAttribute( "xsi:schemaLocation", "http://graphml.graphdrawing.org/xmlns http://www.yworks.com/xml/schema/graphml/1.1/ygraphml.xsd" );
-		root.appendChild( doc.createComment( "Generated by GraphMLReader Cytoscape plugin") ); // @TODO: write plugin's version
-		doc.appendChild(root);
+		out.startElement( GRAPHML );
+		out.attribute( "xmlns", GRAPHMLNS_URL );
+		out.attribute( "xmlns:y", YWORKSNS_URL );
+		out.attribute( "xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance" );
+		out.attribute( "xsi:schemaLocation", "http://graphml.graphdrawing.org/xmlns http://www.yworks.com/xml/schema/graphml/1.1/ygraphml.xsd" );
+		out.comment( "Generated by GraphMLReader Cytoscape plugin" ); // @TODO: write plugin's version
 
 		// write cytoscape attributes
-		writeAttributes(Cytoscape.getNetworkAttributes(), GRAPH, root);
+		networkPlan = writeAttributes(Cytoscape.getNetworkAttributes(), GRAPH, null);
 
-		writeAttributes(Cytoscape.getNodeAttributes(), NODE, root);
+		nodePlan = writeAttributes(Cytoscape.getNodeAttributes(), NODE, network.nodesList());
 		// YFiles node graphics attributes
 		if ( networkView != null ) {
 			String graphmlId = NODE.substring(0, 1) + ( attrIdMap.size() + 1 );
 			attrIdMap.put( EncodeCytoscapeAttr(NODE, GRAPHICS_ATTRID), graphmlId );
-			Element keyElm = doc.createElement("key");
-			keyElm.setAttribute("for", NODE );
-			keyElm.setAttribute(ID, graphmlId);
-			keyElm.setAttribute("yfiles.type", "nodegraphics");
-			root.appendChild( keyElm );
+			nodeGraphicsKey = graphmlId;
+			out.startElement("key");
+			out.attribute("for", NODE );
+			out.attribute(ID, graphmlId);
+			out.attribute("yfiles.type", "nodegraphics");
+			out.endElement();
 		}
 
-		writeAttributes(Cytoscape.getEdgeAttributes(), EDGE, root);
+		edgePlan = writeAttributes(Cytoscape.getEdgeAttributes(), EDGE, network.edgesList());
 		// YFiles edge graphics attributes
 		if ( networkView != null ) {
 			String graphmlId = EDGE.substring(0, 1) + ( attrIdMap.size() + 1 );
 			attrIdMap.put( EncodeCytoscapeAttr(EDGE, GRAPHICS_ATTRID), graphmlId );
-			Element keyElm = doc.createElement("key");
-			keyElm.setAttribute("for", EDGE );
-			keyElm.setAttribute(ID, graphmlId);
-			keyElm.setAttribute("yfiles.type", "edgegraphics");
-			root.appendChild( keyElm );
+			edgeGraphicsKey = graphmlId;
+			out.startElement("key");
+			out.attribute("for", EDGE );
+			out.attribute(ID, graphmlId);
+			out.attribute("yfiles.type", "edgegraphics");
+			out.endElement();
 		}
 
 		// write the network
-		Element graphElm = doc.createElement(GRAPH);
+		out.startElement(GRAPH);
 		// For now, everything is directed.
-		graphElm.setAttribute(directed, "directed");
-		graphElm.setAttribute(ID, network.getTitle());
-		appendData( GRAPH, Cytoscape.getNetworkAttributes(), graphElm, network.getIdentifier() );
-		root.appendChild(graphElm);
+		out.attribute(directed, "directed");
+		out.attribute(ID, network.getTitle());
+		networkPlan.appendData( out, network.getIdentifier() );
 		
-		writeNodes(graphElm);
-		writeEdges(graphElm);
+		writeNodes();
+		writeEdges();
+		out.endElement(); // graph
+
+		out.endElement(); // graphml
 	}
 
-	private Element attributeDefinitionNode( String objectType, String name, String type )
+	private String attributeDefinitionNode( String objectType, String name, String type, Object defaultValue ) throws IOException
 	{
-		Element keyElm = doc.createElement("key");
-		keyElm.setAttribute("for", objectType );
-		keyElm.setAttribute("attr.name", name );
-		keyElm.setAttribute("attr.type", type );
+		out.startElement("key");
+		out.attribute("for", objectType );
+		out.attribute("attr.name", name );
+		out.attribute("attr.type", type );
 		String graphmlId = objectType.substring(0, 1) + ( attrIdMap.size() + 1 );
-		keyElm.setAttribute(ID, graphmlId );
+		out.attribute(ID, graphmlId );
 		attrIdMap.put( EncodeCytoscapeAttr(objectType, name), graphmlId );
-		return keyElm;
+		if ( defaultValue != null ) {
+			out.startElement("default");
+			out.text( defaultValue.toString() );
+			out.endElement();
+		}
+		out.endElement();
+		return graphmlId;
 	}
 
-	private void writeAttributes(CyAttributes attrs, String objectType, Element parent) {
+	/**
+	 * Writes the keys of the attributes.
+	 *
+	 * @param elements
+	 *            the nodes or edges, whose dominant values become the key
+	 *            defaults if enabled, null for the network
+	 * @return the plan to write the values of the attributes
+	 */
+	private AttributeExportPlan writeAttributes(CyAttributes attrs, String objectType,
+			List<? extends GraphObject> elements) throws IOException {
+		final AttributeExportPlan plan = new AttributeExportPlan( attrs );
 		final String[] nodeAttrNames = attrs.getAttributeNames();
 		for(String attrName : nodeAttrNames) {
 			final Class<?> type = CyAttributesUtils.getClass(attrName, attrs);
 			String tag = GraphMLAttributeDataTypes.getTag(type);
 			if(tag == null)
 				tag = GraphMLAttributeDataTypes.STRING.getTypeTag();
-			parent.appendChild( attributeDefinitionNode( objectType, attrName, tag ) );
+			final Object defaultValue = keyDefaults && elements != null
+					? plan.dominantValue( attrName, elements ) : null;
+			plan.add( attrName, attributeDefinitionNode( objectType, attrName, tag, defaultValue ), defaultValue );
 		}
+		return plan;
 	}
 	
-	private void writeNodes(Element parent) {
+	private void writeNodes() throws IOException {
 		final List<CyNode> nodes = network.nodesList();
-		
-		for(final CyNode node: nodes) {
-			final Element nodeElm = doc.createElement(NODE);
-			nodeElm.setAttribute(ID, node.getIdentifier());
-			appendData(NODE, Cytoscape.getNodeAttributes(), nodeElm, node.getIdentifier());
-
-			if ( networkView != null ) {
-				final NodeView nodeView = networkView.getNodeView(node);
-				final Element shapeNode = doc.createElement("y:ShapeNode");
-
-				final Element geometry = doc.createElement("y:Geometry");
-				geometry.setAttribute("height", String.valueOf( nodeView.getHeight() ) );
-				geometry.setAttribute("width", String.valueOf( nodeView.getWidth() ) );
-				geometry.setAttribute("x", String.valueOf( nodeView.getXPosition() - 0.5 * nodeView.getWidth() ) );
-				geometry.setAttribute("y", String.valueOf( nodeView.getYPosition() - 0.5 * nodeView.getHeight() ) );
-				shapeNode.appendChild( geometry );
-
-				final Element fill = doc.createElement("y:Fill");
-				fill.setAttribute("color", ColorHexString((Color)nodeView.getUnselectedPaint()) );
-				fill.setAttribute("transparent", String.valueOf( nodeView.getUnselectedPaint().getTransparency() != Paint.OPAQUE ) );
-				shapeNode.appendChild( fill );
-
-				final Element borderStyle = doc.createElement("y:BorderStyle");
-				borderStyle.setAttribute("color", ColorHexString((Color)nodeView.getBorderPaint()) );
-				borderStyle.setAttribute("type", "line" ); // @TODO use getBorder()
-				borderStyle.setAttribute("width", String.valueOf( nodeView.getBorderWidth() ) );
-				shapeNode.appendChild( borderStyle );
-
-				final Element nodeLabel = doc.createElement("y:NodeLabel");
-				nodeLabel.setTextContent( nodeView.getLabel().getText() );
-				//nodeLabel.setAttribute("alignment", "center" ); // @TODO
-				//nodeLabel.setAttribute("autoSizePolicy", "content" ); // @TODO
-				//nodeLabel.setAttribute("borderDistance", "0.0" ); // @TODO
-				nodeLabel.setAttribute("fontFamily", nodeView.getLabel().getFont().getFamily() );
-				nodeLabel.setAttribute("fontSize", String.valueOf( nodeView.getLabel().getFont().getSize() ) );
-				//nodeLabel.setAttribute("fontStyle", "plain" ); // @TODO
-				//nodeLabel.setAttribute("hasBackgroundColor", "false" ); // @TODO
-				//nodeLabel.setAttribute("hasLineColor", "false" ); // @TODO
-				nodeLabel.setAttribute("hasText", String.valueOf( nodeView.getLabel().getText() != null ) );
-				//nodeLabel.setAttribute("height", "4.0" ); // @TODO
-				//nodeLabel.setAttribute("modelName", "internal" ); // @TODO
-				//nodeLabel.setAttribute("modelPosition", "c" ); // @TODO
-				nodeLabel.setAttribute("textColor", ColorHexString((Color)nodeView.getLabel().getTextPaint()) );
-				//nodeLabel.setAttribute("visible", String.valueOf( nodeView.getLabel().getText() != null ) ); // @TODO
-				//nodeLabel.setAttribute("width", String.valueOf( nodeView.getLabelWidth() ) );
-				//nodeLabel.setAttribute("x", String.valueOf( nodeView.getLabel().getPosition().getOffsetX() ) );
-				//nodeLabel.setAttribute("y", String.valueOf( nodeView.getLabel().getPosition().getOffsetY() ) );
-				shapeNode.appendChild( nodeLabel );
-
-				final Element shape = doc.createElement("y:Shape");
-				shape.setAttribute("type", shapeCodeMap.get( nodeView.getShape() ) );
-				shapeNode.appendChild( shape );
-
-				appendDataAttr(NODE, nodeElm, GRAPHICS_ATTRID, shapeNode);
+		writeElements( nodes, new ElementWriter<CyNode>() {
+			public void write( final GraphMLOutput out, final CyNode node ) throws IOException {
+				writeNode( out, node );
 			}
-			parent.appendChild(nodeElm);
-		}
+		} );
+		nodesWritten += nodes.size();
 	}
-	
-	private void writeEdges(Element parent) {
-		final List<CyEdge> edges = network.edgesList();
-		
-		for(final CyEdge edge: edges) {
-			final Element edgeElm = doc.createElement(EDGE);
-			edgeElm.setAttribute(SOURCE, edge.getSource().getIdentifier());
-			edgeElm.setAttribute(TARGET, edge.getTarget().getIdentifier());
-			appendData(EDGE, Cytoscape.getEdgeAttributes(), edgeElm, edge.getIdentifier());
-			if ( networkView != null ) {
-				final EdgeView edgeView = networkView.getEdgeView(edge);
-				final Element curveNode = doc.createElement( edgeView.getLineType() == EdgeView.CURVED_LINES
-						                                     ? "y:SplineEdge" : "y:PolyLine" );
-
-				final Element path = doc.createElement("y:Path");
-				path.setAttribute("sx", "0.0" );
-				path.setAttribute("sy", "0.0" );
-				path.setAttribute("tx", "0.0" );
-				path.setAttribute("ty", "0.0" );
-				curveNode.appendChild( path );
-
-				final Element lineStyle = doc.createElement("y:LineStyle");
-				lineStyle.setAttribute("color", ColorHexString((Color)edgeView.getUnselectedPaint()) );
-				lineStyle.setAttribute("type", "line" ); // @TODO use getStroke()
-				lineStyle.setAttribute("width", String.valueOf( edgeView.getStrokeWidth() ) );
-				curveNode.appendChild( lineStyle );
-
-				final Element arrows = doc.createElement("y:Arrows");
-				arrows.setAttribute("source", arrowCodeMap.containsKey( edgeView.getSourceEdgeEnd() )
-						                      ? arrowCodeMap.get( edgeView.getSourceEdgeEnd()) : "none" );
-				arrows.setAttribute("target", arrowCodeMap.containsKey( edgeView.getTargetEdgeEnd() )
-						                      ? arrowCodeMap.get( edgeView.getSourceEdgeEnd()) : "none" );
-				curveNode.appendChild( arrows );
-
-				appendDataAttr(EDGE, edgeElm, GRAPHICS_ATTRID, curveNode);
+
+	/**
+	 * Writes the elements in order, through the worker threads if the
+	 * export is parallel.
+	 */
+	private <T> void writeElements( final List<T> elements, final ElementWriter<T> writer ) throws IOException {
+		if ( pool == null || elements.size() <= rangeSize ) {
+			for ( final T element : elements ) {
+				writer.write( out, element );
+			}
+			return;
+		}
+
+		final StreamGraphMLOutput streamOut = (StreamGraphMLOutput) out;
+		try {
+			final Deque<Future<ByteArrayOutputStream>> pending = new ArrayDeque<Future<ByteArrayOutputStream>>();
+			int next = 0;
+			while ( next < elements.size() || !pending.isEmpty() ) {
+				// keep the pool busy while the oldest range is copied
+				while ( next < elements.size() && pending.size() < 2 * parallelism ) {
+					final List<T> range = elements.subList( next, Math.min( next + rangeSize, elements.size() ) );
+					pending.add( pool.submit( new Callable<ByteArrayOutputStream>() {
+						public ByteArrayOutputStream call() throws IOException {
+							final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 256 * range.size() );
+							final StreamGraphMLOutput fragment = streamOut.fragment( bytes );
+							for ( final T element : range ) {
+								writer.write( fragment, element );
+							}
+							fragment.flushFragment();
+							return bytes;
+						}
+					} ) );
+					next += range.size();
+				}
+				streamOut.writeFragment( pending.remove().get() );
 			}
-			parent.appendChild(edgeElm);
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "GraphML export interrupted" );
+		} catch ( ExecutionException e ) {
+			final Throwable cause = e.getCause();
+			if ( cause instanceof IOException ) throw (IOException) cause;
+			if ( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+			throw new IOException( "Cannot write the GraphML elements", cause );
 		}
 	}
+
+	private void writeNode( final GraphMLOutput out, final CyNode node ) throws IOException {
+		out.startElement(NODE);
+		out.attribute(ID, node.getIdentifier());
+		nodePlan.appendData(out, node.getIdentifier());
+
+		if ( networkView != null ) {
+			final NodeView nodeView = networkView.getNodeView(node);
+			startDataAttr(out, nodeGraphicsKey);
+			out.startElement("y:ShapeNode");
+
+			out.startElement("y:Geometry");
+			out.attribute("height", String.valueOf( nodeView.getHeight() ) );
+			out.attribute("width", String.valueOf( nodeView.getWidth() ) );
+			out.attribute("x", String.valueOf( nodeView.getXPosition() - 0.5 * nodeView.getWidth() ) );
+			out.attribute("y", String.valueOf( nodeView.getYPosition() - 0.5 * nodeView.getHeight() ) );
+			out.endElement();
+
+			out.startElement("y:Fill");
+			out.attribute("color", ColorHexString((Color)nodeView.getUnselectedPaint()) );
+			out.attribute("transparent", String.valueOf( nodeView.getUnselectedPaint().getTransparency() != Paint.OPAQUE ) );
+			out.endElement();
+
+			out.startElement("y:BorderStyle");
+			out.attribute("color", ColorHexString((Color)nodeView.getBorderPaint()) );
+			out.attribute("type", "line" ); // @TODO use getBorder()
+			out.attribute("width", String.valueOf( nodeView.getBorderWidth() ) );
+			out.endElement();
+
+			out.startElement("y:NodeLabel");
+			out.text( nodeView.getLabel().getText() );
+			//out.attribute("alignment", "center" ); // @TODO
+			//out.attribute("autoSizePolicy", "content" ); // @TODO
+			//out.attribute("borderDistance", "0.0" ); // @TODO
+			out.attribute("fontFamily", nodeView.getLabel().getFont().getFamily() );
+			out.attribute("fontSize", String.valueOf( nodeView.getLabel().getFont().getSize() ) );
+			//out.attribute("fontStyle", "plain" ); // @TODO
+			//out.attribute("hasBackgroundColor", "false" ); // @TODO
+			//out.attribute("hasLineColor", "false" ); // @TODO
+			out.attribute("hasText", String.valueOf( nodeView.getLabel().getText() != null ) );
+			//out.attribute("height", "4.0" ); // @TODO
+			//out.attribute("modelName", "internal" ); // @TODO
+			//out.attribute("modelPosition", "c" ); // @TODO
+			out.attribute("textColor", ColorHexString((Color)nodeView.getLabel().getTextPaint()) );
+			//out.attribute("visible", String.valueOf( nodeView.getLabel().getText() != null ) ); // @TODO
+			//out.attribute("width", String.valueOf( nodeView.getLabelWidth() ) );
+			//out.attribute("x", String.valueOf( nodeView.getLabel().getPosition().getOffsetX() ) );
+			//out.attribute("y", String.valueOf( nodeView.getLabel().getPosition().getOffsetY() ) );
+			out.endElement();
+
+			out.startElement("y:Shape");
+			out.attribute("type", shapeCodeMap.get( nodeView.getShape() ) );
+			out.endElement();
+
+			out.endElement(); // y:ShapeNode
+			out.endElement(); // data
+		}
+		out.endElement();
+	}
 	
-	private void appendDataAttr( String objectType, Element parent, String attrName, Object val ) {
-		if (val != null) {
-			final Element dataElm = doc.createElement(DATA);
-			dataElm.setAttribute("key", attrIdMap.get( EncodeCytoscapeAttr( objectType, attrName ) ) );
-			if ( val instanceof Element ) {
-				dataElm.appendChild( (Element)val );
-			} else {
-				dataElm.setTextContent(val.toString());
+	private void writeEdges() throws IOException {
+		final List<CyEdge> edges = network.edgesList();
+		writeElements( edges, new ElementWriter<CyEdge>() {
+			public void write( final GraphMLOutput out, final CyEdge edge ) throws IOException {
+				writeEdge( out, edge );
 			}
-			parent.appendChild( dataElm );
-		}
+		} );
+		edgesWritten += edges.size();
 	}
-	private void appendData(String objectType, CyAttributes attrs, Element parent, String id) {
-		final String[] attrNames = attrs.getAttributeNames();
-		
-		for(String name: attrNames) {
-			appendDataAttr(objectType, parent, name, attrs.getAttribute(id, name));
+
+	private void writeEdge( final GraphMLOutput out, final CyEdge edge ) throws IOException {
+		out.startElement(EDGE);
+		out.attribute(SOURCE, edge.getSource().getIdentifier());
+		out.attribute(TARGET, edge.getTarget().getIdentifier());
+		edgePlan.appendData(out, edge.getIdentifier());
+		if ( networkView != null ) {
+			final EdgeView edgeView = networkView.getEdgeView(edge);
+			startDataAttr(out, edgeGraphicsKey);
+			out.startElement( edgeView.getLineType() == EdgeView.CURVED_LINES
+					          ? "y:SplineEdge" : "y:PolyLine" );
+
+			out.startElement("y:Path");
+			out.attribute("sx", "0.0" );
+			out.attribute("sy", "0.0" );
+			out.attribute("tx", "0.0" );
+			out.attribute("ty", "0.0" );
+			out.endElement();
+
+			out.startElement("y:LineStyle");
+			out.attribute("color", ColorHexString((Color)edgeView.getUnselectedPaint()) );
+			out.attribute("type", "line" ); // @TODO use getStroke()
+			out.attribute("width", String.valueOf( edgeView.getStrokeWidth() ) );
+			out.endElement();
+
+			out.startElement("y:Arrows");
+			out.attribute("source", arrowCodeMap.containsKey( edgeView.getSourceEdgeEnd() )
+					                ? arrowCodeMap.get( edgeView.getSourceEdgeEnd()) : "none" );
+			out.attribute("target", arrowCodeMap.containsKey( edgeView.getTargetEdgeEnd() )
+					                ? arrowCodeMap.get( edgeView.getSourceEdgeEnd()) : "none" );
+			out.endElement();
+
+			out.endElement(); // curve
+			out.endElement(); // data
 		}
+		out.endElement();
+	}
+	
+	private void startDataAttr( GraphMLOutput out, String keyId ) throws IOException {
+		out.startElement(DATA);
+		out.attribute("key", keyId );
 	}
 
 }
@@ -0,0 +1,248 @@
+package org.cytoscape.data.writer.graphml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the GraphML elements to the stream as they come, so the memory use
+ * does not depend on the document size. The layout reproduces the one of
+ * the indenting Transformer used by {@link DomGraphMLOutput}: same XML
+ * declaration, 4-space indentation, attributes sorted by name, and elements
+ * without content written as empty-element tags. The characters are escaped
+ * as the Transformer does, in particular the line breaks and tabs of the
+ * attribute values and the carriage returns of the text are written as
+ * character references, which a reader would otherwise normalize.
+ * <p>
+ * Parts of the document may be written by other outputs into fragments,
+ * which are then copied into the document by {@link #writeFragment}.
+ */
+class StreamGraphMLOutput implements GraphMLOutput {
+
+	private static final String ENCODING = "UTF-8";
+	private static final String XML_DECLARATION =
+		"<?xml version=\"1.0\" encoding=\"" + ENCODING + "\" standalone=\"no\"?>\n";
+	private static final int INDENT = 4;
+
+	private final OutputStream outputStream;
+	private final Writer writer;
+
+	// new line followed by the indentation of the deepest element so far
+	private char[] indentation;
+
+	private int depth;
+	// whether the innermost open element has child elements or comments
+	private boolean hasChildren;
+	private final List<Boolean> hasChildrenStack;
+	// names of the elements whose start tags are written
+	private final List<String> openElements;
+
+	// start tag that is not written yet, as it may turn out to be empty
+	private String pendingName;
+	private final List<String> pendingAttrNames;
+	private final List<String> pendingAttrValues;
+	private String pendingText;
+
+	StreamGraphMLOutput(final OutputStream outputStream) throws IOException {
+		this(outputStream, 0);
+		outputStream.write(XML_DECLARATION.getBytes(ENCODING));
+	}
+
+	/**
+	 * Creates the output of a fragment, the elements of which are children
+	 * of an element at the given depth. No XML declaration is written.
+	 */
+	StreamGraphMLOutput(final OutputStream outputStream, final int depth) throws IOException {
+		this.outputStream = outputStream;
+		writer = new OutputStreamWriter(outputStream, ENCODING);
+		indentation = new char[0];
+		this.depth = depth;
+		hasChildren = false;
+		hasChildrenStack = new ArrayList<Boolean>();
+		openElements = new ArrayList<String>();
+		pendingName = null;
+		pendingAttrNames = new ArrayList<String>();
+		pendingAttrValues = new ArrayList<String>();
+		pendingText = null;
+	}
+
+	public void startElement(final String name) throws IOException {
+		writePending(false);
+		if (depth > 0) {
+			hasChildren = true;
+			newLine(depth);
+		}
+		hasChildrenStack.add(hasChildren);
+		hasChildren = false;
+		pendingName = name;
+		depth++;
+	}
+
+	public void attribute(final String name, final String value) {
+		// keep attributes sorted by name, like the DOM does
+		int pos = pendingAttrNames.size();
+		while (pos > 0 && pendingAttrNames.get(pos - 1).compareTo(name) > 0) {
+			pos--;
+		}
+		pendingAttrNames.add(pos, name);
+		pendingAttrValues.add(pos, value);
+	}
+
+	public void text(final String text) {
+		pendingText = text != null && text.length() > 0 ? text : null;
+	}
+
+	public void comment(final String text) throws IOException {
+		writePending(false);
+		hasChildren = true;
+		newLine(depth);
+		writer.write("<!--");
+		writer.write(text);
+		writer.write("-->");
+	}
+
+	public void endElement() throws IOException {
+		depth--;
+		if (pendingName != null) {
+			writePending(true);
+		} else {
+			if (hasChildren) {
+				newLine(depth);
+			}
+			writeEndTag(openElements.remove(openElements.size() - 1));
+		}
+		hasChildren = hasChildrenStack.remove(hasChildrenStack.size() - 1);
+	}
+
+	public void finish() throws IOException {
+		if (depth != 0) throw new IllegalStateException("unclosed elements");
+		writer.write('\n');
+		// the stream is closed by its owner
+		writer.flush();
+	}
+
+	/**
+	 * @return output of a fragment with the children of the innermost open
+	 *         element
+	 */
+	StreamGraphMLOutput fragment(final OutputStream fragmentStream) throws IOException {
+		return new StreamGraphMLOutput(fragmentStream, depth);
+	}
+
+	/**
+	 * Writes out the elements of a fragment, which must all be closed.
+	 */
+	void flushFragment() throws IOException {
+		writePending(false);
+		writer.flush();
+	}
+
+	/**
+	 * Writes the bytes of a fragment as children of the innermost open
+	 * element.
+	 */
+	void writeFragment(final ByteArrayOutputStream fragment) throws IOException {
+		if (fragment.size() == 0) return;
+		writePending(false);
+		hasChildren = true;
+		writer.flush();
+		fragment.writeTo(outputStream);
+	}
+
+	/**
+	 * Writes the pending start tag.
+	 *
+	 * @param close
+	 *            true if the element ends here
+	 */
+	private void writePending(final boolean close) throws IOException {
+		if (pendingName == null) return;
+
+		writer.write('<');
+		writer.write(pendingName);
+		for (int i = 0; i < pendingAttrNames.size(); i++) {
+			writer.write(' ');
+			writer.write(pendingAttrNames.get(i));
+			writer.write("=\"");
+			escape(pendingAttrValues.get(i), true);
+			writer.write('"');
+		}
+		if (close && pendingText == null) {
+			writer.write("/>");
+		} else {
+			writer.write('>');
+			if (pendingText != null) {
+				escape(pendingText, false);
+			}
+			if (close) {
+				writeEndTag(pendingName);
+			} else {
+				openElements.add(pendingName);
+			}
+		}
+		pendingName = null;
+		pendingAttrNames.clear();
+		pendingAttrValues.clear();
+		pendingText = null;
+	}
+
+	private void writeEndTag(final String name) throws IOException {
+		writer.write("</");
+		writer.write(name);
+		writer.write('>');
+	}
+
+	/**
+	 * Writes a text or an attribute value, with the character references
+	 * the Transformer writes.
+	 */
+	private void escape(final String value, final boolean attribute) throws IOException {
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			final String reference;
+			if (c == '&') {
+				reference = "&amp;";
+			} else if (c == '<') {
+				reference = "&lt;";
+			} else if (c == '>') {
+				reference = "&gt;";
+			} else if (c == '\r') {
+				reference = "&#13;";
+			} else if (attribute && c == '"') {
+				reference = "&quot;";
+			} else if (attribute && (c == '\n' || c == '\t')) {
+				reference = "&#" + (int) c + ";";
+			} else if (!attribute && c >= 0x7f && c <= 0x9f) {
+				reference = "&#" + (int) c + ";";
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				reference = "&#" + value.codePointAt(i) + ";";
+			} else {
+				continue;
+			}
+			writer.write(value, start, i - start);
+			writer.write(reference);
+			if (Character.isHighSurrogate(c)) {
+				i++;
+			}
+			start = i + 1;
+		}
+		writer.write(value, start, value.length() - start);
+	}
+
+	private void newLine(final int indent) throws IOException {
+		final int length = 1 + INDENT * indent;
+		if (indentation.length < length) {
+			indentation = new char[2 * length];
+			Arrays.fill(indentation, ' ');
+			indentation[0] = '\n';
+		}
+		writer.write(indentation, 0, length);
+	}
+}
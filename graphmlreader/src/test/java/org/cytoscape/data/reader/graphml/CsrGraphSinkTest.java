@@ -0,0 +1,112 @@
+package org.cytoscape.data.reader.graphml;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CsrGraphSinkTest {
+
+	private static CsrGraph read(String fileName, CsrGraphSink sink) throws Exception {
+		GraphMLReader reader = new GraphMLReader(fileName);
+		reader.setGraphSink(sink);
+		reader.read();
+		return sink.getGraph();
+	}
+
+	private static Set<String> adjacency(CsrGraph graph) {
+		Set<String> pairs = new HashSet<String>();
+		for (int node = 0; node < graph.getNodeCount(); node++) {
+			for (int p = graph.getOffset(node); p < graph.getOffset(node + 1); p++) {
+				pairs.add(graph.getNodeId(node) + "-" + graph.getNodeId(graph.getTarget(p))
+						+ "#" + graph.getEdge(p));
+			}
+		}
+		return pairs;
+	}
+
+	@Test
+	public void testDirectedGraph() throws Exception {
+		CsrGraph graph = read("src/test/resources/testGraph1.xml", new CsrGraphSink());
+		assertTrue(graph.isDirected());
+		assertEquals(11, graph.getNodeCount());
+		assertEquals(12, graph.getEdgeCount());
+		assertEquals(12, graph.getPositionCount());
+		assertEquals(12, graph.getOffsetArray().length);
+		// n8 -> n7, n9, n10 in document order
+		assertEquals(3, graph.getDegree(8));
+		int p = graph.getOffset(8);
+		assertEquals(7, graph.getTarget(p));
+		assertEquals(9, graph.getTarget(p + 1));
+		assertEquals(10, graph.getTarget(p + 2));
+		assertEquals(9, graph.getEdge(p));
+		assertTrue(adjacency(graph).contains("n0-n2#0"));
+	}
+
+	@Test
+	public void testUndirectedGraphWithColumns() throws Exception {
+		CsrGraph graph = read("src/test/resources/simpleWithAttributes.xml", new CsrGraphSink());
+		assertFalse(graph.isDirected());
+		assertEquals(6, graph.getNodeCount());
+		assertEquals(7, graph.getEdgeCount());
+		assertEquals(14, graph.getPositionCount());
+		assertTrue(adjacency(graph).contains("n2-n0#0"));
+
+		CsrGraph.StringColumn color = (CsrGraph.StringColumn) graph.getNodeColumn("color");
+		assertEquals("turquoise", color.get(5));
+		assertFalse(color.isSet(1));
+		CsrGraph.DoubleColumn weight = (CsrGraph.DoubleColumn) graph.getEdgeColumn("weight");
+		assertEquals(GraphMLDataType.DOUBLE, weight.getDataType());
+		assertEquals(1.0, weight.get(0), 0.0);
+	}
+
+	@Test
+	public void testReusedSink() throws Exception {
+		CsrGraphSink sink = new CsrGraphSink();
+		CsrGraph first = read("src/test/resources/simpleWithAttributes.xml", sink);
+		CsrGraph second = read("src/test/resources/testGraph1.xml", sink);
+		// the second graph has nothing of the first one
+		assertTrue(second.isDirected());
+		assertEquals(11, second.getNodeCount());
+		assertEquals(12, second.getEdgeCount());
+		assertEquals(12, second.getPositionCount());
+		assertNull(second.getNodeColumn("color"));
+		assertEquals(adjacency(read("src/test/resources/testGraph1.xml", new CsrGraphSink())), adjacency(second));
+		assertEquals(6, first.getNodeCount());
+		assertEquals("turquoise", ((CsrGraph.StringColumn) first.getNodeColumn("color")).get(5));
+	}
+
+	@Test
+	public void testReorderingKeepsTheGraph() throws Exception {
+		final String fileName = "src/test/resources/simpleWithAttributes.xml";
+		CsrGraph document = read(fileName, new CsrGraphSink());
+		for (CsrGraphSink.Ordering ordering : CsrGraphSink.Ordering.values()) {
+			CsrGraphSink sink = new CsrGraphSink();
+			sink.setOrdering(ordering);
+			CsrGraph graph = read(fileName, sink);
+			assertEquals(adjacency(document), adjacency(graph));
+			CsrGraph.StringColumn color = (CsrGraph.StringColumn) graph.getNodeColumn("color");
+			for (int node = 0; node < graph.getNodeCount(); node++) {
+				assertEquals(((CsrGraph.StringColumn) document.getNodeColumn("color")).get(
+						Integer.parseInt(graph.getNodeId(node).substring(1))), color.get(node));
+			}
+		}
+	}
+
+	@Test
+	public void testMappedGraph() throws Exception {
+		final String fileName = "src/test/resources/atted.graphml";
+		CsrGraph heap = read(fileName, new CsrGraphSink());
+		CsrGraphSink sink = new CsrGraphSink();
+		sink.setMappingDirectory(new File(System.getProperty("java.io.tmpdir")));
+		sink.setOrdering(CsrGraphSink.Ordering.RCM);
+		CsrGraph mapped = read(fileName, sink);
+		assertFalse(mapped.hasArrays());
+		assertEquals(heap.getNodeCount(), mapped.getNodeCount());
+		assertEquals(heap.getPositionCount(), mapped.getPositionCount());
+		assertEquals(adjacency(heap), adjacency(mapped));
+	}
+}
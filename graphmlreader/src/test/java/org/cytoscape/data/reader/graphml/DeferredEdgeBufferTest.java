@@ -0,0 +1,63 @@
+package org.cytoscape.data.reader.graphml;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DeferredEdgeBufferTest {
+
+	@Test
+	public void testResolveInOrderAcrossSpills() throws Exception {
+		final DeferredEdgeBuffer buffer = new DeferredEdgeBuffer(3);
+		for (int i = 0; i < 10; i++) {
+			buffer.add("n" + i, "n" + (i + 1) % 4);
+		}
+		assertEquals(10, buffer.size());
+
+		final List<String> edges = new ArrayList<String>();
+		buffer.resolve(new DeferredEdgeBuffer.Visitor() {
+			public void edge(String source, String target) {
+				edges.add(source + "-" + target);
+			}
+
+			public void data(String key, char[] text, int start, int length) {
+				fail("no data was added");
+			}
+		});
+		assertEquals(10, edges.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals("n" + i + "-n" + (i + 1) % 4, edges.get(i));
+		}
+		assertEquals(0, buffer.size());
+	}
+
+	@Test
+	public void testDataAcrossSpills() throws Exception {
+		final DeferredEdgeBuffer buffer = new DeferredEdgeBuffer(2);
+		for (int i = 0; i < 5; i++) {
+			buffer.add("s" + i, "t" + i);
+			for (int j = 0; j < i % 3; j++) {
+				// chars of one and two bytes, spilled as UTF-16
+				final char[] text = (" v\u00e4lue\u4e2d" + i + "." + j + " ").toCharArray();
+				buffer.addData("k" + j, text, 1, text.length - 2);
+			}
+		}
+
+		final List<String> events = new ArrayList<String>();
+		buffer.resolve(new DeferredEdgeBuffer.Visitor() {
+			public void edge(String source, String target) {
+				events.add(source + "-" + target);
+			}
+
+			public void data(String key, char[] text, int start, int length) {
+				events.add(key + "=" + new String(text, start, length));
+			}
+		});
+		assertEquals(Arrays.asList("s0-t0", "s1-t1", "k0=v\u00e4lue\u4e2d1.0", "s2-t2", "k0=v\u00e4lue\u4e2d2.0",
+				"k1=v\u00e4lue\u4e2d2.1", "s3-t3", "s4-t4", "k0=v\u00e4lue\u4e2d4.0"), events);
+	}
+}
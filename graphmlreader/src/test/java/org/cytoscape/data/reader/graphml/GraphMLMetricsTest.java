@@ -0,0 +1,59 @@
+package org.cytoscape.data.reader.graphml;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class GraphMLMetricsTest {
+
+	@Test
+	public void testImportMetrics() throws Exception {
+		File file = File.createTempFile("metrics", ".graphml");
+		file.deleteOnExit();
+		OutputStream os = new FileOutputStream(file);
+		os.write(("<graphml><key id=\"d0\" for=\"node\" attr.name=\"metricsWeight\" attr.type=\"double\"/>"
+				+ "<key id=\"g\" for=\"node\" yfiles.type=\"nodegraphics\"/>"
+				+ "<graph id=\"G\"><node id=\"metricsA\"><data key=\"d0\">1.0</data><data key=\"g\"/>"
+				+ "<data key=\"undeclared\">x</data></node>"
+				+ "<node id=\"metricsB\"><data key=\"undeclared\">y</data></node>"
+				+ "<edge source=\"metricsA\" target=\"metricsB\"/></graph></graphml>").getBytes("UTF-8"));
+		os.close();
+
+		GraphMLMetrics metrics = GraphMLMetrics.getInstance();
+		metrics.reset();
+		new GraphMLReader(file.getPath()).read();
+
+		assertEquals(1, metrics.getImportCount());
+		assertEquals(file.length(), metrics.getBytesRead());
+		assertEquals(2, metrics.getNodesRead());
+		assertEquals(1, metrics.getEdgesRead());
+		assertEquals(1, metrics.getDataElementsRead());
+		// the graphics key is declared, so it is not unknown
+		assertEquals(2, metrics.getUnknownDataElements());
+		assertEquals(Arrays.asList("undeclared: 2"), Arrays.asList(metrics.getUnknownDataKeys()));
+		assertTrue(metrics.getLastImport().startsWith("GraphML import: 2 nodes, 1 edges, 1 <data> elements"));
+
+		// a second read of the same reader only counts its own elements
+		GraphMLReader reader = new GraphMLReader(file.getPath());
+		reader.read();
+		reader.read();
+		assertEquals(3, metrics.getImportCount());
+		assertEquals(6, metrics.getNodesRead());
+		assertEquals(3, metrics.getDataElementsRead());
+		assertEquals(6, metrics.getUnknownDataElements());
+		assertEquals(Arrays.asList("undeclared: 6"), Arrays.asList(metrics.getUnknownDataKeys()));
+		assertTrue(metrics.getLastImport().startsWith("GraphML import: 2 nodes, 1 edges, 1 <data> elements"));
+		assertTrue(metrics.getLastImport().contains("undeclared keys {undeclared=2}"));
+
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+				new ObjectName(GraphMLMetrics.OBJECT_NAME)));
+	}
+}
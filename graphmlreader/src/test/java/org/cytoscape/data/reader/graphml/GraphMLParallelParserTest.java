@@ -0,0 +1,123 @@
+package org.cytoscape.data.reader.graphml;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cytoscape.Cytoscape;
+import cytoscape.data.CyAttributes;
+import cytoscape.data.Semantics;
+
+public class GraphMLParallelParserTest {
+
+	private static int[][] readSequential(String fileName) throws Exception {
+		GraphMLReader reader = new GraphMLReader(fileName);
+		reader.read();
+		return new int[][] { reader.getNodeIndicesArray(), reader.getEdgeIndicesArray() };
+	}
+
+	private static int[][] readParallel(String fileName, long chunkSize) throws Exception {
+		ImportStatistics statistics = new ImportStatistics();
+		CytoscapeGraphSink sink = new CytoscapeGraphSink(statistics);
+		GraphMLParallelParser parallel = new GraphMLParallelParser(
+				new GraphMLParser(sink, statistics), 4, chunkSize);
+		assertTrue(parallel.parse(new MappedFile(new File(fileName))));
+		return new int[][] { sink.getNodeIndicesArray(), sink.getEdgeIndicesArray() };
+	}
+
+	@Test
+	public void testSameAsSequential() throws Exception {
+		final String fileName = "src/test/resources/atted.graphml";
+		int[][] expected = readSequential(fileName);
+		CyAttributes nodeAttr = Cytoscape.getNodeAttributes();
+		CyAttributes edgeAttr = Cytoscape.getEdgeAttributes();
+		Map<String, Object> nodeValues = takeValues(nodeAttr, nodeIds(expected[0]));
+		Map<String, Object> edgeValues = takeValues(edgeAttr, edgeIds(expected[1]));
+		assertEquals("AtbZIP52", nodeValues.get("symbol At1g06850"));
+		assertEquals(5.20, edgeValues.get("mr_all At5g48880 (pp) At1g65060"));
+
+		// small chunks, so the document is cut many times
+		int[][] actual = readParallel(fileName, 512);
+		assertArrayEquals(expected[0], actual[0]);
+		assertArrayEquals(expected[1], actual[1]);
+		assertEquals(nodeValues, takeValues(nodeAttr, nodeIds(actual[0])));
+		assertEquals(edgeValues, takeValues(edgeAttr, edgeIds(actual[1])));
+	}
+
+	private static List<String> nodeIds(int[] indices) {
+		List<String> ids = new ArrayList<String>();
+		for (int index : indices) {
+			ids.add(Cytoscape.getRootGraph().getNode(index).getIdentifier());
+		}
+		return ids;
+	}
+
+	private static List<String> edgeIds(int[] indices) {
+		List<String> ids = new ArrayList<String>();
+		for (int index : indices) {
+			ids.add(Cytoscape.getRootGraph().getEdge(index).getIdentifier());
+		}
+		return ids;
+	}
+
+	/**
+	 * Deletes the values of the elements, so the next read stores them again.
+	 * The interaction of the edges is set when they are created, not read.
+	 *
+	 * @return the values by attribute name and id
+	 */
+	private static Map<String, Object> takeValues(CyAttributes attrs, List<String> ids) {
+		Map<String, Object> values = new HashMap<String, Object>();
+		for (String name : attrs.getAttributeNames()) {
+			if (name.equals(Semantics.INTERACTION)) continue;
+			for (String id : ids) {
+				Object value = attrs.getAttribute(id, name);
+				if (value != null) {
+					values.put(name + " " + id, value);
+					attrs.deleteAttribute(id, name);
+				}
+			}
+		}
+		return values;
+	}
+
+	@Test
+	public void testPrefixedElements() throws Exception {
+		// yFiles graphics use a prefix declared by the document root
+		int[][] actual = readParallel("src/test/resources/yFilesSample.xml", 64);
+		assertEquals(3, actual[0].length);
+		assertEquals(Boolean.TRUE, Cytoscape.getNodeAttributes().getAttribute("n1", "BooleanValue"));
+	}
+
+	@Test
+	public void testReaderParallelism() throws Exception {
+		GraphMLReader reader = new GraphMLReader("src/test/resources/testGraph1.xml");
+		reader.setParallelism(4);
+		reader.read();
+		assertEquals(11, reader.getNodeIndicesArray().length);
+		assertEquals(12, reader.getEdgeIndicesArray().length);
+	}
+
+	@Test
+	public void testUnsupportedLayout() throws Exception {
+		File file = File.createTempFile("doctype", ".graphml");
+		file.deleteOnExit();
+		OutputStream os = new FileOutputStream(file);
+		os.write(("<?xml version=\"1.0\"?>\n<!DOCTYPE graphml>\n"
+				+ "<graphml><graph id=\"G\"><node id=\"a\"/></graph></graphml>\n").getBytes("UTF-8"));
+		os.close();
+		ImportStatistics statistics = new ImportStatistics();
+		CytoscapeGraphSink sink = new CytoscapeGraphSink(statistics);
+		GraphMLParser parser = new GraphMLParser(sink, statistics);
+		assertFalse(new GraphMLParallelParser(parser, 2).parse(new MappedFile(file)));
+		assertEquals(0, sink.getNodeIndicesArray().length);
+	}
+}
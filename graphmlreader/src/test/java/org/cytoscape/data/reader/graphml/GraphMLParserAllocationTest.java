@@ -0,0 +1,60 @@
+package org.cytoscape.data.reader.graphml;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+public class GraphMLParserAllocationTest {
+
+	private static final int WARMUP = 150000;
+	private static final int MEASURED = 100000;
+
+	private static final char[] DATA = "\n\t\t\ttrue\n\t\t".toCharArray();
+
+	private static long allocatedBytes(ThreadMXBean bean) {
+		return ((com.sun.management.ThreadMXBean) bean)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static void readData(GraphMLParser parser, int count) {
+		for (int i = 0; i < count; i++) {
+			GraphMLToken.fromString("data");
+			parser.startData("d0");
+			parser.appendData(DATA, 0, DATA.length);
+			GraphMLToken.fromString("data");
+			parser.endData();
+		}
+	}
+
+	@Test
+	public void testDataAllocationRate() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)
+			|| !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			return; // cannot measure on this JVM
+		}
+		((com.sun.management.ThreadMXBean) bean).setThreadAllocatedMemoryEnabled(true);
+
+		final ImportStatistics statistics = new ImportStatistics();
+		final CytoscapeGraphSink sink = new CytoscapeGraphSink(statistics);
+		sink.setAttributeBatchSize(1 << 20); // no flushes while measuring
+		final GraphMLParser parser = new GraphMLParser(sink, statistics);
+		parser.addKey("node", "d0", "allocTestFlag", "boolean");
+		parser.startGraph("G", "directed");
+		parser.startNode("allocTestNode");
+
+		readData(parser, WARMUP);
+		final long before = allocatedBytes(bean);
+		readData(parser, MEASURED);
+		final long allocated = allocatedBytes(bean) - before;
+
+		// allow some slack for the measurement itself
+		assertTrue("allocated " + allocated + " bytes for " + MEASURED + " <data> elements",
+				allocated < MEASURED / 10);
+		parser.endElement();
+		parser.finishDocument();
+	}
+}
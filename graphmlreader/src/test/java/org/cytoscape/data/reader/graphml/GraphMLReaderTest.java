@@ -2,15 +2,29 @@ package org.cytoscape.data.reader.graphml;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import cytoscape.CyEdge;
 import cytoscape.CyNetwork;
 import cytoscape.Cytoscape;
 import cytoscape.data.CyAttributes;
+import cytoscape.data.Semantics;
 
 public class GraphMLReaderTest {
 	
@@ -57,6 +71,684 @@ public class GraphMLReaderTest {
 		assertEquals(5.20, edgeAttr.getAttribute("At5g48880 (pp) At1g65060", "mr_all"));
 	}
 	
+	@Test
+	public void testReadSaxEngine() throws Exception {
+		GraphMLReader reader = new GraphMLReader("src/test/resources/atted.graphml");
+		reader.setParserEngine(GraphMLParserEngine.SAX);
+		reader.read();
+		assertEquals(41, reader.getNodeIndicesArray().length);
+		assertEquals(118, reader.getEdgeIndicesArray().length);
+
+		CyAttributes nodeAttr = Cytoscape.getNodeAttributes();
+		assertEquals("AtbZIP52", nodeAttr.getAttribute("At1g06850", "symbol"));
+	}
+
+	@Test
+	public void testReadYFiles() throws Exception {
+		GraphMLReader reader = new GraphMLReader("src/test/resources/yFilesSample.xml");
+		reader.read();
+		assertEquals(3, reader.getNodeIndicesArray().length);
+		assertEquals(Boolean.TRUE, Cytoscape.getNodeAttributes().getAttribute("n1", "BooleanValue"));
+	}
+
+	@Test
+	public void testReadDeferredEdges() throws Exception {
+		GraphMLReader reader = new GraphMLReader("src/test/resources/edgesFirst.graphml");
+		reader.setDeferredEdgeResolution(true);
+		reader.read();
+		assertEquals(3, reader.getNodeIndicesArray().length);
+		assertEquals(4, reader.getEdgeIndicesArray().length);
+		assertEquals(0.5, Cytoscape.getEdgeAttributes().getAttribute("ef0 (pp) ef1", "weight"));
+	}
+
+	@Test
+	public void testReadIntoGraphSink() throws Exception {
+		final List<String> events = new ArrayList<String>();
+		final List<String> nodes = new ArrayList<String>();
+		GraphMLReader reader = new GraphMLReader("src/test/resources/edgesFirst.graphml");
+		reader.setDeferredEdgeResolution(true);
+		reader.setGraphSink(new GraphSink() {
+			private int edges = 0;
+
+			public int startGraph(String id, boolean directed) {
+				events.add("graph " + id + (directed ? " directed" : ""));
+				return -1;
+			}
+
+			public int node(String id) {
+				nodes.add(id);
+				return nodes.size() - 1;
+			}
+
+			public int edge(int source, int target) {
+				events.add("edge " + edges + " " + nodes.get(source) + " " + nodes.get(target));
+				return edges++;
+			}
+
+			public void attribute(GraphMLScope scope, int element, Attribute attribute,
+					char[] data, int start, int length) {
+				events.add(attribute.getName() + " " + element + " " + new String(data, start, length));
+			}
+
+			public void end() {
+				events.add("end");
+			}
+		});
+		reader.read();
+		assertEquals(Arrays.asList("ef0", "ef1", "ef2"), nodes);
+		// the deferred edges come at the end, with their data
+		assertEquals(Arrays.asList("graph EdgesFirst directed", "edge 0 ef2 ef0",
+				"edge 1 ef0 ef1", "weight 1 0.5", "edge 2 ef1 ef2", "edge 3 ef0 ef2", "end"), events);
+		// nothing went to Cytoscape
+		assertEquals(0, reader.getNodeIndicesArray().length);
+		assertEquals(0, reader.getEdgeIndicesArray().length);
+	}
+
+	@Test
+	public void testLongsAndConversionErrors() throws Exception {
+		File file = File.createTempFile("types", ".graphml");
+		file.deleteOnExit();
+		OutputStream os = new FileOutputStream(file);
+		os.write(("<graphml><key id=\"t\" for=\"node\" attr.name=\"typesTime\" attr.type=\"long\"/>"
+				+ "<key id=\"c\" for=\"node\" attr.name=\"typesCount\" attr.type=\"long\"/>"
+				+ "<key id=\"w\" for=\"node\" attr.name=\"typesWeight\" attr.type=\"double\"/>"
+				+ "<graph id=\"G\"><node id=\"typesA\"><data key=\"t\">-5</data><data key=\"c\">3</data>"
+				+ "<data key=\"w\">n/a</data></node>"
+				+ "<node id=\"typesB\"><data key=\"t\">1700000000123</data><data key=\"c\">-7</data>"
+				+ "<data key=\"w\">2.5</data></node>"
+				+ "<node id=\"typesC\"><data key=\"t\">soon</data></node>"
+				// 2^53 + 1, which a double would round
+				+ "<node id=\"typesD\"><data key=\"t\">9007199254740993</data></node></graph></graphml>").getBytes("UTF-8"));
+		os.close();
+
+		for (int batchSize : new int[] { 0, 100 }) {
+			CyAttributes nodeAttr = Cytoscape.getNodeAttributes();
+			nodeAttr.deleteAttribute("typesTime");
+			nodeAttr.deleteAttribute("typesCount");
+			GraphMLMetrics metrics = GraphMLMetrics.getInstance();
+			metrics.reset();
+			GraphMLReader reader = new GraphMLReader(file.getPath());
+			reader.setAttributeBatchSize(batchSize);
+			reader.read();
+			assertEquals(4, reader.getNodeIndicesArray().length);
+
+			// the longs that fit an int stay INTEGER
+			assertEquals(CyAttributes.TYPE_INTEGER, nodeAttr.getType("typesCount"));
+			assertEquals(3, nodeAttr.getAttribute("typesA", "typesCount"));
+			assertEquals(-7, nodeAttr.getAttribute("typesB", "typesCount"));
+			// the others turn the attribute into a STRING one, with the value stored before
+			assertEquals(CyAttributes.TYPE_STRING, nodeAttr.getType("typesTime"));
+			assertEquals("-5", nodeAttr.getAttribute("typesA", "typesTime"));
+			assertEquals("1700000000123", nodeAttr.getAttribute("typesB", "typesTime"));
+			assertEquals("9007199254740993", nodeAttr.getAttribute("typesD", "typesTime"));
+			assertEquals(2.5, nodeAttr.getAttribute("typesB", "typesWeight"));
+			assertEquals(2, metrics.getConversionErrors());
+			assertEquals(2, metrics.getConversionErrorKeys().length);
+		}
+	}
+
+	@Test
+	public void testKeyDefaults() throws Exception {
+		File file = File.createTempFile("defaults", ".graphml");
+		file.deleteOnExit();
+		OutputStream os = new FileOutputStream(file);
+		os.write(("<graphml><key id=\"c\" for=\"node\" attr.name=\"defaultsColor\" attr.type=\"string\">"
+				+ "<desc>color</desc><default> yellow </default></key>"
+				+ "<key id=\"w\" for=\"all\" attr.name=\"defaultsWeight\" attr.type=\"long\"><default>7</default></key>"
+				+ "<key id=\"b\" for=\"edge\" attr.name=\"defaultsBad\" attr.type=\"int\"><default>many</default></key>"
+				+ "<graph id=\"G\"><node id=\"defaultsA\"><data key=\"c\">green</data></node>"
+				+ "<node id=\"defaultsB\"/><edge source=\"defaultsA\" target=\"defaultsB\"><data key=\"w\">3</data></edge>"
+				+ "</graph></graphml>").getBytes("UTF-8"));
+		os.close();
+
+		for (GraphMLParserEngine engine : GraphMLParserEngine.values()) {
+			GraphMLReader reader = new GraphMLReader(file.getPath());
+			reader.setParserEngine(engine);
+			reader.read();
+			GraphMLAttributeDefaults defaults = reader.getAttributeDefaults();
+			assertEquals("yellow", defaults.getDefault(GraphMLScope.NODE, "defaultsColor"));
+			assertEquals(7, defaults.getDefault(GraphMLScope.EDGE, "defaultsWeight"));
+			assertEquals(7, defaults.getDefault(GraphMLScope.GRAPH, "defaultsWeight"));
+			assertNull(defaults.getDefault(GraphMLScope.EDGE, "defaultsBad"));
+
+			// the default is not stored for each element
+			CyAttributes nodeAttr = Cytoscape.getNodeAttributes();
+			assertNull(nodeAttr.getAttribute("defaultsB", "defaultsColor"));
+			assertEquals("yellow", defaults.getAttribute(GraphMLScope.NODE, "defaultsB", "defaultsColor"));
+			assertEquals("green", defaults.getAttribute(GraphMLScope.NODE, "defaultsA", "defaultsColor"));
+			assertEquals(7, defaults.getAttribute(GraphMLScope.NODE, "defaultsA", "defaultsWeight"));
+		}
+	}
+
+	private static CsrGraph readSelection(String fileName, GraphMLSelection selection,
+			GraphMLParserEngine engine, boolean deferEdges) throws Exception {
+		CsrGraphSink sink = new CsrGraphSink();
+		GraphMLReader reader = new GraphMLReader(fileName);
+		reader.setGraphSink(sink);
+		reader.setSelection(selection);
+		reader.setParserEngine(engine);
+		reader.setDeferredEdgeResolution(deferEdges);
+		reader.read();
+		return sink.getGraph();
+	}
+
+	@Test
+	public void testSelection() throws Exception {
+		File file = File.createTempFile("selection", ".graphml");
+		file.deleteOnExit();
+		OutputStream os = new FileOutputStream(file);
+		os.write(("<graphml><key id=\"k\" for=\"node\" attr.name=\"kind\" attr.type=\"string\"/>"
+				+ "<key id=\"s\" for=\"node\" attr.name=\"size\" attr.type=\"int\"/>"
+				+ "<key id=\"c\" for=\"all\" attr.name=\"comment\" attr.type=\"string\"/>"
+				+ "<key id=\"w\" for=\"edge\" attr.name=\"weight\" attr.type=\"double\"/>"
+				+ "<graph id=\"G\" edgedefault=\"directed\">"
+				+ "<edge source=\"gene1\" target=\"gene2\"><data key=\"w\">2</data></edge>"
+				+ "<node id=\"gene1\"><data key=\"k\">TF</data><data key=\"s\">10</data><data key=\"c\">x</data></node>"
+				+ "<node id=\"gene2\"><data key=\"k\">TF</data><data key=\"s\">20</data></node>"
+				+ "<node id=\"gene3\"><data key=\"k\">enzyme</data><data key=\"s\">30</data></node>"
+				+ "<node id=\"drug1\"><data key=\"k\">TF</data></node>"
+				+ "<node id=\"gene4\"><data key=\"s\">40</data></node>"
+				+ "<edge source=\"gene1\" target=\"gene3\"><data key=\"w\">3</data></edge>"
+				+ "<edge source=\"gene2\" target=\"gene1\"><data key=\"w\">0.5</data><data key=\"c\">y</data></edge>"
+				+ "<edge source=\"drug1\" target=\"gene1\"><data key=\"w\">9</data></edge>"
+				+ "</graph></graphml>").getBytes("UTF-8"));
+		os.close();
+
+		for (GraphMLParserEngine engine : GraphMLParserEngine.values()) {
+			// the TF genes, with their size, and the heavy edges between them
+			GraphMLSelection selection = new GraphMLSelection().attributes("size", "w")
+					.nodeIds("gene.*").nodeAttribute("kind", "TF").edgeAttribute("weight", "[1-9].*");
+			CsrGraph graph = readSelection(file.getPath(), selection, engine, true);
+			assertEquals(2, graph.getNodeCount());
+			assertEquals("gene1", graph.getNodeId(0));
+			assertEquals("gene2", graph.getNodeId(1));
+			assertEquals(1, graph.getEdgeCount());
+			assertEquals(1, graph.getDegree(0));
+			assertEquals(1, graph.getTarget(graph.getOffset(0)));
+			assertEquals(new HashSet<String>(Arrays.asList("size")), graph.getNodeColumns().keySet());
+			assertEquals(new HashSet<String>(Arrays.asList("weight")), graph.getEdgeColumns().keySet());
+			CsrGraph.IntColumn size = (CsrGraph.IntColumn) graph.getNodeColumn("size");
+			assertEquals(20, size.get(1));
+			CsrGraph.DoubleColumn weight = (CsrGraph.DoubleColumn) graph.getEdgeColumn("weight");
+			assertEquals(2.0, weight.get(0), 0.0);
+
+			// only a projection
+			graph = readSelection(file.getPath(), new GraphMLSelection().attributes("comment"), engine, true);
+			assertEquals(5, graph.getNodeCount());
+			assertEquals(4, graph.getEdgeCount());
+			assertEquals(new HashSet<String>(Arrays.asList("comment")), graph.getNodeColumns().keySet());
+			assertEquals(new HashSet<String>(Arrays.asList("comment")), graph.getEdgeColumns().keySet());
+		}
+	}
+
+	@Test
+	public void testLazyAttributes() throws Exception {
+		File file = File.createTempFile("lazy", ".graphml");
+		file.deleteOnExit();
+		OutputStream os = new FileOutputStream(file);
+		os.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<graphml xmlns:y=\"http://www.yworks.com/xml/graphml\">"
+				+ "<key id=\"n\" for=\"node\" attr.name=\"lazyName\" attr.type=\"string\"/>"
+				+ "<key id=\"s\" for=\"node\" attr.name=\"lazySize\" attr.type=\"int\"/>"
+				+ "<key id=\"g\" for=\"node\" yfiles.type=\"nodegraphics\"/>"
+				+ "<key id=\"w\" for=\"edge\" attr.name=\"lazyWeight\" attr.type=\"double\"/>"
+				+ "<key id=\"t\" for=\"graph\" attr.name=\"lazyTitle\" attr.type=\"string\"/>"
+				+ "<graph id=\"G\" edgedefault=\"directed\"><data key=\"t\">Lazy</data>"
+				+ "<node id=\"lazyA\"><data key=\"g\"><y:ShapeNode><y:NodeLabel>x</y:NodeLabel></y:ShapeNode></data>"
+				+ "<data key=\"n\"> A &amp; é&#x263A; <![CDATA[<b>]]></data><data key=\"s\">12</data></node>"
+				+ "<node id=\"lazyB\"/>"
+				+ "<node id=\"lazyC\"><!-- <data key=\"n\">no</data> --><data key=\"s\">x</data>"
+				+ "<data key=\"n\"/></node>"
+				+ "<edge source=\"lazyA\" target=\"lazyB\"><data key=\"w\">0.5</data></edge>"
+				+ "<edge source=\"lazyA\" target=\"nowhere\"><data key=\"w\">9</data></edge>"
+				+ "<edge source=\"lazyB\" target=\"lazyC\"><data key=\"w\">2</data></edge>"
+				+ "</graph></graphml>").getBytes("UTF-8"));
+		os.close();
+
+		GraphMLReader reader = new GraphMLReader(file.getPath());
+		reader.setLazyAttributes(true);
+		reader.read();
+		assertEquals(3, reader.getNodeIndicesArray().length);
+		assertEquals(2, reader.getEdgeIndicesArray().length);
+		CyAttributes nodeAttr = Cytoscape.getNodeAttributes();
+		CyAttributes edgeAttr = Cytoscape.getEdgeAttributes();
+		assertEquals("Lazy", Cytoscape.getNetworkAttributes().getAttribute(
+				Cytoscape.getCurrentNetwork().getIdentifier(), "lazyTitle"));
+		assertNull(nodeAttr.getAttribute("lazyA", "lazyName"));
+		assertNull(edgeAttr.getAttribute("lazyA (pp) lazyB", "lazyWeight"));
+
+		GraphMLLazyAttributes lazy = reader.getLazyAttributes();
+		assertNotNull(lazy);
+		assertEquals(new HashSet<String>(Arrays.asList("lazyName", "lazySize")),
+				lazy.getAttributeNames(GraphMLScope.NODE));
+		lazy.load(GraphMLScope.NODE, "lazyName");
+		assertTrue(lazy.isLoaded(GraphMLScope.NODE, "lazyName"));
+		assertFalse(lazy.isLoaded(GraphMLScope.NODE, "lazySize"));
+		assertEquals("A & é☺ <b>", nodeAttr.getAttribute("lazyA", "lazyName"));
+		assertNull(nodeAttr.getAttribute("lazyC", "lazyName"));
+		assertNull(nodeAttr.getAttribute("lazyA", "lazySize"));
+
+		lazy.loadAll();
+		assertEquals(12, nodeAttr.getAttribute("lazyA", "lazySize"));
+		assertNull(nodeAttr.getAttribute("lazyC", "lazySize"));
+		assertEquals(0.5, edgeAttr.getAttribute("lazyA (pp) lazyB", "lazyWeight"));
+		assertEquals(2.0, edgeAttr.getAttribute("lazyB (pp) lazyC", "lazyWeight"));
+
+		// the deferred edges get their values too
+		reader = new GraphMLReader("src/test/resources/edgesFirst.graphml");
+		reader.setLazyAttributes(true);
+		reader.setDeferredEdgeResolution(true);
+		reader.read();
+		assertEquals(4, reader.getEdgeIndicesArray().length);
+		edgeAttr.deleteAttribute("weight");
+		reader.getLazyAttributes().loadAll();
+		assertEquals(0.5, edgeAttr.getAttribute("ef0 (pp) ef1", "weight"));
+
+		// the values of a compressed file are read by the import
+		reader = new GraphMLReader(compress(file.getPath(), ".graphml.gz", 0).getPath());
+		reader.setLazyAttributes(true);
+		reader.read();
+		assertNull(reader.getLazyAttributes());
+	}
+
+	@Test
+	public void testLazyAttributesSameAsEager() throws Exception {
+		GraphMLReader reader = new GraphMLReader("src/test/resources/atted.graphml");
+		reader.setLazyAttributes(true);
+		reader.setParallelism(2); // not applicable, read sequentially
+		reader.read();
+		assertEquals(41, reader.getNodeIndicesArray().length);
+		assertEquals(118, reader.getEdgeIndicesArray().length);
+		GraphMLLazyAttributes lazy = reader.getLazyAttributes();
+		assertNotNull(lazy);
+		CyAttributes nodeAttr = Cytoscape.getNodeAttributes();
+		CyAttributes edgeAttr = Cytoscape.getEdgeAttributes();
+		for (String name : lazy.getAttributeNames(GraphMLScope.NODE)) {
+			nodeAttr.deleteAttribute(name);
+		}
+		for (String name : lazy.getAttributeNames(GraphMLScope.EDGE)) {
+			edgeAttr.deleteAttribute(name);
+		}
+		lazy.load(GraphMLScope.NODE, "symbol");
+		assertEquals("AtbZIP52", nodeAttr.getAttribute("At1g06850", "symbol"));
+		assertNull(nodeAttr.getAttribute("At1g06850", "TF_family"));
+		lazy.loadAll();
+		assertEquals("bZIP", nodeAttr.getAttribute("At1g06850", "TF_family"));
+		assertEquals("correlation", edgeAttr.getAttribute("At5g48880 (pp) At1g65060", "label"));
+		assertEquals(5.20, edgeAttr.getAttribute("At5g48880 (pp) At1g65060", "mr_all"));
+	}
+
+	@Test
+	public void testReadUnbatchedAttributes() throws Exception {
+		GraphMLReader reader = new GraphMLReader("src/test/resources/simpleWithAttributes.xml");
+		reader.setAttributeBatchSize(0);
+		reader.read();
+		assertEquals("turquoise", Cytoscape.getNodeAttributes().getAttribute("n5", "color"));
+		assertEquals(1.1, Cytoscape.getEdgeAttributes().getAttribute("n5 (pp) n4", "weight"));
+	}
+
+	@Test
+	public void testReadWithoutMemoryMapping() throws Exception {
+		GraphMLReader mapped = new GraphMLReader("src/test/resources/atted.graphml");
+		mapped.read();
+		GraphMLReader streamed = new GraphMLReader("src/test/resources/atted.graphml");
+		streamed.setMemoryMapping(false);
+		streamed.read();
+		assertArrayEquals(mapped.getNodeIndicesArray(), streamed.getNodeIndicesArray());
+		assertArrayEquals(mapped.getEdgeIndicesArray(), streamed.getEdgeIndicesArray());
+	}
+
+	private static File compress(String fileName, String suffix, int truncate) throws Exception {
+		File file = File.createTempFile("compressed", suffix);
+		file.deleteOnExit();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream os = new GZIPOutputStream(bytes);
+		InputStream is = new FileInputStream(fileName);
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = is.read(buffer)) > 0) {
+			os.write(buffer, 0, n);
+		}
+		is.close();
+		os.close();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(bytes.toByteArray(), 0, bytes.size() - truncate);
+		out.close();
+		return file;
+	}
+
+	@Test
+	public void testReadCompressed() throws Exception {
+		File file = compress("src/test/resources/atted.graphml", ".graphmlz", 0);
+		for (boolean memoryMapping : new boolean[] { true, false }) {
+			GraphMLReader reader = new GraphMLReader(file.getPath());
+			reader.setMemoryMapping(memoryMapping);
+			reader.setParallelism(2); // not applicable, read sequentially
+			reader.read();
+			assertEquals(41, reader.getNodeIndicesArray().length);
+			assertEquals(118, reader.getEdgeIndicesArray().length);
+			assertEquals("AtbZIP52", Cytoscape.getNodeAttributes().getAttribute("At1g06850", "symbol"));
+		}
+	}
+
+	@Test
+	public void testInflatedBlocksReused() throws Exception {
+		// more blocks than the queue holds, so the inflater reuses the read ones
+		String fileName = "src/test/resources/igraph_sample.graphml";
+		InputStream expected = new FileInputStream(fileName);
+		InputStream actual = new BackgroundGzipInputStream(
+				new FileInputStream(compress(fileName, ".graphml.gz", 0)));
+		byte[] buffer = new byte[1000];
+		long total = 0;
+		int n;
+		while ((n = actual.read(buffer, 0, buffer.length)) > 0) {
+			for (int i = 0; i < n; i++) {
+				assertEquals(expected.read(), buffer[i] & 0xff);
+			}
+			total += n;
+		}
+		assertEquals(-1, expected.read());
+		assertEquals(new File(fileName).length(), total);
+		actual.close();
+		expected.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadTruncatedCompressed() throws Exception {
+		File file = compress("src/test/resources/atted.graphml", ".graphml.gz", 100);
+		new GraphMLReader(file.getPath()).read();
+	}
+
+	@Test(timeout = 10000)
+	public void testInflaterFailure() throws Exception {
+		File file = compress("src/test/resources/atted.graphml", ".graphml.gz", 0);
+		final InputStream source = new FileInputStream(file);
+		// the compressed stream fails after its first bytes, as a mapped file truncated under us
+		final InputStream failing = new InputStream() {
+			private int count = 0;
+
+			@Override
+			public int read() throws IOException {
+				if (++count > 1000) throw new IllegalStateException("source gone");
+				return source.read();
+			}
+		};
+		final InputStream in = new BackgroundGzipInputStream(failing);
+		try {
+			final byte[] buffer = new byte[4096];
+			while (in.read(buffer, 0, buffer.length) >= 0) {
+			}
+			fail("the failure of the inflater is not reported");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+			// a retry does not see a clean end of the data
+			try {
+				in.read();
+				fail("the failure of the inflater is not thrown again");
+			} catch (IOException again) {
+				assertSame(e, again);
+			}
+		} finally {
+			in.close();
+			source.close();
+		}
+	}
+
+	@Test
+	public void testCancelRollsBack() throws Exception {
+		File file = File.createTempFile("cancel", ".graphml");
+		file.deleteOnExit();
+		OutputStream os = new FileOutputStream(file);
+		os.write(("<graphml><key id=\"d0\" for=\"node\" attr.name=\"cancelWeight\" attr.type=\"double\"/>"
+				+ "<graph id=\"G\"><node id=\"cancelNew\"><data key=\"d0\">2.0</data></node>"
+				+ "<node id=\"cancelExisting\"><data key=\"d0\">1.0</data></node>"
+				+ "<edge source=\"cancelExisting\" target=\"cancelNew\"/></graph></graphml>").getBytes("UTF-8"));
+		os.close();
+		Cytoscape.getCyNode("cancelExisting", true);
+
+		GraphMLReader reader = new GraphMLReader(file.getPath());
+		reader.setAttributeBatchSize(0);
+		reader.cancel();
+		try {
+			reader.read();
+			fail("import not cancelled");
+		} catch (InterruptedIOException e) {
+			// expected
+		}
+		assertNotNull(Cytoscape.getCyNode("cancelExisting", false));
+		assertNull(Cytoscape.getCyNode("cancelNew", false));
+		assertNull(Cytoscape.getNodeAttributes().getAttribute("cancelNew", "cancelWeight"));
+		assertEquals(0, reader.getNodeIndicesArray().length);
+		assertEquals(0, reader.getEdgeIndicesArray().length);
+
+		// the cancel ended with its import, the reader reads again
+		reader.read();
+		assertEquals(2, reader.getNodeIndicesArray().length);
+		assertEquals(1, reader.getEdgeIndicesArray().length);
+		assertEquals(2.0, Cytoscape.getNodeAttributes().getAttribute("cancelNew", "cancelWeight"));
+	}
+
+	@Test
+	public void testCancelledReadKeepsPreviousRead() throws Exception {
+		File file = File.createTempFile("reread", ".graphml");
+		file.deleteOnExit();
+		OutputStream os = new FileOutputStream(file);
+		os.write(("<graphml><key id=\"d0\" for=\"node\" attr.name=\"rereadWeight\" attr.type=\"double\"/>"
+				+ "<graph id=\"G\"><node id=\"rereadA\"><data key=\"d0\">2.0</data></node><node id=\"rereadB\"/>"
+				+ "<edge source=\"rereadA\" target=\"rereadB\"/></graph></graphml>").getBytes("UTF-8"));
+		os.close();
+
+		GraphMLReader reader = new GraphMLReader(file.getPath());
+		reader.read();
+		reader.cancel();
+		try {
+			reader.read();
+			fail("import not cancelled");
+		} catch (InterruptedIOException e) {
+			// expected
+		}
+		// the rollback only concerns the cancelled read
+		assertNotNull(mergeEdge("rereadA", "rereadB"));
+		assertEquals(2.0, Cytoscape.getNodeAttributes().getAttribute("rereadA", "rereadWeight"));
+		assertEquals(0, reader.getNodeIndicesArray().length);
+	}
+
+	@Test(timeout = 60000)
+	public void testConcurrentCancelKeepsOtherImport() throws Exception {
+		final int nodes = 20000;
+		// the cancelled import only reads edges that exist before it
+		File existing = chainFile("concExisting", 3 * nodes);
+		new GraphMLReader(existing.getPath()).read();
+		final GraphMLReader kept = new GraphMLReader(chainFile("concKept", nodes).getPath());
+		final GraphMLReader cancelled = new GraphMLReader(existing.getPath());
+		final Exception[] errors = new Exception[2];
+		Thread keptThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					kept.read();
+				} catch (Exception e) {
+					errors[0] = e;
+				}
+			}
+		});
+		Thread cancelledThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					cancelled.read();
+				} catch (Exception e) {
+					errors[1] = e;
+				}
+			}
+		});
+		keptThread.start();
+		cancelledThread.start();
+		keptThread.join();
+		cancelled.cancel();
+		cancelledThread.join();
+
+		assertNull(errors[0]);
+		assertTrue(errors[1] instanceof InterruptedIOException);
+		assertEquals(nodes, kept.getNodeIndicesArray().length);
+		for (int i = 1; i < nodes; i++) {
+			assertNotNull(mergeEdge("concKept" + (i - 1), "concKept" + i));
+		}
+		// the edges created by the other import while the cancelled one
+		// looked its edges up are not its own
+		for (int i = 1; i < 3 * nodes; i++) {
+			assertNotNull(mergeEdge("concExisting" + (i - 1), "concExisting" + i));
+		}
+	}
+
+	/**
+	 * @return a file of a chain of nodes with the prefix
+	 */
+	private static File chainFile(String prefix, int nodes) throws IOException {
+		File file = File.createTempFile(prefix, ".graphml");
+		file.deleteOnExit();
+		StringBuilder xml = new StringBuilder("<graphml><graph id=\"G\">");
+		for (int i = 0; i < nodes; i++) {
+			xml.append("<node id=\"").append(prefix).append(i).append("\"/>");
+			if (i > 0) {
+				xml.append("<edge source=\"").append(prefix).append(i - 1)
+						.append("\" target=\"").append(prefix).append(i).append("\"/>");
+			}
+		}
+		OutputStream os = new FileOutputStream(file);
+		os.write(xml.append("</graph></graphml>").toString().getBytes("UTF-8"));
+		os.close();
+		return file;
+	}
+
+	private static CyEdge mergeEdge(String source, String target) {
+		return Cytoscape.getCyEdge(Cytoscape.getCyNode(source, false), Cytoscape.getCyNode(target, false),
+				Semantics.INTERACTION, "pp", false);
+	}
+
+	@Test
+	public void testMerge() throws Exception {
+		File base = File.createTempFile("mergeBase", ".graphml");
+		base.deleteOnExit();
+		OutputStream os = new FileOutputStream(base);
+		os.write(("<graphml><key id=\"d0\" for=\"node\" attr.name=\"mergeWeight\" attr.type=\"double\"/>"
+				+ "<graph id=\"G\"><node id=\"mergeA\"><data key=\"d0\">1.0</data></node>"
+				+ "<node id=\"mergeB\"><data key=\"d0\">2.0</data></node><node id=\"mergeC\"/>"
+				+ "<edge source=\"mergeA\" target=\"mergeB\"/><edge source=\"mergeB\" target=\"mergeC\"/>"
+				+ "</graph></graphml>").getBytes("UTF-8"));
+		os.close();
+		GraphMLReader reader = new GraphMLReader(base.getPath());
+		reader.read();
+		CyNetwork network = Cytoscape.createNetwork(reader.getNodeIndicesArray(),
+				reader.getEdgeIndicesArray(), "merge");
+		Cytoscape.getCyNode("mergeOutside", true);
+
+		// adds D, updates A, removes C and the edge A -> B, refers to B
+		File delta = File.createTempFile("mergeDelta", ".graphml");
+		delta.deleteOnExit();
+		os = new FileOutputStream(delta);
+		os.write(("<graphml><key id=\"d0\" for=\"node\" attr.name=\"mergeWeight\" attr.type=\"double\"/>"
+				+ "<key id=\"r\" for=\"all\" attr.name=\"mergeRemoved\" attr.type=\"boolean\"/>"
+				+ "<graph id=\"G\"><node id=\"mergeA\"><data key=\"d0\">10.0</data></node>"
+				+ "<node id=\"mergeC\"><data key=\"r\">true</data></node>"
+				+ "<node id=\"mergeD\"><data key=\"d0\">4.0</data></node>"
+				+ "<node id=\"mergeE\"><data key=\"r\">true</data></node>"
+				+ "<edge source=\"mergeA\" target=\"mergeB\"><data key=\"r\">true</data></edge>"
+				+ "<edge source=\"mergeB\" target=\"mergeD\"/><edge source=\"mergeA\" target=\"mergeD\"/>"
+				+ "<edge source=\"mergeOutside\" target=\"mergeD\"/>"
+				+ "</graph></graphml>").getBytes("UTF-8"));
+		os.close();
+		reader = new GraphMLReader(delta.getPath());
+		reader.setMergeTarget(network);
+		reader.setRemovalMarker("mergeRemoved");
+		reader.read();
+
+		assertTrue(network.containsNode(Cytoscape.getCyNode("mergeA", false)));
+		assertTrue(network.containsNode(Cytoscape.getCyNode("mergeB", false)));
+		assertTrue(network.containsNode(Cytoscape.getCyNode("mergeD", false)));
+		assertFalse(network.containsNode(Cytoscape.getCyNode("mergeC", false)));
+		assertFalse(network.containsNode(Cytoscape.getCyNode("mergeOutside", false)));
+		// created and removed by the delta
+		assertNull(Cytoscape.getCyNode("mergeE", false));
+		assertFalse(network.containsEdge(mergeEdge("mergeA", "mergeB")));
+		assertTrue(network.containsEdge(mergeEdge("mergeA", "mergeD")));
+		assertTrue(network.containsEdge(mergeEdge("mergeB", "mergeD")));
+		assertEquals(10.0, Cytoscape.getNodeAttributes().getDoubleAttribute("mergeA", "mergeWeight"), 0.0);
+		assertEquals(2.0, Cytoscape.getNodeAttributes().getDoubleAttribute("mergeB", "mergeWeight"), 0.0);
+		assertEquals(4.0, Cytoscape.getNodeAttributes().getDoubleAttribute("mergeD", "mergeWeight"), 0.0);
+		assertNull(Cytoscape.getNodeAttributes().getAttribute("mergeC", "mergeRemoved"));
+		assertEquals(4, reader.getNodeIndicesArray().length);
+		assertEquals(3, reader.getEdgeIndicesArray().length);
+	}
+
+	@Test
+	public void testBatchImport() throws Exception {
+		List<String> fileNames = new ArrayList<String>();
+		for (int i = 0; i < 6; i++) {
+			File file = File.createTempFile("batch", ".graphml");
+			file.deleteOnExit();
+			OutputStream os = new FileOutputStream(file);
+			os.write(("<graphml><key id=\"s\" for=\"node\" attr.name=\"batchScore\" attr.type=\"int\"/>"
+					+ "<key id=\"w\" for=\"edge\" attr.name=\"batchWeight\" attr.type=\"double\"/>"
+					+ "<key id=\"n\" for=\"graph\" attr.name=\"batchSample\" attr.type=\"string\"/>"
+					+ "<graph id=\"batch" + i + "\"><data key=\"n\">sample" + i + "</data>"
+					+ "<node id=\"batchShared\"/><node id=\"batch" + i + "A\"><data key=\"s\">" + i + "</data></node>"
+					+ "<edge source=\"batchShared\" target=\"batch" + i + "A\"><data key=\"w\">" + i + ".5</data></edge>"
+					+ "</graph></graphml>").getBytes("UTF-8"));
+			os.close();
+			fileNames.add(file.getPath());
+		}
+		File broken = File.createTempFile("batchBroken", ".graphml");
+		broken.deleteOnExit();
+		OutputStream os = new FileOutputStream(broken);
+		os.write("<graphml><graph id=\"batchBroken\"><node id=\"batchBrokenA\">".getBytes("UTF-8"));
+		os.close();
+		fileNames.add(broken.getPath());
+
+		List<GraphMLBatchImport.Result> results = new GraphMLBatchImport(3).read(fileNames);
+		assertEquals(7, results.size());
+		for (int i = 0; i < 6; i++) {
+			GraphMLBatchImport.Result result = results.get(i);
+			assertEquals(fileNames.get(i), result.getFileName());
+			assertNull(result.getError());
+			CyNetwork network = result.getNetwork();
+			assertEquals("batch" + i, network.getTitle());
+			assertEquals(2, network.getNodeCount());
+			assertEquals(1, network.getEdgeCount());
+			assertTrue(network.containsNode(Cytoscape.getCyNode("batchShared", false)));
+			assertEquals(Integer.valueOf(i), Cytoscape.getNodeAttributes().getIntegerAttribute("batch" + i + "A", "batchScore"));
+			CyEdge edge = (CyEdge) network.edgesList().get(0);
+			assertEquals(i + 0.5, Cytoscape.getEdgeAttributes().getDoubleAttribute(edge.getIdentifier(), "batchWeight"), 0.0);
+			assertEquals("sample" + i, Cytoscape.getNetworkAttributes().getStringAttribute(network.getIdentifier(), "batchSample"));
+		}
+		assertNull(results.get(6).getNetwork());
+		assertTrue(results.get(6).getError() instanceof IOException);
+		// nothing of the failed file went to Cytoscape
+		assertNull(Cytoscape.getCyNode("batchBrokenA", false));
+	}
+
+	@Test
+	public void testParsersAreReused() throws Exception {
+		for (final GraphMLParserEngine engine : GraphMLParserEngine.values()) {
+			for (int i = 0; i < 3; i++) {
+				GraphMLReader reader = new GraphMLReader("src/test/resources/simpleWithAttributes.xml");
+				reader.setParserEngine(engine);
+				reader.read();
+				assertEquals(6, reader.getNodeIndicesArray().length);
+				assertEquals(7, reader.getEdgeIndicesArray().length);
+				assertFalse(reader.getAttributeDefaults().isEmpty());
+
+				// nothing of the previous document is left in the parser
+				reader = new GraphMLReader("src/test/resources/testGraph1.xml");
+				reader.setParserEngine(engine);
+				reader.setDeferredEdgeResolution(i == 1);
+				reader.setOffHeapNodeIndex(i == 2);
+				reader.read();
+				assertEquals(11, reader.getNodeIndicesArray().length);
+				assertEquals(12, reader.getEdgeIndicesArray().length);
+				assertTrue(reader.getAttributeDefaults().isEmpty());
+				assertEquals("TEST1", reader.getNetworkName());
+			}
+		}
+	}
+
 	@Test
 	public void testGetNodeIndicesArray() throws Exception{
 		GraphMLReader reader = new GraphMLReader("src/test/resources/atted.graphml");
@@ -0,0 +1,131 @@
+package org.cytoscape.data.reader.graphml;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraphMLSnapshotCacheTest {
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("snapshots", "");
+		directory.delete();
+		assertTrue(directory.mkdir());
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private File copy(String resource, String name) throws Exception {
+		File file = new File(directory, name);
+		InputStream in = new FileInputStream(resource);
+		OutputStream out = new FileOutputStream(file);
+		byte[] buffer = new byte[1 << 16];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			out.write(buffer, 0, n);
+		}
+		out.close();
+		in.close();
+		return file;
+	}
+
+	private static CsrGraph read(File file, GraphMLSnapshotCache cache) throws Exception {
+		CsrGraphSink sink = new CsrGraphSink();
+		GraphMLReader reader = new GraphMLReader(file.getPath());
+		reader.setGraphSink(sink);
+		reader.setSnapshotCache(cache);
+		reader.read();
+		assertEquals("G", reader.getNetworkName());
+		return sink.getGraph();
+	}
+
+	@Test
+	public void testSecondReadFromSnapshot() throws Exception {
+		File file = copy("src/test/resources/simpleWithAttributes.xml", "simple.xml");
+		GraphMLSnapshotCache cache = new GraphMLSnapshotCache(directory, 1 << 20);
+		CsrGraph parsed = read(file, cache);
+		GraphMLSnapshot snapshot = cache.find(cache.key(file));
+		assertNotNull(snapshot);
+		assertTrue(cache.size() > 0);
+		assertEquals("yellow", snapshot.getAttributeDefaults().getDefault(GraphMLScope.NODE, "color"));
+
+		CsrGraph replayed = read(file, cache);
+		assertEquals(parsed.isDirected(), replayed.isDirected());
+		assertEquals(parsed.getNodeCount(), replayed.getNodeCount());
+		assertEquals(parsed.getEdgeCount(), replayed.getEdgeCount());
+		for (int node = 0; node < parsed.getNodeCount(); node++) {
+			assertEquals(parsed.getNodeId(node), replayed.getNodeId(node));
+			assertEquals(parsed.getDegree(node), replayed.getDegree(node));
+		}
+		CsrGraph.StringColumn color = (CsrGraph.StringColumn) replayed.getNodeColumn("color");
+		assertEquals("turquoise", color.get(5));
+		assertFalse(color.isSet(1));
+		CsrGraph.DoubleColumn weight = (CsrGraph.DoubleColumn) replayed.getEdgeColumn("weight");
+		assertEquals(GraphMLDataType.DOUBLE, weight.getDataType());
+		assertEquals(1.0, weight.get(0), 0.0);
+	}
+
+	@Test
+	public void testModifiedFileIsParsed() throws Exception {
+		File file = new File(directory, "modified.graphml");
+		write(file, "<graphml><graph id=\"G\" edgedefault=\"directed\"><node id=\"a\"/></graph></graphml>");
+		GraphMLSnapshotCache cache = new GraphMLSnapshotCache(directory, 1 << 20);
+		assertEquals(1, read(file, cache).getNodeCount());
+		GraphMLSnapshot.Key key = cache.key(file);
+		assertNotNull(cache.find(key));
+
+		// same size and modification time, other content
+		write(file, "<graphml><graph id=\"G\" edgedefault=\"directed\"><node id=\"b\"/></graph></graphml>");
+		file.setLastModified(key.modified);
+		assertNull(cache.find(cache.key(file)));
+		assertEquals("b", read(file, cache).getNodeId(0));
+
+		write(file, "<graphml><graph id=\"G\" edgedefault=\"directed\"><node id=\"b\"/><node id=\"c\"/>"
+				+ "<edge source=\"b\" target=\"c\"/></graph></graphml>");
+		CsrGraph graph = read(file, cache);
+		assertEquals(2, graph.getNodeCount());
+		assertEquals(1, graph.getEdgeCount());
+		assertEquals(2, read(file, cache).getNodeCount());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		File first = copy("src/test/resources/simpleWithAttributes.xml", "one.xml");
+		File second = copy("src/test/resources/simpleWithAttributes.xml", "two.xml");
+		GraphMLSnapshotCache unbounded = new GraphMLSnapshotCache(directory, 1 << 20);
+		read(first, unbounded);
+		long size = unbounded.size();
+		unbounded.clear();
+		assertEquals(0, unbounded.size());
+
+		GraphMLSnapshotCache cache = new GraphMLSnapshotCache(directory, size + size / 2);
+		read(first, cache);
+		assertNotNull(cache.find(cache.key(first)));
+		read(second, cache);
+		assertEquals(size, cache.size());
+		assertNull(cache.find(cache.key(first)));
+		assertNotNull(cache.find(cache.key(second)));
+	}
+
+	private static void write(File file, String content) throws Exception {
+		OutputStream os = new FileOutputStream(file);
+		os.write(content.getBytes("UTF-8"));
+		os.close();
+	}
+}
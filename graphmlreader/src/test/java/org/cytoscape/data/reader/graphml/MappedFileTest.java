@@ -0,0 +1,37 @@
+package org.cytoscape.data.reader.graphml;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class MappedFileTest {
+
+	@Test
+	public void testMappedFileWindows() throws Exception {
+		final File file = new File("src/test/resources/atted.graphml");
+		// 256-byte windows
+		MappedFile mapped = new MappedFile(file, 8);
+		assertEquals(file.length(), mapped.length());
+
+		InputStream expected = new FileInputStream(file);
+		InputStream actual = mapped.stream(100, 5000);
+		expected.skip(100);
+		byte[] buffer = new byte[300];
+		long pos = 100;
+		while (pos < 5000) {
+			int n = actual.read(buffer, 0, buffer.length);
+			assertTrue(n > 0);
+			for (int i = 0; i < n; i++) {
+				assertEquals(expected.read(), buffer[i] & 0xff);
+				assertEquals(mapped.get(pos + i), buffer[i]);
+			}
+			pos += n;
+		}
+		assertEquals(-1, actual.read());
+		expected.close();
+	}
+}
@@ -0,0 +1,106 @@
+package org.cytoscape.data.reader.graphml;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class NodeIdIndexTest {
+
+	private static void fillAndCheck(final NodeIdIndex index) {
+		for (int i = 0; i < 100000; i++) {
+			index.put("n" + i, -(i + 1));
+		}
+		// ids needing UTF-16 and an id longer than the first arena page
+		index.put("узел", -200000);
+		final StringBuilder longId = new StringBuilder();
+		while (longId.length() < 100000) longId.append("élong");
+		index.put(longId.toString(), -200001);
+
+		assertEquals(100002, index.size());
+		for (int i = 0; i < 100000; i++) {
+			assertEquals(-(i + 1), index.get("n" + i));
+		}
+		assertEquals(-200000, index.get("узел"));
+		assertEquals(-200001, index.get(longId.toString()));
+		assertEquals(NodeIdIndex.NOT_FOUND, index.get("n100000"));
+		assertEquals(NodeIdIndex.NOT_FOUND, index.get("узе"));
+		assertEquals(NodeIdIndex.NOT_FOUND, index.get(""));
+
+		index.put("n7", -42);
+		assertEquals(-42, index.get("n7"));
+		assertEquals(100002, index.size());
+
+		index.clear();
+		assertEquals(0, index.size());
+		assertEquals(NodeIdIndex.NOT_FOUND, index.get("n7"));
+		index.put("n7", -1);
+		assertEquals(-1, index.get("n7"));
+	}
+
+	@Test
+	public void testHeapIndex() {
+		fillAndCheck(new NodeIdIndex(false));
+	}
+
+	@Test
+	public void testOffHeapIndex() {
+		fillAndCheck(new NodeIdIndex(16, true));
+	}
+
+	private static void resetAndCheck(final NodeIdIndex index) {
+		for (int i = 0; i < 1000; i++) {
+			index.put("n" + i, i);
+		}
+		index.reset();
+		assertEquals(0, index.size());
+		assertEquals(NodeIdIndex.NOT_FOUND, index.get("n1"));
+		for (int i = 0; i < 1000; i++) {
+			index.put("m" + i, -i);
+		}
+		assertEquals(1000, index.size());
+		assertEquals(-999, index.get("m999"));
+		assertEquals(NodeIdIndex.NOT_FOUND, index.get("n999"));
+	}
+
+	@Test
+	public void testReset() {
+		resetAndCheck(new NodeIdIndex(false));
+		resetAndCheck(new NodeIdIndex(16, true));
+		// a grown table is dropped
+		final NodeIdIndex index = new NodeIdIndex(false);
+		fillAndCheck(index);
+		index.reset();
+		resetAndCheck(index);
+	}
+
+	@Test
+	public void testIntern() {
+		final NodeIdIndex index = new NodeIdIndex(false);
+		final int[] refs = new int[10000];
+		for (int i = 0; i < refs.length; i++) {
+			refs[i] = index.intern(i % 2 == 0 ? "n" + i : "\u0443\u0437\u0435\u043b" + i);
+			assertTrue(refs[i] >= 0);
+		}
+		for (int i = 0; i < refs.length; i++) {
+			final String id = i % 2 == 0 ? "n" + i : "\u0443\u0437\u0435\u043b" + i;
+			assertEquals(refs[i], index.intern(id));
+			assertEquals(id, index.key(refs[i]));
+		}
+		assertEquals(refs.length, index.size());
+	}
+
+	@Test
+	public void testIntListArrayIsNotChanged() {
+		final IntList list = new IntList(4);
+		for (int i = 0; i < 10; i++) {
+			list.add(i);
+		}
+		final int[] array = list.toArray();
+		assertEquals(10, array.length);
+		assertSame(array, list.toArray());
+		list.add(10);
+		assertEquals(10, array.length);
+		assertEquals(11, list.toArray().length);
+		assertEquals(10, list.get(10));
+	}
+}
@@ -0,0 +1,89 @@
+package org.cytoscape.data.reader.graphml;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NumberDecoderTest {
+
+	private static double parseDouble(String s) {
+		// the text in the middle of a buffer, as in the parser
+		char[] data = ("<" + s + ">").toCharArray();
+		return NumberDecoder.parseDouble(data, 1, s.length());
+	}
+
+	private static long parseLong(String s) {
+		char[] data = ("<" + s + ">").toCharArray();
+		return NumberDecoder.parseLong(data, 1, s.length());
+	}
+
+	private static void assertSameDouble(String s) {
+		assertEquals(s, Double.doubleToRawLongBits(Double.parseDouble(s)),
+				Double.doubleToRawLongBits(parseDouble(s)));
+	}
+
+	@Test
+	public void testDoubles() {
+		for (String s : new String[] { "0", "-0", "0.0", "-0.0", "1", "1.", ".5", "+2.5", "5.20",
+				"3.141592653589793", "1e10", "1E-5", "-2.5e+3", "0.1", "0.3", "123456789012345",
+				"1234567890123456789", "9007199254740993", "1e23", "1e-23", "4.9e-324", "1.7976931348623157e308",
+				"1e400", "NaN", "-Infinity", "0x1p3", "1.0d", "0.000000000000000000001234" }) {
+			assertSameDouble(s);
+		}
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			assertSameDouble(Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20)));
+			assertSameDouble(Float.toString(random.nextFloat()));
+			assertSameDouble(String.format("%.6f", random.nextDouble() * 1000).replace(',', '.'));
+		}
+	}
+
+	@Test
+	public void testInvalidDoubles() {
+		for (String s : new String[] { "", "-", ".", "e5", "1e", "1e+", "1.2.3", "abc", "1,5" }) {
+			try {
+				parseDouble(s);
+				fail(s);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testLongs() {
+		assertEquals(0L, parseLong("0"));
+		assertEquals(-42L, parseLong("-42"));
+		assertEquals(42L, parseLong("+42"));
+		assertEquals(1700000000123L, parseLong("1700000000123"));
+		assertEquals(Long.MAX_VALUE, parseLong("9223372036854775807"));
+		assertEquals(Long.MIN_VALUE, parseLong("-9223372036854775808"));
+		for (String s : new String[] { "", "-", "+", "9223372036854775808", "-9223372036854775809",
+				"12a", "1.0", " 1", "99999999999999999999" }) {
+			try {
+				parseLong(s);
+				fail(s);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testIntsAndBooleans() {
+		char[] data = "2147483647 -2147483648 2147483648 True false".toCharArray();
+		assertEquals(Integer.MAX_VALUE, NumberDecoder.parseInt(data, 0, 10));
+		assertEquals(Integer.MIN_VALUE, NumberDecoder.parseInt(data, 11, 11));
+		try {
+			NumberDecoder.parseInt(data, 23, 10);
+			fail();
+		} catch (NumberFormatException e) {
+			// expected
+		}
+		assertTrue(NumberDecoder.parseBoolean(data, 34, 4));
+		assertFalse(NumberDecoder.parseBoolean(data, 39, 5));
+		assertFalse(NumberDecoder.parseBoolean(data, 34, 3));
+	}
+}
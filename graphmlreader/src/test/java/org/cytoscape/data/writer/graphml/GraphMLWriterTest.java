@@ -1,7 +1,37 @@
 package org.cytoscape.data.writer.graphml;
 
+import static org.junit.Assert.*;
+
+import giny.view.Label;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Paint;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.zip.GZIPInputStream;
+
+import org.cytoscape.data.reader.graphml.GraphMLAttributeDefaults;
+import org.cytoscape.data.reader.graphml.GraphMLReader;
+import org.cytoscape.data.reader.graphml.GraphMLScope;
 import org.junit.Test;
 
+import cytoscape.CyEdge;
+import cytoscape.CyNetwork;
+import cytoscape.CyNode;
+import cytoscape.Cytoscape;
+import cytoscape.data.CyAttributes;
+import cytoscape.data.Semantics;
+import cytoscape.view.CyNetworkView;
+
 public class GraphMLWriterTest {
 	
 	@Test
@@ -10,4 +40,243 @@ public class GraphMLWriterTest {
 		//GraphMLWriter writer = new GraphMLWriter();
 	}
 
+	private static byte[] write(CyNetwork network, boolean streaming) throws Exception {
+		return write(network, null, streaming);
+	}
+
+	private static byte[] write(CyNetwork network, CyNetworkView view, boolean streaming) throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final GraphMLWriter writer = new GraphMLWriter(network, view, out, null);
+		writer.setStreaming(streaming);
+		writer.write();
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return a view of the network whose node and edge views derive their
+	 *         sizes, colors, shapes and labels from the element ids
+	 */
+	static CyNetworkView view(final CyNetwork network) {
+		return (CyNetworkView) Proxy.newProxyInstance(GraphMLWriterTest.class.getClassLoader(),
+				new Class<?>[] { CyNetworkView.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getNetwork")) return network;
+						if (method.getName().equals("getNodeView"))
+							return elementView(method.getReturnType(), ((CyNode) args[0]).getIdentifier());
+						if (method.getName().equals("getEdgeView"))
+							return elementView(method.getReturnType(), ((CyEdge) args[0]).getIdentifier());
+						return null;
+					}
+				});
+	}
+
+	private static Object elementView(final Class<?> type, final String id) {
+		final int seed = id.hashCode() & 0xff;
+		return Proxy.newProxyInstance(GraphMLWriterTest.class.getClassLoader(),
+				new Class<?>[] { type }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						final Class<?> returnType = method.getReturnType();
+						if (returnType == double.class) return (double) seed;
+						if (returnType == float.class) return seed / 8f;
+						if (returnType == int.class) return seed % 3;
+						if (returnType == boolean.class) return false;
+						if (returnType == String.class) return id;
+						if (returnType == Paint.class) return new Color(seed, 255 - seed, 128);
+						if (returnType == Font.class) return new Font("SansSerif", Font.PLAIN, 10 + seed % 5);
+						if (returnType == Label.class) return elementView(Label.class, id);
+						return null;
+					}
+				});
+	}
+
+	@Test
+	public void testStreamingWriteSameAsDom() throws Exception {
+		GraphMLReader reader = new GraphMLReader("src/test/resources/atted.graphml");
+		reader.read();
+		CyNetwork network = Cytoscape.createNetwork(reader.getNodeIndicesArray(),
+				reader.getEdgeIndicesArray(), reader.getNetworkName(), null, false);
+
+		final byte[] dom = write(network, false);
+		final byte[] streamed = write(network, true);
+		assertTrue(dom.length > 0);
+		assertArrayEquals(dom, streamed);
+	}
+
+	@Test
+	public void testStreamingEscapesSameAsDom() throws Exception {
+		// characters a reader normalizes unless they are written as references
+		final String[] ids = { "escape\nline", "escape\rreturn", "escape\ttab", "escape \"&<>'",
+				"escape\u0085\ud83d\ude00" };
+		final CyAttributes nodeAttr = Cytoscape.getNodeAttributes();
+		final int[] nodes = new int[ids.length];
+		final int[] edges = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			nodes[i] = Cytoscape.getCyNode(ids[i], true).getRootGraphIndex();
+			nodeAttr.setAttribute(ids[i], "escape\tvalue", "v\r\n\t" + ids[i]);
+		}
+		for (int i = 0; i < ids.length; i++) {
+			edges[i] = Cytoscape.getCyEdge(Cytoscape.getCyNode(ids[i], false),
+					Cytoscape.getCyNode(ids[(i + 1) % ids.length], false),
+					Semantics.INTERACTION, "pp", true).getRootGraphIndex();
+		}
+		final CyNetwork network = Cytoscape.createNetwork(nodes, edges, "escape\r\n\t", null, false);
+
+		for (final CyNetworkView view : new CyNetworkView[] { null, view(network) }) {
+			final byte[] streamed = write(network, view, true);
+			assertEquals(new String(write(network, view, false), "UTF-8"), new String(streamed, "UTF-8"));
+
+			// the ids, names and values come back unchanged
+			for (final String id : ids) {
+				nodeAttr.deleteAttribute(id, "escape\tvalue");
+			}
+			final File file = File.createTempFile("escape", ".graphml");
+			file.deleteOnExit();
+			final OutputStream os = new FileOutputStream(file);
+			os.write(streamed);
+			os.close();
+			final GraphMLReader reader = new GraphMLReader(file.getPath());
+			reader.read();
+			assertEquals(ids.length, reader.getNodeIndicesArray().length);
+			assertEquals(ids.length, reader.getEdgeIndicesArray().length);
+			for (final String id : ids) {
+				assertEquals("v\r\n\t" + id, nodeAttr.getAttribute(id, "escape\tvalue"));
+			}
+		}
+	}
+
+	@Test
+	public void testParallelWriteSameAsSequential() throws Exception {
+		GraphMLReader reader = new GraphMLReader("src/test/resources/atted.graphml");
+		reader.read();
+		CyNetwork network = Cytoscape.createNetwork(reader.getNodeIndicesArray(),
+				reader.getEdgeIndicesArray(), reader.getNetworkName(), null, false);
+
+		// the workers also read the node and edge views
+		for (final CyNetworkView view : new CyNetworkView[] { null, view(network) }) {
+			final byte[] sequential = write(network, view, true);
+			for (int rangeSize : new int[] { 1, 7, 1000 }) {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				final GraphMLWriter writer = new GraphMLWriter(network, view, out, null);
+				writer.setStreaming(true);
+				writer.setParallelism(4);
+				writer.setRangeSize(rangeSize);
+				writer.write();
+				assertArrayEquals(sequential, out.toByteArray());
+			}
+		}
+	}
+
+	@Test
+	public void testCompressedWriteBehind() throws Exception {
+		GraphMLReader reader = new GraphMLReader("src/test/resources/atted.graphml");
+		reader.read();
+		CyNetwork network = Cytoscape.createNetwork(reader.getNodeIndicesArray(),
+				reader.getEdgeIndicesArray(), reader.getNetworkName(), null, false);
+		final byte[] plain = write(network, true);
+
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		OutputStream out = new BackgroundOutputStream(compressed, 9);
+		GraphMLWriter writer = new GraphMLWriter(network, null, out, null);
+		writer.setStreaming(true);
+		writer.write();
+		out.close();
+		assertTrue(compressed.size() < plain.length / 4);
+		final InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+		final ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			inflated.write(buffer, 0, n);
+		}
+		assertArrayEquals(plain, inflated.toByteArray());
+
+		final ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+		out = new BackgroundOutputStream(uncompressed);
+		writer = new GraphMLWriter(network, null, out, null);
+		writer.setStreaming(true);
+		writer.write();
+		out.close();
+		assertArrayEquals(plain, uncompressed.toByteArray());
+	}
+
+	@Test
+	public void testKeyDefaults() throws Exception {
+		final String[] shapes = { "circle", "circle", "box", "circle", "circle" };
+		final int[] nodes = new int[shapes.length];
+		final CyAttributes nodeAttr = Cytoscape.getNodeAttributes();
+		for (int i = 0; i < shapes.length; i++) {
+			final String id = "keyDefaults" + i;
+			nodes[i] = Cytoscape.getCyNode(id, true).getRootGraphIndex();
+			nodeAttr.setAttribute(id, "keyDefaultsShape", shapes[i]);
+			if (i % 2 == 0) {
+				nodeAttr.setAttribute(id, "keyDefaultsPartial", "same");
+			}
+		}
+		final CyNetwork network = Cytoscape.createNetwork(nodes, new int[0], "keyDefaults", null, false);
+
+		for (boolean streaming : new boolean[] { false, true }) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final GraphMLWriter writer = new GraphMLWriter(network, null, out, null);
+			writer.setStreaming(streaming);
+			writer.setKeyDefaults(true);
+			writer.write();
+			final String document = out.toString("UTF-8");
+			assertTrue(document.contains("<default>circle</default>"));
+			assertEquals(1, document.split("circle", -1).length - 1);
+			// not every node has a value
+			assertEquals(4, document.split(">same<", -1).length);
+			assertTrue(out.size() < write(network, streaming).length);
+
+			// the values come back from the file alone
+			for (int i = 0; i < shapes.length; i++) {
+				nodeAttr.deleteAttribute("keyDefaults" + i, "keyDefaultsShape");
+			}
+			final File file = File.createTempFile("keyDefaults", ".graphml");
+			file.deleteOnExit();
+			final OutputStream os = new FileOutputStream(file);
+			out.writeTo(os);
+			os.close();
+			final GraphMLReader reader = new GraphMLReader(file.getPath());
+			reader.read();
+			final GraphMLAttributeDefaults defaults = reader.getAttributeDefaults();
+			for (int i = 0; i < shapes.length; i++) {
+				final String id = "keyDefaults" + i;
+				// only the <data> values are stored, the default resolves
+				assertEquals(shapes[i].equals("box") ? "box" : null, nodeAttr.getAttribute(id, "keyDefaultsShape"));
+				assertEquals(shapes[i], defaults.getAttribute(GraphMLScope.NODE, id, "keyDefaultsShape"));
+			}
+			// for the next write
+			for (int i = 0; i < shapes.length; i++) {
+				nodeAttr.setAttribute("keyDefaults" + i, "keyDefaultsShape", shapes[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testWriteBehindFailure() throws Exception {
+		final OutputStream out = new BackgroundOutputStream(new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("disk full");
+			}
+		});
+		IOException failure = null;
+		try {
+			// more than the queue holds, the writes must not block
+			final byte[] block = new byte[BackgroundOutputStream.BLOCK_SIZE];
+			for (int i = 0; i < 4 * BackgroundOutputStream.QUEUE_BLOCKS; i++) {
+				out.write(block);
+			}
+		} catch (IOException e) {
+			failure = e;
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			failure = e;
+		}
+		assertNotNull("the failure of the writer is not reported", failure);
+		assertEquals("disk full", failure.getMessage());
+	}
+
 }